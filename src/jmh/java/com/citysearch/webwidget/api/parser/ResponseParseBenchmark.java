@@ -0,0 +1,82 @@
+package com.citysearch.webwidget.api.parser;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.citysearch.webwidget.api.bean.LocationProfile;
+import com.citysearch.webwidget.api.bean.OfferAPIBean;
+import com.citysearch.webwidget.api.bean.PFPResponse;
+import com.citysearch.webwidget.api.bean.ReviewResponse;
+import com.citysearch.webwidget.api.bean.SearchResponse;
+import com.citysearch.webwidget.util.BenchmarkFixtures;
+
+/**
+ * Recorded API responses through the response handlers that map them to the api beans.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseParseBenchmark {
+    private byte[] pfp;
+    private byte[] search;
+    private byte[] reviews;
+    private byte[] offers;
+    private byte[] profile;
+
+    @Setup
+    public void setUp() throws Exception {
+        pfp = BenchmarkFixtures.load(BenchmarkFixtures.PFP);
+        search = BenchmarkFixtures.load(BenchmarkFixtures.SEARCH);
+        reviews = BenchmarkFixtures.load(BenchmarkFixtures.REVIEWS);
+        offers = BenchmarkFixtures.load(BenchmarkFixtures.OFFERS);
+        profile = BenchmarkFixtures.load(BenchmarkFixtures.PROFILE);
+    }
+
+    @Benchmark
+    public PFPResponse pfp() throws Exception {
+        return BenchmarkFixtures.parse(pfp, new PFPResponseHandler());
+    }
+
+    @Benchmark
+    public SearchResponse search() throws Exception {
+        return BenchmarkFixtures.parse(search, new SearchResponseHandler());
+    }
+
+    @Benchmark
+    public String searchRegionOnly() throws Exception {
+        SearchResponseHandler handler = new SearchResponseHandler(0);
+        BenchmarkFixtures.parse(search, handler);
+        return handler.getRegionLatitude();
+    }
+
+    @Benchmark
+    public ReviewResponse latestReview() throws Exception {
+        return BenchmarkFixtures.parse(reviews, new ReviewResponseHandler(
+                ReviewResponseHandler.ANY_RATING));
+    }
+
+    @Benchmark
+    public List<OfferAPIBean> offers() throws Exception {
+        return BenchmarkFixtures.parse(offers, new OfferResponseHandler());
+    }
+
+    @Benchmark
+    public LocationProfile profileWithLatestReview() throws Exception {
+        return BenchmarkFixtures.parse(profile, new ProfileResponseHandler());
+    }
+}
@@ -0,0 +1,68 @@
+package com.citysearch.webwidget.helper;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.citysearch.webwidget.api.parser.PFPResponseHandler;
+import com.citysearch.webwidget.bean.NearbyPlace;
+import com.citysearch.webwidget.bean.NearbyPlacesRequest;
+import com.citysearch.webwidget.util.BenchmarkFixtures;
+
+/**
+ * PFP location and PFP responses through the Nearby widget ranking: build the document, pick the
+ * closest or the top rated ads and convert them to NearbyPlace beans.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NearbyPlacesHelperBenchmark {
+    private byte[] pfpLocation;
+    private byte[] pfp;
+    private NearbyPlacesRequest request;
+    private NearbyPlacesHelper helper;
+
+    @Setup
+    public void setUp() throws Exception {
+        pfpLocation = BenchmarkFixtures.load(BenchmarkFixtures.PFP_LOCATION);
+        pfp = BenchmarkFixtures.load(BenchmarkFixtures.PFP);
+
+        request = new NearbyPlacesRequest();
+        request.setPublisher("citysearch");
+        request.setAdUnitName("nearby");
+        request.setAdUnitSize("300x250");
+        request.setLatitude("34.147785");
+        request.setLongitude("-118.144516");
+        request.setWhere("Pasadena, CA");
+        request.setWhat("sushi");
+        request.setClientIP("127.0.0.1");
+        helper = new NearbyPlacesHelper("/web-widgets", 3);
+    }
+
+    @Benchmark
+    public List<NearbyPlace> closestPlaces() throws Exception {
+        return helper.getClosestPlaces(request, BenchmarkFixtures.parse(pfpLocation,
+                new PFPResponseHandler()));
+    }
+
+    @Benchmark
+    public List<NearbyPlace> topReviewedPlaces() throws Exception {
+        return helper.getTopReviewedPlaces(request, BenchmarkFixtures.parse(pfp,
+                new PFPResponseHandler()), Collections.<String> emptySet());
+    }
+}
@@ -0,0 +1,71 @@
+package com.citysearch.webwidget.helper;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.citysearch.webwidget.api.parser.OfferResponseHandler;
+import com.citysearch.webwidget.bean.Offer;
+import com.citysearch.webwidget.bean.OffersRequest;
+import com.citysearch.webwidget.util.BenchmarkFixtures;
+
+/**
+ * Offers API response through the Offers widget ranking, by rating when the request has no
+ * coordinates and by distance when it has.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OffersHelperBenchmark {
+    private byte[] offers;
+    private OffersRequest byRatingRequest;
+    private OffersRequest byDistanceRequest;
+    private OffersHelper helper;
+
+    @Setup
+    public void setUp() throws Exception {
+        offers = BenchmarkFixtures.load(BenchmarkFixtures.OFFERS);
+
+        byRatingRequest = newRequest();
+        byRatingRequest.setWhere("Pasadena, CA");
+        byDistanceRequest = newRequest();
+        byDistanceRequest.setLatitude("34.147785");
+        byDistanceRequest.setLongitude("-118.144516");
+        helper = new OffersHelper("/web-widgets", 2);
+    }
+
+    private OffersRequest newRequest() {
+        OffersRequest request = new OffersRequest();
+        request.setPublisher("citysearch");
+        request.setAdUnitName("offers");
+        request.setAdUnitSize("300x250");
+        request.setClientIP("127.0.0.1");
+        return request;
+    }
+
+    @Benchmark
+    public List<Offer> offersByRating() throws Exception {
+        return helper.parseXML(byRatingRequest, BenchmarkFixtures.parse(offers,
+                new OfferResponseHandler()));
+    }
+
+    @Benchmark
+    public List<Offer> offersByDistance() throws Exception {
+        return helper.parseXML(byDistanceRequest, BenchmarkFixtures.parse(offers,
+                new OfferResponseHandler()));
+    }
+}
@@ -0,0 +1,85 @@
+package com.citysearch.webwidget.helper;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jdom.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.citysearch.webwidget.api.bean.LocationProfile;
+import com.citysearch.webwidget.api.parser.ReviewResponseHandler;
+import com.citysearch.webwidget.api.proxy.ProfileProxy;
+import com.citysearch.webwidget.bean.Review;
+import com.citysearch.webwidget.bean.ReviewRequest;
+import com.citysearch.webwidget.util.BenchmarkFixtures;
+import com.citysearch.webwidget.util.ExpiringCache;
+
+/**
+ * Reviews API response through the Review widget: build the document, pick the latest well rated
+ * review and fill in the Review bean. The Profile cache is seeded for the listings in the fixture
+ * so no Profile API call is made.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReviewHelperBenchmark {
+    private static final String PUBLISHER = "citysearch";
+
+    private byte[] reviews;
+    private ReviewRequest request;
+    private ReviewHelper helper;
+
+    @Setup
+    public void setUp() throws Exception {
+        reviews = BenchmarkFixtures.load(BenchmarkFixtures.REVIEWS);
+
+        request = new ReviewRequest();
+        request.setPublisher(PUBLISHER);
+        request.setAdUnitName("review");
+        request.setAdUnitSize("300x250");
+        request.setWhere("Pasadena, CA");
+        request.setClientIP("127.0.0.1");
+        helper = new ReviewHelper("/web-widgets");
+    }
+
+    @Setup(Level.Iteration)
+    public void seedProfileCache() throws Exception {
+        ExpiringCache<String, LocationProfile> cache = ProfileProxy.getProfileCache();
+        for (Object child : BenchmarkFixtures.parse(reviews).getRootElement().getChildren(
+                "review")) {
+            String listingId = ((Element) child).getChildText("listing_id");
+            LocationProfile profile = new LocationProfile();
+            profile.setListingId(listingId);
+            profile.setStreet("33 Miller Alley");
+            profile.setCity("Pasadena");
+            profile.setState("CA");
+            profile.setPostalCode("91103");
+            profile.setPhone("(626) 683-3000");
+            profile.setReviewCount("112");
+            profile.setImageUrl("http://images.citysearch.net/assets/imgdb/merchant/" + listingId
+                    + "_48x48.jpg");
+            profile.setProfileUrl("http://losangeles.citysearch.com/profile/" + listingId + "/");
+            profile.setSendToFriendUrl("http://losangeles.citysearch.com/stf/" + listingId);
+            cache.put(PUBLISHER + "|" + listingId, profile);
+        }
+    }
+
+    @Benchmark
+    public Review latestReview() throws Exception {
+        return helper.toReview(request, BenchmarkFixtures.parse(reviews,
+                new ReviewResponseHandler(ReviewHelper.MINIMUM_RATING)));
+    }
+}
@@ -0,0 +1,61 @@
+package com.citysearch.webwidget.helper;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.citysearch.webwidget.api.parser.SearchResponseHandler;
+import com.citysearch.webwidget.bean.NearbyPlace;
+import com.citysearch.webwidget.bean.SearchRequest;
+import com.citysearch.webwidget.util.BenchmarkFixtures;
+
+/**
+ * Search API response through the distance ranking used as fill by the Nearby widget.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchHelperBenchmark {
+    private byte[] search;
+    private SearchRequest request;
+    private SearchHelper helper;
+    private BigDecimal latitude;
+    private BigDecimal longitude;
+
+    @Setup
+    public void setUp() throws Exception {
+        search = BenchmarkFixtures.load(BenchmarkFixtures.SEARCH);
+
+        request = new SearchRequest();
+        request.setPublisher("insider_pages");
+        request.setAdUnitName("nearby");
+        request.setAdUnitSize("300x250");
+        request.setWhere("Pasadena, CA");
+        request.setWhat("sushi");
+        request.setClientIP("127.0.0.1");
+        latitude = new BigDecimal("34.147785");
+        longitude = new BigDecimal("-118.144516");
+        helper = new SearchHelper("/web-widgets", 3);
+    }
+
+    @Benchmark
+    public List<NearbyPlace> nearbyPlaces() throws Exception {
+        return helper.getNearbyPlaces(request, latitude, longitude, BenchmarkFixtures.parse(
+                search, new SearchResponseHandler()).getLocations());
+    }
+}
@@ -0,0 +1,52 @@
+package com.citysearch.webwidget.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.jdom.Document;
+
+import com.citysearch.webwidget.api.parser.ResponseHandler;
+import com.citysearch.webwidget.exception.CitysearchException;
+
+/**
+ * Loads the recorded API responses under src/jmh/resources/fixtures. The raw bytes are kept so
+ * every benchmark invocation pays for parsing the response, as a live request does.
+ *
+ */
+public class BenchmarkFixtures {
+    public static final String PFP_LOCATION = "pfp-location.xml";
+    public static final String PFP = "pfp.xml";
+    public static final String SEARCH = "search.xml";
+    public static final String REVIEWS = "reviews.xml";
+    public static final String OFFERS = "offers.xml";
+    public static final String PROFILE = "profile.xml";
+
+    public static byte[] load(String name) throws IOException {
+        InputStream input = BenchmarkFixtures.class.getResourceAsStream("/fixtures/" + name);
+        if (input == null) {
+            throw new IOException("Fixture not found: " + name);
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toByteArray();
+        } finally {
+            input.close();
+        }
+    }
+
+    public static Document parse(byte[] fixture) throws IOException, CitysearchException {
+        return HelperUtil.buildFromStream(new ByteArrayInputStream(fixture));
+    }
+
+    public static <T> T parse(byte[] fixture, ResponseHandler<T> handler)
+            throws CitysearchException {
+        return handler.parse(new ByteArrayInputStream(fixture));
+    }
+}
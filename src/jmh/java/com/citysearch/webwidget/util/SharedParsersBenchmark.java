@@ -0,0 +1,127 @@
+package com.citysearch.webwidget.util;
+
+import java.io.ByteArrayInputStream;
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.jdom.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * The pooled XmlParsers and DateCodec formats under 16 threads. Each invocation checks its own
+ * result, so a parser or format handed to two threads at once fails the run instead of only
+ * skewing the numbers.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+public class SharedParsersBenchmark {
+    private static final int DOCUMENTS = 64;
+
+    private byte[][] documents;
+
+    @Setup
+    public void setUp() {
+        documents = new byte[DOCUMENTS][];
+        for (int i = 0; i < DOCUMENTS; i++) {
+            documents[i] = ("<results><id>" + i + "</id><inner><id>" + i
+                    + "</id></inner></results>").getBytes();
+        }
+    }
+
+    @Benchmark
+    public Document build() throws Exception {
+        int n = ThreadLocalRandom.current().nextInt(DOCUMENTS);
+        Document document = XmlParsers.build(new ByteArrayInputStream(documents[n]));
+        check(String.valueOf(n).equals(document.getRootElement().getChildText("id")), n);
+        return document;
+    }
+
+    /**
+     * A parse whose handler parses a second document while being called back, as a handler that
+     * reads a nested response does
+     */
+    @Benchmark
+    public String nestedParse() throws Exception {
+        final int outer = ThreadLocalRandom.current().nextInt(DOCUMENTS);
+        final int inner = (outer + 1) % DOCUMENTS;
+        final StringBuilder ids = new StringBuilder();
+        XmlParsers.parse(new ByteArrayInputStream(documents[outer]), new DefaultHandler() {
+            private boolean nested;
+
+            public void startElement(String uri, String localName, String qName,
+                    Attributes attributes) {
+                if (!nested && "inner".equals(qName)) {
+                    nested = true;
+                    try {
+                        XmlParsers.parse(new ByteArrayInputStream(documents[inner]),
+                                new IdCollector(ids));
+                    } catch (Exception excep) {
+                        throw new IllegalStateException(excep);
+                    }
+                }
+            }
+
+            public void characters(char[] ch, int start, int length) {
+                ids.append(ch, start, length);
+            }
+        });
+        // Outer id, both ids of the inner document, then the outer inner id
+        String expected = outer + "" + inner + inner + outer;
+        check(expected.equals(ids.toString()), outer);
+        return ids.toString();
+    }
+
+    @Benchmark
+    public String reviewDate() throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int month = random.nextInt(12) + 1;
+        int day = random.nextInt(28) + 1;
+        String dateStr = "2010-" + twoDigits(month) + "-" + twoDigits(day) + "T21:17:08Z";
+        Date date = DateCodec.parseReviewDate(dateStr);
+        String display = DateCodec.formatDisplayDate(date);
+        check(display.equals(twoDigits(month) + "/" + twoDigits(day) + "/2010"), month * 100
+                + day);
+        return display;
+    }
+
+    private static String twoDigits(int value) {
+        return (value < 10) ? "0" + value : String.valueOf(value);
+    }
+
+    private static void check(boolean correct, int input) {
+        if (!correct) {
+            throw new IllegalStateException("Wrong result for input " + input);
+        }
+    }
+
+    private static class IdCollector extends DefaultHandler {
+        private final StringBuilder ids;
+
+        private IdCollector(StringBuilder ids) {
+            this.ids = ids;
+        }
+
+        public void characters(char[] ch, int start, int length) {
+            ids.append(ch, start, length);
+        }
+    }
+}
@@ -2,7 +2,6 @@ package com.citysearch.webwidget.action.project.yellow;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Properties;
 
 import org.apache.log4j.Logger;
 
@@ -16,7 +15,7 @@ import com.citysearch.webwidget.exception.InvalidRequestParametersException;
 import com.citysearch.webwidget.helper.NearbyPlacesHelper;
 import com.citysearch.webwidget.util.CommonConstants;
 import com.citysearch.webwidget.util.OneByOneTrackingUtil;
-import com.citysearch.webwidget.util.PropertiesLoader;
+import com.citysearch.webwidget.util.WebWidgetConfig;
 import com.opensymphony.xwork2.Action;
 import com.opensymphony.xwork2.ModelDriven;
 
@@ -107,9 +106,9 @@ public class NearbyPlacesAction extends AbstractCitySearchAction implements
 
         // For project yellow make the return of house ads configurable.
         // We still want to return the tracking pixel but not the actual ad.
-        Properties appProperties = PropertiesLoader.getApplicationProperties();
-        if (appProperties.containsKey(RETURN_HOUSEADS_PROPERTY)
-                && !Boolean.parseBoolean((String) appProperties.get(RETURN_HOUSEADS_PROPERTY))) {
+        String returnHouseAds = WebWidgetConfig.get().getApplicationProperty(
+                RETURN_HOUSEADS_PROPERTY);
+        if (returnHouseAds != null && !Boolean.parseBoolean(returnHouseAds)) {
             nearbyPlacesResponse.setHouseAds(null);
         }
         return Action.SUCCESS;
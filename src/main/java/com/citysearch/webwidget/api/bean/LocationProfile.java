@@ -9,6 +9,8 @@ public class LocationProfile {
 	private String phone;
 	private String reviewCount;
 	private String imageUrl;
+	// Category of the stock images to pick from when there is no image
+	private String stockImageCategory;
 	private String profileUrl;
 	private String sendToFriendUrl;
 	private String reviewsUrl;
@@ -83,6 +85,14 @@ public class LocationProfile {
 		this.imageUrl = imageUrl;
 	}
 
+	public String getStockImageCategory() {
+		return stockImageCategory;
+	}
+
+	public void setStockImageCategory(String stockImageCategory) {
+		this.stockImageCategory = stockImageCategory;
+	}
+
 	public String getProfileUrl() {
 		return profileUrl;
 	}
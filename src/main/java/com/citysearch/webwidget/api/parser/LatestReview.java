@@ -0,0 +1,29 @@
+package com.citysearch.webwidget.api.parser;
+
+import java.util.Date;
+
+import com.citysearch.webwidget.api.bean.ReviewResponse;
+import com.citysearch.webwidget.exception.CitysearchException;
+import com.citysearch.webwidget.util.DateCodec;
+
+/**
+ * Keeps the review with the latest review_date of those offered. Of reviews with the same date
+ * the last one offered wins.
+ *
+ */
+final class LatestReview {
+    private ReviewResponse review;
+    private Date date;
+
+    void offer(ReviewResponse candidate) throws CitysearchException {
+        Date candidateDate = DateCodec.parseReviewDate(candidate.getReviewDate());
+        if (date == null || !candidateDate.before(date)) {
+            review = candidate;
+            date = candidateDate;
+        }
+    }
+
+    ReviewResponse get() {
+        return review;
+    }
+}
@@ -0,0 +1,101 @@
+package com.citysearch.webwidget.api.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xml.sax.Attributes;
+
+import com.citysearch.webwidget.api.bean.OfferAPIBean;
+
+/**
+ * Maps an Offers API response to OfferAPIBeans in the order of the response
+ *
+ */
+public class OfferResponseHandler extends ResponseHandler<List<OfferAPIBean>> {
+    private static final String OFFER = "offer";
+    private static final String CITY = "city";
+    private static final String ATTRIBUTION_SOURCE = "attribution_source";
+    private static final String CS_RATING = "cs_rating";
+    private static final String REVIEW_COUNT = "review_count";
+    private static final String IMAGE_URL = "image_url";
+    private static final String LATITUDE = "latitude";
+    private static final String LISTING_ID = "listing_id";
+    private static final String LISTING_NAME = "listing_name";
+    private static final String LONGITUDE = "longitude";
+    private static final String OFFER_DESCRIPTION = "offer_description";
+    private static final String OFFER_ID = "offer_id";
+    private static final String OFFER_TITLE = "offer_title";
+    private static final String REFERENCE_ID = "reference_id";
+    private static final String STATE = "state";
+    private static final String STREET = "street";
+    private static final String ZIP = "zip";
+
+    private final List<OfferAPIBean> offers = new ArrayList<OfferAPIBean>();
+    private OfferAPIBean offer;
+
+    public List<OfferAPIBean> getResult() {
+        return offers;
+    }
+
+    public String getSharingKey() {
+        return getClass().getName();
+    }
+
+    public ResponseHandler<List<OfferAPIBean>> newHandler() {
+        return new OfferResponseHandler();
+    }
+
+    protected void startElement(String name, int depth, Attributes attributes) {
+        if (depth == 2 && OFFER.equals(name)) {
+            offer = new OfferAPIBean();
+        }
+    }
+
+    protected void endElement(String name, int depth) {
+        if (offer == null) {
+            return;
+        }
+        if (depth == 3) {
+            setField(name);
+        } else if (depth == 2) {
+            offers.add(offer);
+            offer = null;
+        }
+    }
+
+    private void setField(String name) {
+        if (CITY.equals(name)) {
+            offer.setCity(getText());
+        } else if (STATE.equals(name)) {
+            offer.setState(getText());
+        } else if (ATTRIBUTION_SOURCE.equals(name)) {
+            offer.setAttributionSrc(getText());
+        } else if (CS_RATING.equals(name)) {
+            offer.setRating(getText());
+        } else if (REVIEW_COUNT.equals(name)) {
+            offer.setReviewCount(getText());
+        } else if (IMAGE_URL.equals(name)) {
+            offer.setImageUrl(getText());
+        } else if (LATITUDE.equals(name)) {
+            offer.setLatitude(getText());
+        } else if (LISTING_ID.equals(name)) {
+            offer.setListingId(getText());
+        } else if (LONGITUDE.equals(name)) {
+            offer.setLongitude(getText());
+        } else if (OFFER_ID.equals(name)) {
+            offer.setOfferId(getText());
+        } else if (OFFER_TITLE.equals(name)) {
+            offer.setOfferTitle(getText());
+        } else if (OFFER_DESCRIPTION.equals(name)) {
+            offer.setOfferDescription(getText());
+        } else if (LISTING_NAME.equals(name)) {
+            offer.setListingName(getText());
+        } else if (REFERENCE_ID.equals(name)) {
+            offer.setReferenceId(getText());
+        } else if (STREET.equals(name)) {
+            offer.setStreet(getText());
+        } else if (ZIP.equals(name)) {
+            offer.setZip(getText());
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.citysearch.webwidget.api.parser;
+
+import org.apache.commons.lang.StringUtils;
+import org.xml.sax.Attributes;
+
+import com.citysearch.webwidget.api.bean.PFPAd;
+import com.citysearch.webwidget.api.bean.PFPResponse;
+import com.citysearch.webwidget.util.CommonConstants;
+
+/**
+ * Maps a PFP or PFP location response to a PFPResponse. Ads of type "local PFP" go to localPfp
+ * and ads of type "backfill" to backfill, both in the order of the response; other ads are
+ * dropped. The &lt;b&gt; tags are removed from the tagline and description of backfill ads.
+ *
+ */
+public class PFPResponseHandler extends ResponseHandler<PFPResponse> {
+    private static final String AD_TAG = "ad";
+    private static final String TYPE_TAG = "type";
+    private static final String REVIEW_RATING_TAG = "overall_review_rating";
+    private static final String REVIEWS_TAG = "reviews";
+    private static final String LISTING_ID_TAG = "listingId";
+    private static final String TAGLINE_TAG = "tagline";
+    private static final String AD_DISPLAY_URL_TAG = "ad_display_url";
+    private static final String AD_IMAGE_URL_TAG = "ad_image_url";
+    private static final String PHONE_TAG = "phone";
+    private static final String DESC_TAG = "description";
+    private static final String ZIP_TAG = "zip";
+    private static final String AD_DESTINATION_URL = "ad_destination_url";
+    private static final String AD_TYPE_PFP = "local PFP";
+    private static final String AD_TYPE_BACKFILL = "backfill";
+
+    private final PFPResponse response = new PFPResponse();
+    private PFPAd ad;
+    private String adType;
+
+    public PFPResponse getResult() {
+        return response;
+    }
+
+    public String getSharingKey() {
+        return getClass().getName();
+    }
+
+    public ResponseHandler<PFPResponse> newHandler() {
+        return new PFPResponseHandler();
+    }
+
+    protected void startElement(String name, int depth, Attributes attributes) {
+        if (depth == 2 && AD_TAG.equals(name)) {
+            ad = new PFPAd();
+            adType = null;
+        }
+    }
+
+    protected void endElement(String name, int depth) {
+        if (ad == null) {
+            return;
+        }
+        if (depth == 3) {
+            setField(name);
+        } else if (depth == 2) {
+            addAd();
+            ad = null;
+        }
+    }
+
+    private void setField(String name) {
+        if (TYPE_TAG.equals(name)) {
+            adType = StringUtils.trim(getText());
+        } else if (CommonConstants.NAME.equals(name)) {
+            ad.setName(getText());
+        } else if (REVIEW_RATING_TAG.equals(name)) {
+            ad.setRating(getText());
+        } else if (REVIEWS_TAG.equals(name)) {
+            ad.setReviewCount(getText());
+        } else if (CommonConstants.DISTANCE.equals(name)) {
+            ad.setDistance(getText());
+        } else if (TAGLINE_TAG.equals(name)) {
+            ad.setCategory(getText());
+        } else if (LISTING_ID_TAG.equals(name)) {
+            ad.setListingId(getText());
+        } else if (AD_DISPLAY_URL_TAG.equals(name)) {
+            ad.setAdDisplayUrl(getText());
+        } else if (AD_IMAGE_URL_TAG.equals(name)) {
+            ad.setImageUrl(getText());
+        } else if (PHONE_TAG.equals(name)) {
+            ad.setPhone(getText());
+        } else if (CommonConstants.OFFERS.equals(name)) {
+            ad.setOffers(getText());
+        } else if (DESC_TAG.equals(name)) {
+            ad.setDescription(getText());
+        } else if (CommonConstants.STREET.equals(name)) {
+            ad.setStreet(getText());
+        } else if (CommonConstants.CITY.equals(name)) {
+            ad.setCity(getText());
+        } else if (CommonConstants.STATE.equals(name)) {
+            ad.setState(getText());
+        } else if (ZIP_TAG.equals(name)) {
+            ad.setPostalCode(getText());
+        } else if (AD_DESTINATION_URL.equals(name)) {
+            ad.setAdDestinationUrl(getText());
+        }
+    }
+
+    private void addAd() {
+        if (AD_TYPE_PFP.equalsIgnoreCase(adType)) {
+            response.getLocalPfp().add(ad);
+        } else if (AD_TYPE_BACKFILL.equalsIgnoreCase(adType)) {
+            ad.setCategory(removeBold(ad.getCategory()));
+            ad.setDescription(removeBold(ad.getDescription()));
+            response.getBackfill().add(ad);
+        }
+    }
+
+    /**
+     * Removes the &lt;b&gt; tags of a backfill text
+     *
+     * @param value
+     * @return the text, or null if it is blank
+     */
+    private static String removeBold(String value) {
+        if (StringUtils.isBlank(value)) {
+            return null;
+        }
+        return StringUtils.replace(StringUtils.replace(value, "<b>", ""), "</b>", "");
+    }
+}
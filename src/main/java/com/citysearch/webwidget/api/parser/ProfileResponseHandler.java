@@ -0,0 +1,185 @@
+package com.citysearch.webwidget.api.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang.StringUtils;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+
+import com.citysearch.webwidget.api.bean.LocationProfile;
+import com.citysearch.webwidget.api.bean.ReviewResponse;
+import com.citysearch.webwidget.exception.CitysearchException;
+import com.citysearch.webwidget.util.DefaultImages;
+
+/**
+ * Maps the first location of a Profile API response to a LocationProfile along with its latest
+ * review. The parsing stops at the end of that location.
+ * <p>
+ * The image is the first image with an image_url. If there is none, the first category that has
+ * stock images in review.image.properties is kept instead. The parsed profile is cached, so the
+ * stock image itself is picked at random for each request by ProfileHelper.
+ *
+ */
+public class ProfileResponseHandler extends ResponseHandler<LocationProfile> {
+    private static final String LOCATION = "location";
+    private static final String ID = "id";
+    private static final String STREET = "street";
+    private static final String CITY = "city";
+    private static final String STATE = "state";
+    private static final String POSTAL_CODE = "postal_code";
+    private static final String ADDRESS = "address";
+    private static final String CONTACT_INFO = "contact_info";
+    private static final String PHONE = "display_phone";
+    private static final String URLS = "urls";
+    private static final String PROFILE_URL = "profile_url";
+    private static final String SEND_TO_FRIEND_URL = "send_to_friend_url";
+    private static final String REVIEWS_URL = "reviews_url";
+    private static final String WEBSITE_URL = "website_url";
+    private static final String MENU_URL = "menu_url";
+    private static final String RESERVATION_URL = "reservation_url";
+    private static final String MAP_URL = "map_url";
+    private static final String IMAGES = "images";
+    private static final String IMAGE = "image";
+    private static final String IMAGE_URL = "image_url";
+    private static final String CATEGORIES = "categories";
+    private static final String CATEGORY = "category";
+    private static final String CATEGORY_NAME = "name";
+    private static final String REVIEWS = "reviews";
+    private static final String REVIEW = "review";
+    private static final String TOTAL_USER_REVIEWS = "total_user_reviews";
+
+    private final LatestReview latestReview = new LatestReview();
+    private final List<String> categories = new ArrayList<String>();
+    private LocationProfile profile;
+    private ReviewResponse review;
+
+    /**
+     * @return the profile, or null if the response has no location
+     */
+    public LocationProfile getResult() {
+        return profile;
+    }
+
+    public String getSharingKey() {
+        return getClass().getName();
+    }
+
+    public ResponseHandler<LocationProfile> newHandler() {
+        return new ProfileResponseHandler();
+    }
+
+    protected void startElement(String name, int depth, Attributes attributes) {
+        if (depth == 2 && LOCATION.equals(name)) {
+            profile = new LocationProfile();
+        } else if (profile == null) {
+            return;
+        } else if (depth == 4 && REVIEW.equals(name) && REVIEWS.equals(getElementName(3))) {
+            review = new ReviewResponse();
+        } else if (depth == 4 && CATEGORY.equals(name) && CATEGORIES.equals(getElementName(3))) {
+            String category = attributes.getValue(CATEGORY_NAME);
+            if (StringUtils.isNotBlank(category)) {
+                categories.add(category);
+            }
+        }
+    }
+
+    protected void endElement(String name, int depth) throws SAXException {
+        if (profile == null) {
+            return;
+        }
+        try {
+            switch (depth) {
+            case 2:
+                endLocation();
+                break;
+            case 3:
+                if (ID.equals(name)) {
+                    profile.setListingId(getText());
+                }
+                break;
+            case 4:
+                endLocationField(name, getElementName(3));
+                break;
+            case 5:
+                if (review != null) {
+                    ReviewResponseHandler.setField(review, name, getText());
+                } else if (IMAGE_URL.equals(name) && IMAGE.equals(getElementName(4))
+                        && IMAGES.equals(getElementName(3)) && profile.getImageUrl() == null
+                        && StringUtils.isNotBlank(getText())) {
+                    profile.setImageUrl(getText());
+                }
+                break;
+            default:
+                break;
+            }
+        } catch (CitysearchException cse) {
+            throw toSAXException(cse);
+        }
+    }
+
+    private void endLocationField(String name, String parent) throws CitysearchException {
+        if (ADDRESS.equals(parent)) {
+            if (STREET.equals(name)) {
+                profile.setStreet(getText());
+            } else if (CITY.equals(name)) {
+                profile.setCity(getText());
+            } else if (STATE.equals(name)) {
+                profile.setState(getText());
+            } else if (POSTAL_CODE.equals(name)) {
+                profile.setPostalCode(getText());
+            }
+        } else if (CONTACT_INFO.equals(parent)) {
+            if (PHONE.equals(name)) {
+                profile.setPhone(getText());
+            }
+        } else if (URLS.equals(parent)) {
+            if (PROFILE_URL.equals(name)) {
+                profile.setProfileUrl(getText());
+            } else if (SEND_TO_FRIEND_URL.equals(name)) {
+                profile.setSendToFriendUrl(getText());
+            } else if (REVIEWS_URL.equals(name)) {
+                profile.setReviewsUrl(getText());
+            } else if (WEBSITE_URL.equals(name)) {
+                profile.setWebsiteUrl(getText());
+            } else if (MENU_URL.equals(name)) {
+                profile.setMenuUrl(getText());
+            } else if (RESERVATION_URL.equals(name)) {
+                profile.setReservationUrl(getText());
+            } else if (MAP_URL.equals(name)) {
+                profile.setMapUrl(getText());
+            }
+        } else if (REVIEWS.equals(parent)) {
+            if (TOTAL_USER_REVIEWS.equals(name)) {
+                profile.setReviewCount(getText());
+            } else if (REVIEW.equals(name) && review != null) {
+                latestReview.offer(review);
+                review = null;
+            }
+        }
+    }
+
+    private void endLocation() throws CitysearchException, SAXException {
+        if (profile.getImageUrl() == null) {
+            profile.setStockImageCategory(getStockImageCategory());
+        }
+        profile.setReview(latestReview.get());
+        stop();
+    }
+
+    /**
+     * Returns the first category that has stock images
+     *
+     * @return the category, or null if no category has stock images
+     * @throws CitysearchException
+     */
+    private String getStockImageCategory() throws CitysearchException {
+        for (String category : categories) {
+            List<String> imageList = DefaultImages.getCategoryImages(category);
+            if (imageList != null && !imageList.isEmpty()) {
+                return category;
+            }
+        }
+        return null;
+    }
+}
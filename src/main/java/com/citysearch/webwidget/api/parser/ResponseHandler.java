@@ -0,0 +1,189 @@
+package com.citysearch.webwidget.api.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import com.citysearch.webwidget.exception.CitysearchException;
+import com.citysearch.webwidget.util.XmlParsers;
+
+/**
+ * Base of the streaming parsers that map an API response straight into the api beans. The
+ * response is read in one SAX pass without building a document. Subclasses are told when each
+ * element starts and ends along with its depth, the root element being at depth 1. When an
+ * element without child elements ends, getText() returns its text as JDOM getText would: "" for
+ * an empty element. A subclass that has read everything it needs calls stop() and the rest of the
+ * response is not parsed.
+ * <p>
+ * The response is read with the thread's parser from XmlParsers, which never loads an external
+ * DTD or entity.
+ * <p>
+ * A handler holds the state of one response and is not reused.
+ *
+ */
+public abstract class ResponseHandler<T> extends DefaultHandler {
+    private final StringBuilder text = new StringBuilder();
+    // Names of the open elements, path[0] is the root
+    private String[] path = new String[8];
+    private int depth;
+
+    /**
+     * Parses the response and returns what the handler mapped from it. The stream is closed.
+     *
+     * @param input
+     * @return T, as returned by getResult()
+     * @throws CitysearchException if the response is not well formed or cannot be read
+     */
+    public T parse(InputStream input) throws CitysearchException {
+        if (input == null) {
+            return getResult();
+        }
+        try {
+            XmlParsers.parse(input, this);
+        } catch (ParsingStopped stopped) {
+            // Everything needed has been read
+        } catch (SAXException se) {
+            if (se.getException() instanceof CitysearchException) {
+                throw (CitysearchException) se.getException();
+            }
+            throw new CitysearchException(getClass().getName(), "parse", se);
+        } catch (IOException ioe) {
+            throw new CitysearchException(getClass().getName(), "parse", ioe);
+        } finally {
+            try {
+                input.close();
+            } catch (IOException ioe) {
+                // The response has been read
+            }
+        }
+        return getResult();
+    }
+
+    /**
+     * Returns what has been mapped from the response
+     *
+     * @return T
+     */
+    public abstract T getResult();
+
+    /**
+     * Returns what, besides the url and headers, decides the result: the handler class and any
+     * setting that changes what it maps. Concurrent calls with the same url, headers and key then
+     * share one upstream call and its result, see HelperUtil.getAPIResponse. Returns null, the
+     * default, if the result cannot be shared: the callers read state of the handler other than
+     * getResult(), or modify the result.
+     *
+     * @return String
+     */
+    public String getSharingKey() {
+        return null;
+    }
+
+    /**
+     * Returns a new handler with the same settings, to read the answer of a second request when
+     * a slow call is hedged, see HelperUtil.getAPIResponse. Returns null, the default, if the
+     * call cannot be hedged; it can only be if the result is all its callers read.
+     *
+     * @return ResponseHandler
+     */
+    public ResponseHandler<T> newHandler() {
+        return null;
+    }
+
+    /**
+     * Called when an element starts
+     *
+     * @param name
+     * @param depth 1 for the root element
+     * @param attributes
+     * @throws SAXException
+     */
+    protected abstract void startElement(String name, int depth, Attributes attributes)
+            throws SAXException;
+
+    /**
+     * Called when an element ends. getText() returns its text.
+     *
+     * @param name
+     * @param depth 1 for the root element
+     * @throws SAXException
+     */
+    protected abstract void endElement(String name, int depth) throws SAXException;
+
+    /**
+     * Returns the text of the element that is ending, if it has no child elements
+     *
+     * @return String
+     */
+    protected String getText() {
+        return text.toString();
+    }
+
+    /**
+     * Returns the name of the open element at a depth, e.g. the parent of the element that is
+     * ending is at depth - 1
+     *
+     * @param level 1 for the root element
+     * @return String
+     */
+    protected String getElementName(int level) {
+        return path[level - 1];
+    }
+
+    /**
+     * Stops the parsing. The result is what has been mapped so far.
+     *
+     * @throws SAXException always
+     */
+    protected void stop() throws SAXException {
+        throw new ParsingStopped();
+    }
+
+    /**
+     * Passes an error raised while mapping a value on to the caller of parse()
+     *
+     * @param cse
+     * @return SAXException to throw
+     */
+    protected SAXException toSAXException(CitysearchException cse) {
+        return new SAXException(cse);
+    }
+
+    public final void startElement(String uri, String localName, String qName,
+            Attributes attributes) throws SAXException {
+        if (depth == path.length) {
+            String[] larger = new String[path.length * 2];
+            System.arraycopy(path, 0, larger, 0, path.length);
+            path = larger;
+        }
+        path[depth++] = qName;
+        text.setLength(0);
+        startElement(qName, depth, attributes);
+    }
+
+    public final void endElement(String uri, String localName, String qName)
+            throws SAXException {
+        endElement(qName, depth);
+        path[--depth] = null;
+        // The text after a child element is not part of the parent's text
+        text.setLength(0);
+    }
+
+    public final void characters(char[] ch, int start, int length) {
+        text.append(ch, start, length);
+    }
+
+    /**
+     * Thrown by stop() to end the parsing early
+     */
+    private static final class ParsingStopped extends SAXException {
+        private static final long serialVersionUID = 1L;
+
+        private ParsingStopped() {
+            super("Parsing stopped");
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.citysearch.webwidget.api.parser;
+
+import org.apache.commons.lang.math.NumberUtils;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+
+import com.citysearch.webwidget.api.bean.ReviewResponse;
+import com.citysearch.webwidget.exception.CitysearchException;
+
+/**
+ * Maps the latest review of a Reviews API response to a ReviewResponse. Only the latest review
+ * read so far is kept; of reviews with the same date the last one wins. Reviews rated below
+ * minimumRating are skipped.
+ *
+ */
+public class ReviewResponseHandler extends ResponseHandler<ReviewResponse> {
+    public static final int ANY_RATING = Integer.MIN_VALUE;
+
+    private static final String REVIEW_ELEMENT = "review";
+    private static final String ELEMENT_REVIEW_URL = "review_url";
+    private static final String BUSINESS_NAME = "business_name";
+    private static final String LISTING_ID = "listing_id";
+    private static final String REVIEW_ID = "review_id";
+    private static final String REVIEW_TITLE = "review_title";
+    private static final String REVIEW_TEXT = "review_text";
+    private static final String PROS = "pros";
+    private static final String CONS = "cons";
+    private static final String REVIEW_RATING = "review_rating";
+    private static final String REVIEW_DATE = "review_date";
+    private static final String REVIEW_AUTHOR = "review_author";
+
+    private final int minimumRating;
+    private final LatestReview latestReview = new LatestReview();
+    private ReviewResponse review;
+
+    /**
+     * @param minimumRating the lowest review_rating to consider, or ANY_RATING
+     */
+    public ReviewResponseHandler(int minimumRating) {
+        this.minimumRating = minimumRating;
+    }
+
+    /**
+     * @return the latest review, or null if there is none
+     */
+    public ReviewResponse getResult() {
+        return latestReview.get();
+    }
+
+    public String getSharingKey() {
+        return getClass().getName() + ":" + minimumRating;
+    }
+
+    public ResponseHandler<ReviewResponse> newHandler() {
+        return new ReviewResponseHandler(minimumRating);
+    }
+
+    protected void startElement(String name, int depth, Attributes attributes) {
+        if (depth == 2 && REVIEW_ELEMENT.equals(name)) {
+            review = new ReviewResponse();
+        }
+    }
+
+    protected void endElement(String name, int depth) throws SAXException {
+        if (review == null) {
+            return;
+        }
+        if (depth == 3) {
+            setField(review, name, getText());
+        } else if (depth == 2) {
+            if (minimumRating == ANY_RATING
+                    || NumberUtils.toInt(review.getRating()) >= minimumRating) {
+                try {
+                    latestReview.offer(review);
+                } catch (CitysearchException cse) {
+                    throw toSAXException(cse);
+                }
+            }
+            review = null;
+        }
+    }
+
+    /**
+     * Sets the value of a child element of a review element
+     *
+     * @param review
+     * @param name
+     * @param text
+     */
+    static void setField(ReviewResponse review, String name, String text) {
+        if (BUSINESS_NAME.equals(name)) {
+            review.setBusinessName(text);
+        } else if (REVIEW_TITLE.equals(name)) {
+            review.setReviewTitle(text);
+        } else if (REVIEW_TEXT.equals(name)) {
+            review.setReviewText(text);
+        } else if (PROS.equals(name)) {
+            review.setPros(text);
+        } else if (CONS.equals(name)) {
+            review.setCons(text);
+        } else if (LISTING_ID.equals(name)) {
+            review.setListingId(text);
+        } else if (REVIEW_AUTHOR.equals(name)) {
+            review.setAuthor(text);
+        } else if (REVIEW_RATING.equals(name)) {
+            review.setRating(text);
+        } else if (REVIEW_ID.equals(name)) {
+            review.setReviewId(text);
+        } else if (ELEMENT_REVIEW_URL.equals(name)) {
+            review.setReviewUrl(text);
+        } else if (REVIEW_DATE.equals(name)) {
+            review.setReviewDate(text);
+        }
+    }
+}
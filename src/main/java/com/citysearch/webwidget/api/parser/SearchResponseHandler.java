@@ -0,0 +1,155 @@
+package com.citysearch.webwidget.api.parser;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+
+import com.citysearch.webwidget.api.bean.SearchLocation;
+import com.citysearch.webwidget.api.bean.SearchResponse;
+import com.citysearch.webwidget.util.CommonConstants;
+
+/**
+ * Maps a Search API response to a SearchResponse with its locations in the order of the
+ * response. The latitude and longitude of the region element are kept as returned, see
+ * getRegionLatitude() and getRegionLongitude(); they are not set on the SearchResponse.
+ * <p>
+ * With maxLocations the locations after the first maxLocations are skipped, and the parsing stops
+ * once those and the region have been read. Callers that rank the locations must read them all.
+ *
+ */
+public class SearchResponseHandler extends ResponseHandler<SearchResponse> {
+    public static final int ALL_LOCATIONS = Integer.MAX_VALUE;
+
+    private static final String REGION_TAG = "region";
+    private static final String LOCATION_TAG = "location";
+    private static final String ADDRESS_TAG = "address";
+    private static final String LISTING_ID_TAG = "id";
+    private static final String REVIEWS_TAG = "userreviewcount";
+    private static final String TAGLINE_TAG = "samplecategories";
+    private static final String PHONE_TAG = "phonenumber";
+    private static final String AD_DISPLAY_URL_TAG = "profile";
+    private static final String AD_IMAGE_URL_TAG = "image";
+    private static final String REVIEW_RATING_TAG = "rating";
+
+    private final int maxLocations;
+    private final SearchResponse response = new SearchResponse();
+    private SearchLocation location;
+    private boolean inRegion;
+    private boolean regionRead;
+    private String regionLatitude;
+    private String regionLongitude;
+
+    public SearchResponseHandler() {
+        this(ALL_LOCATIONS);
+    }
+
+    /**
+     * @param maxLocations the number of locations to read, 0 to only read the region
+     */
+    public SearchResponseHandler(int maxLocations) {
+        this.maxLocations = maxLocations;
+    }
+
+    public SearchResponse getResult() {
+        return response;
+    }
+
+    /**
+     * @return the latitude of the region element, or null if there is none
+     */
+    public String getRegionLatitude() {
+        return regionLatitude;
+    }
+
+    /**
+     * @return the longitude of the region element, or null if there is none
+     */
+    public String getRegionLongitude() {
+        return regionLongitude;
+    }
+
+    protected void startElement(String name, int depth, Attributes attributes) {
+        if (depth != 2) {
+            return;
+        }
+        if (LOCATION_TAG.equals(name) && response.getLocations().size() < maxLocations) {
+            location = new SearchLocation();
+            location.setListingId(attributes.getValue(LISTING_ID_TAG));
+        } else if (REGION_TAG.equals(name) && !regionRead) {
+            inRegion = true;
+        }
+    }
+
+    protected void endElement(String name, int depth) throws SAXException {
+        if (inRegion) {
+            endRegionElement(name, depth);
+        } else if (location != null) {
+            if (depth == 2) {
+                response.getLocations().add(location);
+                location = null;
+                stopIfDone();
+            } else if (depth == 3) {
+                setField(name);
+            } else if (depth == 4 && ADDRESS_TAG.equals(getElementName(3))) {
+                setAddressField(name);
+            }
+        }
+    }
+
+    private void endRegionElement(String name, int depth) throws SAXException {
+        if (depth == 3) {
+            if (CommonConstants.LATITUDE.equals(name)) {
+                regionLatitude = getText();
+            } else if (CommonConstants.LONGITUDE.equals(name)) {
+                regionLongitude = getText();
+            }
+        } else if (depth == 2) {
+            inRegion = false;
+            regionRead = true;
+            stopIfDone();
+        }
+    }
+
+    private void stopIfDone() throws SAXException {
+        if (regionRead && response.getLocations().size() >= maxLocations) {
+            stop();
+        }
+    }
+
+    private void setField(String name) {
+        if (CommonConstants.NAME.equals(name)) {
+            location.setName(getText());
+        } else if (REVIEW_RATING_TAG.equals(name)) {
+            location.setRating(getText());
+        } else if (REVIEWS_TAG.equals(name)) {
+            location.setReviewCount(getText());
+        } else if (CommonConstants.LATITUDE.equals(name)) {
+            location.setLatitude(getText());
+        } else if (CommonConstants.LONGITUDE.equals(name)) {
+            location.setLongitude(getText());
+        } else if (CommonConstants.DISTANCE.equals(name)) {
+            location.setDistance(getText());
+        } else if (TAGLINE_TAG.equals(name)) {
+            location.setCategory(getText());
+        } else if (AD_DISPLAY_URL_TAG.equals(name)) {
+            location.setAdDisplayUrl(getText());
+        } else if (AD_IMAGE_URL_TAG.equals(name)) {
+            location.setImageUrl(getText());
+        } else if (PHONE_TAG.equals(name)) {
+            location.setPhone(getText());
+        } else if (CommonConstants.OFFERS.equals(name)) {
+            location.setOffers(getText());
+        }
+    }
+
+    private void setAddressField(String name) {
+        if (CommonConstants.STREET.equals(name)) {
+            location.setStreet(getText());
+        } else if (CommonConstants.CITY.equals(name)) {
+            location.setCity(getText());
+        } else if (CommonConstants.STATE.equals(name)) {
+            location.setState(getText());
+        } else if (CommonConstants.POSTALCODE.equals(name)) {
+            location.setPostalCode(getText());
+        }
+    }
+}
@@ -1,151 +1,114 @@
 package com.citysearch.webwidget.api.proxy;
 
-import java.util.List;
-import java.util.Properties;
-
-import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
 import org.apache.log4j.Logger;
-import org.jdom.Document;
-import org.jdom.Element;
 
-import com.citysearch.webwidget.api.bean.PFPAd;
 import com.citysearch.webwidget.api.bean.PFPResponse;
+import com.citysearch.webwidget.api.parser.PFPResponseHandler;
 import com.citysearch.webwidget.bean.RequestBean;
 import com.citysearch.webwidget.exception.CitysearchException;
 import com.citysearch.webwidget.exception.InvalidHttpResponseException;
 import com.citysearch.webwidget.exception.InvalidRequestParametersException;
-import com.citysearch.webwidget.util.CommonConstants;
-import com.citysearch.webwidget.util.PropertiesLoader;
+import com.citysearch.webwidget.util.HelperUtil;
+import com.citysearch.webwidget.util.RefreshingCache;
+import com.citysearch.webwidget.util.WebWidgetConfig;
 
 public class PFPProxy extends AbstractProxy {
 	private Logger log = Logger.getLogger(getClass());
 
-	private final static String PFP_LOCATION_URL = "pfplocation.url";
-	private final static String PFP_URL = "pfp.url";
-	private static final String AD_TAG = "ad";
-	private static final String TYPE_TAG = "type";
-	private static final String REVIEW_RATING_TAG = "overall_review_rating";
-	private static final String REVIEWS_TAG = "reviews";
-	private static final String LISTING_ID_TAG = "listingId";
-	private static final String TAGLINE_TAG = "tagline";
-	private static final String AD_DISPLAY_URL_TAG = "ad_display_url";
-	private static final String AD_IMAGE_URL_TAG = "ad_image_url";
-	private static final String PHONE_TAG = "phone";
-	private static final String DESC_TAG = "description";
-	private static final String ZIP_TAG = "zip";
-	private static final String AD_DESTINATION_URL = "ad_destination_url";
-	private static final String AD_TYPE_PFP = "local PFP";
-	private static final String AD_TYPE_BACKFILL = "backfill";
+	private static final String CACHE_SIZE_PROPERTY = "pfp.cache.size";
+	private static final String CACHE_TTL_PROPERTY = "pfp.cache.ttl";
+	private static final String CACHE_NEGATIVE_TTL_PROPERTY = "pfp.cache.negative.ttl";
+	private static final String CACHE_MAX_STALE_PROPERTY = "pfp.cache.maxstale";
+	private static final int DEFAULT_CACHE_SIZE = 2000;
+	private static final long DEFAULT_CACHE_TTL = 60000;
+	private static final long DEFAULT_CACHE_NEGATIVE_TTL = 30000;
+	private static final long DEFAULT_CACHE_MAX_STALE = 60000;
+	private static RefreshingCache<String, PFPResponse> pfpCache;
 
-	private PFPResponse parse(Document document) {
-		PFPResponse response = new PFPResponse();
-		if (document != null && document.hasRootElement()) {
-			Element rootElement = document.getRootElement();
-			List<Element> children = rootElement.getChildren(AD_TAG);
-			if (children != null && !children.isEmpty()) {
-				for (Element elm : children) {
-					String adType = StringUtils
-							.trim(elm.getChildText(TYPE_TAG));
-					if (adType != null && adType.equalsIgnoreCase(AD_TYPE_PFP)) {
-						PFPAd ad = toPFPAd(elm);
-						response.getLocalPfp().add(ad);
-					} else if (adType != null
-							&& adType.equalsIgnoreCase(AD_TYPE_BACKFILL)) {
-						PFPAd ad = toPFPAdBackfill(elm);
-						response.getBackfill().add(ad);
+	/**
+	 * Returns the cache shared by all PFP and PFP location lookups, creating
+	 * it on first use
+	 * 
+	 * @return RefreshingCache
+	 * @throws CitysearchException
+	 */
+	public static synchronized RefreshingCache<String, PFPResponse> getPFPCache()
+			throws CitysearchException {
+		if (pfpCache == null) {
+			WebWidgetConfig config = WebWidgetConfig.get();
+			int maxSize = NumberUtils.toInt(config
+					.getApplicationProperty(CACHE_SIZE_PROPERTY), DEFAULT_CACHE_SIZE);
+			long timeToLive = NumberUtils.toLong(config
+					.getApplicationProperty(CACHE_TTL_PROPERTY), DEFAULT_CACHE_TTL);
+			long negativeTimeToLive = NumberUtils.toLong(config
+					.getApplicationProperty(CACHE_NEGATIVE_TTL_PROPERTY),
+					DEFAULT_CACHE_NEGATIVE_TTL);
+			long maxStale = NumberUtils.toLong(config
+					.getApplicationProperty(CACHE_MAX_STALE_PROPERTY),
+					DEFAULT_CACHE_MAX_STALE);
+			pfpCache = new RefreshingCache<String, PFPResponse>("pfp", maxSize,
+					timeToLive, negativeTimeToLive, maxStale) {
+				protected PFPResponse load(String url)
+						throws CitysearchException {
+					try {
+						return HelperUtil.getAPIResponse(url, null,
+								new PFPResponseHandler());
+					} catch (InvalidHttpResponseException ihe) {
+						throw new CitysearchException("PFPProxy",
+								"getPFPResponse", ihe);
 					}
 				}
-			}
-		}
-		return response;
-	}
 
-	private PFPAd toPFPAd(Element adElm) {
-		PFPAd ad = new PFPAd();
-		ad.setName(adElm.getChildText(CommonConstants.NAME));
-		ad.setRating(adElm.getChildText(REVIEW_RATING_TAG));
-		ad.setReviewCount(adElm.getChildText(REVIEWS_TAG));
-		ad.setDistance(adElm.getChildText(CommonConstants.DISTANCE));
-		ad.setCategory(adElm.getChildText(TAGLINE_TAG));
-		ad.setListingId(adElm.getChildText(LISTING_ID_TAG));
-		ad.setAdDisplayUrl(adElm.getChildText(AD_DISPLAY_URL_TAG));
-		ad.setImageUrl(adElm.getChildText(AD_IMAGE_URL_TAG));
-		ad.setPhone(adElm.getChildText(PHONE_TAG));
-		ad.setOffers(adElm.getChildText(CommonConstants.OFFERS));
-		ad.setDescription(adElm.getChildText(DESC_TAG));
-		ad.setStreet(adElm.getChildText(CommonConstants.STREET));
-		ad.setCity(adElm.getChildText(CommonConstants.CITY));
-		ad.setState(adElm.getChildText(CommonConstants.STATE));
-		ad.setPostalCode(adElm.getChildText(ZIP_TAG));
-		ad.setAdDestinationUrl(adElm.getChildText(AD_DESTINATION_URL));
-		return ad;
-	}
-
-	private PFPAd toPFPAdBackfill(Element adElm) {
-		PFPAd ad = new PFPAd();
-		String category = adElm.getChildText(TAGLINE_TAG);
-		if (StringUtils.isNotBlank(category)) {
-			category = category.replaceAll("<b>", "");
-			category = category.replaceAll("</b>", "");
-			ad.setCategory(category);
-		}
-		ad.setImageUrl(adElm.getChildText(AD_IMAGE_URL_TAG));
-
-		String description = adElm.getChildText(DESC_TAG);
-		if (StringUtils.isNotBlank(description)) {
-			description = description.replaceAll("<b>", "");
-			description = description.replaceAll("</b>", "");
-			ad.setDescription(description);
+				protected boolean isNegative(PFPResponse response) {
+					return response.getLocalPfp().isEmpty()
+							&& response.getBackfill().isEmpty();
+				}
+			};
 		}
+		return pfpCache;
+	}
 
-		ad.setOffers(adElm.getChildText(CommonConstants.OFFERS));
-		ad.setAdDisplayUrl(adElm.getChildText(AD_DISPLAY_URL_TAG));
-		ad.setAdDestinationUrl(adElm.getChildText(AD_DESTINATION_URL));
-		ad.setListingId(adElm.getChildText(LISTING_ID_TAG));
-		ad.setPhone(adElm.getChildText(PHONE_TAG));
-		return ad;
+	/**
+	 * Returns the parsed response of a PFP or PFP location url. Responses are
+	 * cached per url, so the returned object is shared and must not be
+	 * modified
+	 * 
+	 * @param url
+	 * @return PFPResponse
+	 * @throws CitysearchException
+	 */
+	public static PFPResponse getPFPResponse(String url)
+			throws CitysearchException {
+		return getPFPCache().get(url);
 	}
 
 	public PFPResponse getAdsFromPFPLocation(RequestBean request,
 			int requiredNoOfAds, int extendedRadius)
 			throws InvalidRequestParametersException, CitysearchException {
 		request.validate();
-		Properties properties = PropertiesLoader.getAPIProperties();
-		StringBuilder urlStringBuilder = new StringBuilder(properties
-				.getProperty(PFP_LOCATION_URL));
+		WebWidgetConfig config = WebWidgetConfig.get();
+		StringBuilder urlStringBuilder = new StringBuilder(config.getPfpLocationUrl());
 		urlStringBuilder.append(getLatLonQueryString(request));
 		log.info("PFPProxy.getAdsFromPFPLocation: Query: "
 				+ urlStringBuilder.toString());
-		Document pfpLocationResponse = null;
-		try {
-			pfpLocationResponse = getAPIResponse(urlStringBuilder.toString(),
-					null);
-			log.info("PFPProxy.getAdsFromPFPLocation: successful response");
-		} catch (InvalidHttpResponseException ihe) {
-			throw new CitysearchException(this.getClass().getName(),
-					"getAdsFromPFPLocation", ihe);
-		}
-		return parse(pfpLocationResponse);
+		PFPResponse pfpLocationResponse = getPFPResponse(urlStringBuilder
+				.toString());
+		log.info("PFPProxy.getAdsFromPFPLocation: successful response");
+		return pfpLocationResponse;
 	}
 
 	public PFPResponse getAdsFromPFP(RequestBean request, int requiredNoIfAds)
 			throws InvalidRequestParametersException, CitysearchException {
 		log.info("PFPProxy.getAdsFromPFP: Begin");
 		request.validate();
-		Properties properties = PropertiesLoader.getAPIProperties();
-		StringBuilder urlStringBuilder = new StringBuilder(properties
-				.getProperty(PFP_URL));
+		WebWidgetConfig config = WebWidgetConfig.get();
+		StringBuilder urlStringBuilder = new StringBuilder(config.getPfpUrl());
 		urlStringBuilder.append(getWhereQueryString(request));
 		log.info("PFPProxy.getAdsFromPFP: Query: "
 				+ urlStringBuilder.toString());
-		Document pfpResponse = null;
-		try {
-			pfpResponse = getAPIResponse(urlStringBuilder.toString(), null);
-			log.info("PFPProxy.getAdsFromPFP: successful response");
-		} catch (InvalidHttpResponseException ihe) {
-			throw new CitysearchException(this.getClass().getName(),
-					"getAdsFromPFP", ihe);
-		}
-		return parse(pfpResponse);
+		PFPResponse pfpResponse = getPFPResponse(urlStringBuilder.toString());
+		log.info("PFPProxy.getAdsFromPFP: successful response");
+		return pfpResponse;
 	}
 }
@@ -2,7 +2,6 @@ package com.citysearch.webwidget.bean;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Properties;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
@@ -12,7 +11,7 @@ import com.citysearch.webwidget.exception.InvalidRequestParametersException;
 import com.citysearch.webwidget.util.APIFieldNameConstants;
 import com.citysearch.webwidget.util.CommonConstants;
 import com.citysearch.webwidget.util.HelperUtil;
-import com.citysearch.webwidget.util.PropertiesLoader;
+import com.citysearch.webwidget.util.WebWidgetConfig;
 
 /**
  * The abstract class that contains the common Request field across APIs
@@ -169,37 +168,31 @@ public abstract class AbstractRequest {
 			CitysearchException {
 		log.info("Start AbstractRequest validate()");
 		List<String> errors = new ArrayList<String>();
-		Properties errorProperties = PropertiesLoader.getErrorProperties();
+		WebWidgetConfig config = WebWidgetConfig.get();
 
 		if (StringUtils.isBlank(getPublisher())) {
-			errors.add(errorProperties
-					.getProperty(CommonConstants.PUBLISHER_ERROR_CODE));
+			errors.add(config.getErrorMessage(CommonConstants.PUBLISHER_ERROR_CODE));
 		}
 
 		if (StringUtils.isBlank(getWhat())) {
-			errors.add(errorProperties
-					.getProperty(CommonConstants.WHAT_ERROR_CODE));
+			errors.add(config.getErrorMessage(CommonConstants.WHAT_ERROR_CODE));
 		}
 
 		if ((StringUtils.isBlank(getLatitude()) || StringUtils
 				.isBlank(getLongitude()))
 				&& StringUtils.isBlank(getWhere())) {
-			errors.add(errorProperties
-					.getProperty(CommonConstants.WHERE_ERROR_CODE));
+			errors.add(config.getErrorMessage(CommonConstants.WHERE_ERROR_CODE));
 		}
 		if (!StringUtils.isBlank(getLatitude())
 				&& StringUtils.isBlank(getLongitude())) {
-			errors.add(errorProperties
-					.getProperty(CommonConstants.LONGITUDE_ERROR));
+			errors.add(config.getErrorMessage(CommonConstants.LONGITUDE_ERROR));
 		} else if (StringUtils.isBlank(getLatitude())
 				&& !StringUtils.isBlank(getLongitude())) {
-			errors.add(errorProperties
-					.getProperty(CommonConstants.LATITUDE_ERROR));
+			errors.add(config.getErrorMessage(CommonConstants.LATITUDE_ERROR));
 		}
 
 		if (StringUtils.isBlank(getClientIP())) {
-			errors.add(errorProperties
-					.getProperty(CommonConstants.CLIENT_IP_ERROR_CODE));
+			errors.add(config.getErrorMessage(CommonConstants.CLIENT_IP_ERROR_CODE));
 		}
 		if (!errors.isEmpty()) {
 			throw new InvalidRequestParametersException(this.getClass()
@@ -214,9 +207,8 @@ public abstract class AbstractRequest {
 		// Don't add the publisher param here. Because Some API's requires
 		// publishercode and some requires publisher.
 		// Let the helper handle it.
-		Properties properties = PropertiesLoader.getAPIProperties();
-		String apiKey = properties
-				.getProperty(CommonConstants.API_KEY_PROPERTY);
+		WebWidgetConfig config = WebWidgetConfig.get();
+		String apiKey = config.getApiKey();
 		apiQueryString.append(HelperUtil.constructQueryParam(
 				APIFieldNameConstants.API_KEY, apiKey));
 
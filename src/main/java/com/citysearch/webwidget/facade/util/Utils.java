@@ -9,9 +9,7 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.Enumeration;
 import java.util.List;
-import java.util.Properties;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.math.NumberUtils;
@@ -19,7 +17,8 @@ import org.apache.log4j.Logger;
 
 import com.citysearch.webwidget.exception.CitysearchException;
 import com.citysearch.webwidget.util.CommonConstants;
-import com.citysearch.webwidget.util.PropertiesLoader;
+import com.citysearch.webwidget.util.DefaultImages;
+import com.citysearch.webwidget.util.WebWidgetConfig;
 
 public class Utils {
 	private static Logger log = Logger.getLogger(Utils.class);
@@ -157,8 +156,7 @@ public class Utils {
 	public static String getAbbreviatedString(String stringToAbbreviate,
 			String apiPropertyName, int defaultLength)
 			throws CitysearchException {
-		String value = PropertiesLoader.getAPIProperties().getProperty(
-				apiPropertyName);
+		String value = WebWidgetConfig.get().getApiProperty(apiPropertyName);
 		int length = 0;
 		if (StringUtils.isNotBlank(value)) {
 			length = NumberUtils.toInt(value);
@@ -173,49 +171,35 @@ public class Utils {
 
 	public static String getAbbreviatedString(String stringToAbbreviate,
 			String propertyName) throws CitysearchException {
-		Properties prop = PropertiesLoader.getFieldProperties();
-		if (prop.containsKey(propertyName)) {
-			String value = prop.getProperty(propertyName);
-			if (StringUtils.isNotBlank(value)) {
-				int length = NumberUtils.toInt(value);
-				stringToAbbreviate = StringUtils.abbreviate(stringToAbbreviate,
-						length);
-			}
+		int length = WebWidgetConfig.get().getFieldLength(propertyName);
+		if (length >= 0) {
+			stringToAbbreviate = StringUtils.abbreviate(stringToAbbreviate,
+					length);
 		}
 		return stringToAbbreviate;
 	}
 
 	public static String getTruncatedString(String stringTotruncate,
 			String propertyName) throws CitysearchException {
-		Properties prop = PropertiesLoader.getFieldProperties();
-		if (prop.containsKey(propertyName)) {
-			String value = prop.getProperty(propertyName);
-			if (StringUtils.isNotBlank(value)) {
-				int length = NumberUtils.toInt(value);
-				stringTotruncate = StringUtils.substring(stringTotruncate, 0,
-						length);
-			}
+		int length = WebWidgetConfig.get().getFieldLength(propertyName);
+		if (length >= 0) {
+			stringTotruncate = StringUtils.substring(stringTotruncate, 0,
+					length);
 		}
 		return stringTotruncate;
 	}
 
+	/**
+	 * Returns the default images, relative urls prefixed with the context path.
+	 * The list is shared and must not be modified.
+	 * 
+	 * @param contextPath
+	 * @return List
+	 * @throws CitysearchException
+	 */
 	public static List<String> getImages(String contextPath)
 			throws CitysearchException {
-		List<String> imageList = new ArrayList<String>();
-		Properties imageProperties = PropertiesLoader
-				.getProperties(CommonConstants.IMAGES_PROPERTIES_FILE);
-		Enumeration<Object> enumerator = imageProperties.keys();
-		while (enumerator.hasMoreElements()) {
-			String key = (String) enumerator.nextElement();
-			String value = imageProperties.getProperty(key);
-			if (value != null && !value.startsWith("http")) {
-				StringBuilder strBuilder = new StringBuilder(contextPath);
-				strBuilder.append(value);
-				value = strBuilder.toString();
-			}
-			imageList.add(value);
-		}
-		return imageList;
+		return DefaultImages.getImages(contextPath);
 	}
 
 	public static String getCallBackFunctionString(String callBackFunction,
@@ -5,14 +5,12 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Properties;
 
 import org.apache.commons.lang.StringUtils;
-import org.apache.commons.lang.math.NumberUtils;
 import org.apache.log4j.Logger;
-import org.jdom.Document;
-import org.jdom.Element;
 
+import com.citysearch.webwidget.api.bean.OfferAPIBean;
+import com.citysearch.webwidget.api.parser.OfferResponseHandler;
 import com.citysearch.webwidget.bean.ConquestAdOffer;
 import com.citysearch.webwidget.bean.ConquestAdOfferRequest;
 import com.citysearch.webwidget.bean.Profile;
@@ -24,32 +22,14 @@ import com.citysearch.webwidget.exception.InvalidRequestParametersException;
 import com.citysearch.webwidget.util.APIFieldNameConstants;
 import com.citysearch.webwidget.util.CommonConstants;
 import com.citysearch.webwidget.util.HelperUtil;
-import com.citysearch.webwidget.util.PropertiesLoader;
+import com.citysearch.webwidget.util.WebWidgetConfig;
 @Deprecated
 public class ConquestAdOfferHelper {
 
-    private final static String PROPERTY_OFFERS_URL = "offers.url";
     private Logger log = Logger.getLogger(getClass());
     private String rootPath;
 
-    private static final String OFFER = "offer";
     private static final String RPP_OFFERS = "2";
-    private static final String CITY = "city";
-    private static final String ATTRIBUTION_SOURCE = "attribution_source";
-    private static final String CS_RATING = "cs_rating";
-    private static final String REVIEW_COUNT = "review_count";
-    private static final String IMAGE_URL = "image_url";
-    private static final String LATITUDE = "latitude";
-    private static final String LISTING_ID = "listing_id";
-    private static final String LISTING_NAME = "listing_name";
-    private static final String LONGITUDE = "longitude";
-    private static final String OFFER_DESCRIPTION = "offer_description";
-    private static final String OFFER_ID = "offer_id";
-    private static final String OFFER_TITLE = "offer_title";
-    private static final String REFERENCE_ID = "reference_id";
-    private static final String STATE = "state";
-    private static final String STREET = "street";
-    private static final String ZIP = "zip";
     private static final String PUBLISHER_HEADER = "X-Publisher";
     private Integer displaySize = 1;
 
@@ -133,38 +113,38 @@ public class ConquestAdOfferHelper {
             throws InvalidRequestParametersException, CitysearchException {
         log.info("=========Start offersHelper validateRequest()============================ >");
         List<String> errors = new ArrayList<String>();
-        Properties errorProperties = PropertiesLoader.getErrorProperties();
+        WebWidgetConfig config = WebWidgetConfig.get();
 
         if (StringUtils.isBlank(request.getPublisher())) {
-            errors.add(errorProperties.getProperty(CommonConstants.PUBLISHER_ERROR_CODE));
+            errors.add(config.getErrorMessage(CommonConstants.PUBLISHER_ERROR_CODE));
         }
         if (!StringUtils.isBlank(request.getRadius())
                 && !StringUtils.isBlank(request.getLatitude())
                 && !StringUtils.isBlank(request.getLongitude())
                 && !StringUtils.isBlank(request.getWhere())) {
-            errors.add(errorProperties.getProperty(CommonConstants.LOCATION_ERROR));
+            errors.add(config.getErrorMessage(CommonConstants.LOCATION_ERROR));
         }
         if (StringUtils.isBlank(request.getLatitude())
                 && StringUtils.isBlank(request.getLongitude())
                 && StringUtils.isBlank(request.getWhere())) {
-            errors.add(errorProperties.getProperty(CommonConstants.WHERE_ERROR_CODE));
+            errors.add(config.getErrorMessage(CommonConstants.WHERE_ERROR_CODE));
         }
         if (!StringUtils.isBlank(request.getLatitude())
                 && StringUtils.isBlank(request.getLongitude())) {
-            errors.add(errorProperties.getProperty(CommonConstants.LONGITUDE_ERROR));
+            errors.add(config.getErrorMessage(CommonConstants.LONGITUDE_ERROR));
         } else if (StringUtils.isBlank(request.getLatitude())
                 && !StringUtils.isBlank(request.getLongitude())) {
-            errors.add(errorProperties.getProperty(CommonConstants.LATITUDE_ERROR));
+            errors.add(config.getErrorMessage(CommonConstants.LATITUDE_ERROR));
         }
         if (!StringUtils.isBlank(request.getLatitude())
                 && !StringUtils.isBlank(request.getLongitude())
                 && (StringUtils.isBlank(request.getRadius())
                         || (new Integer(request.getRadius()).intValue() > 25) || (new Integer(
                         request.getRadius()).intValue() < 1))) {
-            errors.add(errorProperties.getProperty(CommonConstants.RADIUS_ERROR));
+            errors.add(config.getErrorMessage(CommonConstants.RADIUS_ERROR));
         }
         if (StringUtils.isBlank(request.getClientIP())) {
-            errors.add(errorProperties.getProperty(CommonConstants.CLIENT_IP_ERROR_CODE));
+            errors.add(config.getErrorMessage(CommonConstants.CLIENT_IP_ERROR_CODE));
         }
         if (!errors.isEmpty()) {
             throw new InvalidRequestParametersException(this.getClass().getName(),
@@ -198,18 +178,18 @@ public class ConquestAdOfferHelper {
             }
         }
 
-        Properties properties = PropertiesLoader.getAPIProperties();
-        String urlString = properties.getProperty(PROPERTY_OFFERS_URL) + getQueryString(request);
-        Document responseDocument = null;
+        WebWidgetConfig config = WebWidgetConfig.get();
+        String urlString = config.getOffersUrl() + getQueryString(request);
+        List<OfferAPIBean> offerBeans = null;
         try {
             String publisherHdr = request.getPublisher().trim();
             HashMap<String, String> hdrMap = new HashMap<String, String>();
             hdrMap.put(PUBLISHER_HEADER, publisherHdr);
-            responseDocument = HelperUtil.getAPIResponse(urlString, hdrMap);
+            offerBeans = HelperUtil.getAPIResponse(urlString, hdrMap, new OfferResponseHandler());
         } catch (InvalidHttpResponseException ihe) {
             throw new CitysearchException(this.getClass().getName(), "getOffers", ihe);
         }
-        List<ConquestAdOffer> offersList = parseXML(responseDocument);
+        List<ConquestAdOffer> offersList = getOffersList(offerBeans);
         // TODO: BUG!!!!
         if (offersList == null) {
             log.info("OffersHelper.getOffers:: Null offers instance ");
@@ -255,70 +235,34 @@ public class ConquestAdOfferHelper {
     }
 
     /**
-     * Parses the offers xml. Returns List of offer objects
+     * Converts the first of the offers parsed from the Offers API response to a ConquestAdOffer
      * 
-     * @param doc
-     * @return List of Offer objects
-     * @throws CitysearchException
+     * @param offerBeans
+     * @return List of ConquestAdOffer, empty if the response has no offer
      */
-    private List<ConquestAdOffer> parseXML(Document doc) throws CitysearchException {
-        log.info("========================== Start OffersHelper parseXML=======================");
-        List<Element> offersElementList = null;
-        List<ConquestAdOffer> offersList = null;
-        if (doc != null && doc.hasRootElement()) {
-            Element rootElement = doc.getRootElement();
-            offersElementList = (List<Element>) rootElement.getChildren(OFFER);
-            offersList = (List<ConquestAdOffer>) getOffersList(offersElementList);
-        }
-        log.info("========================== End OffersHelper parseXML=======================");
-        return offersList;
-    }
-
-    /**
-     * Parses the offers element list and create list of Offer objects
-     * 
-     * @param List
-     *            of Offer Elements
-     * @return List of Offer beans
-     * @throws CitysearchException
-     */
-    private List<ConquestAdOffer> getOffersList(List<Element> offerElemList)
-            throws CitysearchException {
-        log.info("========================== Start OffersHelper getOffersList=======================");
-        ConquestAdOffer offer = null;
+    private List<ConquestAdOffer> getOffersList(List<OfferAPIBean> offerBeans) {
         List<ConquestAdOffer> offersLst = new ArrayList<ConquestAdOffer>();
-        if (!offerElemList.isEmpty()) {
-            int cnt = 0;
-            Iterator<Element> it = offerElemList.iterator();
-            while (it.hasNext() && cnt < 1) {
-                Element offerElement = (Element) it.next();
-
-                offer = new ConquestAdOffer();
-                offer.setCity(offerElement.getChildText(CITY));
-                offer.setAttributionSrc(offerElement.getChildText(ATTRIBUTION_SOURCE));
-
-                String ratingVal = offerElement.getChildText(CS_RATING);
-                double rating = NumberUtils.toDouble(ratingVal) / 2;
-                List<Integer> ratingList = HelperUtil.getRatingsList(ratingVal);
-                offer.setListingRating(ratingList);
-                offer.setReviewCount(HelperUtil.toInteger(offerElement.getChildText(REVIEW_COUNT)));
-                offer.setImgUrl(offerElement.getChildText(IMAGE_URL));
-                offer.setLatitude(offerElement.getChildText(LATITUDE));
-                offer.setListingId(offerElement.getChildText(LISTING_ID));
-                offer.setListingName(offerElement.getChildText(LISTING_NAME));
-                offer.setLongitude(offerElement.getChildText(LONGITUDE));
-                offer.setOfferDescription(offerElement.getChildText(OFFER_DESCRIPTION));
-                offer.setOfferId(offerElement.getChildText(OFFER_ID));
-                offer.setOfferTitle(offerElement.getChildText(OFFER_TITLE));
-                offer.setRefId(offerElement.getChildText(REFERENCE_ID));
-                offer.setState(offerElement.getChildText(STATE));
-                offer.setStreet(offerElement.getChildText(STREET));
-                offer.setZip(offerElement.getChildText(ZIP));
-                offersLst.add(offer);
-                cnt = cnt + 1;
-            }
+        if (offerBeans != null && !offerBeans.isEmpty()) {
+            OfferAPIBean bean = offerBeans.get(0);
+            ConquestAdOffer offer = new ConquestAdOffer();
+            offer.setCity(bean.getCity());
+            offer.setAttributionSrc(bean.getAttributionSrc());
+            offer.setListingRating(HelperUtil.getRatingsList(bean.getRating()));
+            offer.setReviewCount(HelperUtil.toInteger(bean.getReviewCount()));
+            offer.setImgUrl(bean.getImageUrl());
+            offer.setLatitude(bean.getLatitude());
+            offer.setListingId(bean.getListingId());
+            offer.setListingName(bean.getListingName());
+            offer.setLongitude(bean.getLongitude());
+            offer.setOfferDescription(bean.getOfferDescription());
+            offer.setOfferId(bean.getOfferId());
+            offer.setOfferTitle(bean.getOfferTitle());
+            offer.setRefId(bean.getReferenceId());
+            offer.setState(bean.getState());
+            offer.setStreet(bean.getStreet());
+            offer.setZip(bean.getZip());
+            offersLst.add(offer);
         }
-        log.info("========================== End OffersHelper getOffersList=======================");
         return offersLst;
     }
 }
@@ -1,30 +1,97 @@
 package com.citysearch.webwidget.helper;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.log4j.Logger;
 import org.jdom.Document;
 import org.jdom.Element;
 
 import com.citysearch.webwidget.bean.HouseAd;
 import com.citysearch.webwidget.exception.CitysearchException;
 import com.citysearch.webwidget.util.HelperUtil;
+import com.citysearch.webwidget.util.WebWidgetConfig;
 
+/**
+ * Builds the house ads shown when there are not enough paid results. HouseAdsConfig.xml is parsed
+ * once into a list of templates; only the root path and the dart tracking prefix are applied per
+ * request. If houseads.reload.interval is set in application.properties the file is checked for
+ * changes at that interval and reloaded.
+ *
+ */
 public class HouseAdsHelper {
+    private static Logger log = Logger.getLogger(HouseAdsHelper.class);
+
+    // A ClassLoader resource name, so without a leading slash
+    private static final String HOUSE_ADS_FILE = "HouseAdsConfig.xml";
+    private static final String RELOAD_INTERVAL_PROPERTY = "houseads.reload.interval";
+
+    private static volatile List<HouseAdTemplate> templates;
+    private static long lastModified;
+    private static long reloadInterval;
+    private static volatile long nextReloadCheck;
 
     public static List<HouseAd> getHouseAds(String path, String dartTrackUrl)
             throws CitysearchException {
+        List<HouseAdTemplate> houseAdTemplates = getTemplates();
+        if (houseAdTemplates.isEmpty()) {
+            return null;
+        }
+        List<HouseAd> hads = new ArrayList<HouseAd>(houseAdTemplates.size());
+        for (HouseAdTemplate template : houseAdTemplates) {
+            hads.add(template.toHouseAd(path, dartTrackUrl));
+        }
+        return hads;
+    }
 
-        List<HouseAd> houseAds = null;
-        InputStream inputStream = null;
+    /**
+     * Returns the parsed templates, loading them on first use and reloading them if the file has
+     * changed since the last check
+     *
+     * @return List of templates
+     * @throws CitysearchException
+     */
+    private static List<HouseAdTemplate> getTemplates() throws CitysearchException {
+        List<HouseAdTemplate> houseAdTemplates = templates;
+        if (houseAdTemplates == null
+                || (reloadInterval > 0 && System.currentTimeMillis() >= nextReloadCheck)) {
+            houseAdTemplates = loadTemplates();
+        }
+        return houseAdTemplates;
+    }
+
+    private static synchronized List<HouseAdTemplate> loadTemplates() throws CitysearchException {
+        if (templates == null) {
+            reloadInterval = NumberUtils.toLong(WebWidgetConfig.get().getApplicationProperty(
+                    RELOAD_INTERVAL_PROPERTY));
+        } else if (System.currentTimeMillis() < nextReloadCheck) {
+            // Another thread has just checked
+            return templates;
+        }
+        nextReloadCheck = System.currentTimeMillis() + reloadInterval;
 
-        inputStream = HouseAdsHelper.class.getClassLoader().getResourceAsStream(
-                "/HouseAdsConfig.xml");
+        URL resource = HouseAdsHelper.class.getClassLoader().getResource(HOUSE_ADS_FILE);
+        if (resource == null) {
+            throw new CitysearchException("HouseAdsHelper", "getHouseAds", HOUSE_ADS_FILE
+                    + " not found");
+        }
+        long modified = getLastModified(resource);
+        if (templates != null && modified == lastModified) {
+            return templates;
+        }
+
+        InputStream inputStream = null;
         Document document;
         try {
+            inputStream = resource.openStream();
             document = HelperUtil.buildFromStream(inputStream);
         } catch (IOException ioe) {
             throw new CitysearchException("HouseAdsHelper", "getHouseAds", ioe);
@@ -37,50 +104,90 @@ public class HouseAdsHelper {
                 throw new CitysearchException("HouseAdsHelper", "getHouseAds", ioe);
             }
         }
-        houseAds = buildHouseAds(document, path, dartTrackUrl);
+        templates = parseTemplates(document);
+        lastModified = modified;
+        log.info("Loaded " + templates.size() + " house ads from " + HOUSE_ADS_FILE);
+        return templates;
+    }
 
-        return houseAds;
+    /**
+     * Returns the modification time of the file, or 0 if it is not known
+     *
+     * @param resource
+     * @return long
+     */
+    private static long getLastModified(URL resource) {
+        try {
+            if ("file".equals(resource.getProtocol())) {
+                return new File(resource.toURI()).lastModified();
+            }
+            return resource.openConnection().getLastModified();
+        } catch (IOException ioe) {
+            return 0;
+        } catch (URISyntaxException use) {
+            return 0;
+        }
     }
 
-    private static List<HouseAd> buildHouseAds(Document document, String path, String dartTrackUrl) {
-        List<HouseAd> hads = null;
+    private static List<HouseAdTemplate> parseTemplates(Document document) {
+        List<HouseAdTemplate> hads = new ArrayList<HouseAdTemplate>();
         if (document != null && document.hasRootElement()) {
             Element rootElement = document.getRootElement();
-            List<Element> children = rootElement.getChildren("ad");
-            if (children != null && !children.isEmpty()) {
-                hads = new ArrayList<HouseAd>();
+            // JDOM 1.0 returns a raw List of Elements
+            @SuppressWarnings("unchecked")
+            List<Element> children = (List<Element>) rootElement.getChildren("ad");
+            if (children != null) {
                 for (Element elm : children) {
-                    String title = elm.getChildText("title");
-                    String tagLine = elm.getChildText("tagLine");
-                    String url = elm.getChildText("url");
-                    String imageURL = elm.getChildText("imageURL");
-                    if (StringUtils.isNotBlank(imageURL)) {
-                        if (!imageURL.startsWith("http")) {
-                            StringBuilder strb = new StringBuilder(path);
-                            strb.append(imageURL);
-                            imageURL = strb.toString();
-                        }
-                    }
-
-                    HouseAd ad = new HouseAd();
-                    ad.setTitle(title);
-                    ad.setTagLine(tagLine);
-                    if (dartTrackUrl != null) {
-                        StringBuilder destUrl = new StringBuilder(dartTrackUrl);
-                        destUrl.append(url);
-                        ad.setDestinationUrl(destUrl.toString());
-                        ad.setDisplayUrl(url);
-                    } else {
-                        ad.setDestinationUrl(url);
-                        ad.setDisplayUrl(url);
-                    }
-
-                    ad.setImageURL(imageURL);
-
-                    hads.add(ad);
+                    hads.add(new HouseAdTemplate(elm.getChildText("title"), elm
+                            .getChildText("tagLine"), elm.getChildText("url"), elm
+                            .getChildText("imageURL")));
                 }
             }
         }
-        return hads;
+        return Collections.unmodifiableList(hads);
+    }
+
+    /**
+     * Request independent part of a house ad as configured in HouseAdsConfig.xml
+     */
+    private static final class HouseAdTemplate {
+        private final String title;
+        private final String tagLine;
+        private final String url;
+        private final String imageURL;
+        private final boolean relativeImageURL;
+
+        HouseAdTemplate(String title, String tagLine, String url, String imageURL) {
+            this.title = title;
+            this.tagLine = tagLine;
+            this.url = url;
+            this.imageURL = imageURL;
+            this.relativeImageURL = StringUtils.isNotBlank(imageURL)
+                    && !imageURL.startsWith("http");
+        }
+
+        HouseAd toHouseAd(String path, String dartTrackUrl) {
+            HouseAd ad = new HouseAd();
+            ad.setTitle(title);
+            ad.setTagLine(tagLine);
+            if (dartTrackUrl != null) {
+                StringBuilder destUrl = new StringBuilder(dartTrackUrl);
+                destUrl.append(url);
+                ad.setDestinationUrl(destUrl.toString());
+                ad.setDisplayUrl(url);
+            } else {
+                ad.setDestinationUrl(url);
+                ad.setDisplayUrl(url);
+            }
+
+            if (relativeImageURL) {
+                StringBuilder strb = new StringBuilder(path);
+                strb.append(imageURL);
+                ad.setImageURL(strb.toString());
+            } else {
+                ad.setImageURL(imageURL);
+            }
+            return ad;
+        }
     }
 }
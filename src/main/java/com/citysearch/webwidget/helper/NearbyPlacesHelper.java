@@ -2,19 +2,22 @@ package com.citysearch.webwidget.helper;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Properties;
-import java.util.Random;
+import java.util.Map;
 import java.util.Set;
-import java.util.SortedMap;
-import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.math.NumberUtils;
 import org.apache.log4j.Logger;
-import org.jdom.Document;
-import org.jdom.Element;
 
+import com.citysearch.webwidget.api.bean.PFPAd;
+import com.citysearch.webwidget.api.bean.PFPResponse;
+import com.citysearch.webwidget.api.proxy.PFPProxy;
 import com.citysearch.webwidget.bean.HouseAd;
 import com.citysearch.webwidget.bean.NearbyPlace;
 import com.citysearch.webwidget.bean.NearbyPlacesRequest;
@@ -23,12 +26,16 @@ import com.citysearch.webwidget.bean.Profile;
 import com.citysearch.webwidget.bean.ProfileRequest;
 import com.citysearch.webwidget.bean.SearchRequest;
 import com.citysearch.webwidget.exception.CitysearchException;
-import com.citysearch.webwidget.exception.InvalidHttpResponseException;
 import com.citysearch.webwidget.exception.InvalidRequestParametersException;
 import com.citysearch.webwidget.util.APIFieldNameConstants;
 import com.citysearch.webwidget.util.CommonConstants;
+import com.citysearch.webwidget.util.FieldLengths;
 import com.citysearch.webwidget.util.HelperUtil;
-import com.citysearch.webwidget.util.PropertiesLoader;
+import com.citysearch.webwidget.util.ImagePicker;
+import com.citysearch.webwidget.util.RequestDeadline;
+import com.citysearch.webwidget.util.TopK;
+import com.citysearch.webwidget.util.UpstreamExecutor;
+import com.citysearch.webwidget.util.WebWidgetConfig;
 
 /**
  * Helper class for PFP API. Contains the functionality to validate request
@@ -48,38 +55,34 @@ import com.citysearch.webwidget.util.PropertiesLoader;
  */
 public class NearbyPlacesHelper {
 
-	private final static String PFP_LOCATION_URL = "pfplocation.url";
-	private final static String PFP_URL = "pfp.url";
+	private final static String SPECULATIVE_PROPERTY_PREFIX = "nearby.speculative.";
+	private final static String DEADLINE_ERROR = "deadline.error";
+	private final static String SPECULATIVE_SEARCH_SUFFIX = ".search";
 
 	private Logger log = Logger.getLogger(getClass());
-	private static final String AD_TAG = "ad";
-
-	private static final String REVIEW_RATING_TAG = "overall_review_rating";
-	private static final String REVIEWS_TAG = "reviews";
-	private static final String LISTING_ID_TAG = "listingId";
-	private static final String TAGLINE_TAG = "tagline";
-	private static final String AD_DISPLAY_URL_TAG = "ad_display_url";
-	private static final String AD_IMAGE_URL_TAG = "ad_image_url";
-	private static final String PHONE_TAG = "phone";
-	private static final String AD_TYPE_PFP = "local PFP";
-	private static final String AD_TYPE_BACKFILL = "backfill";
-	private static final String TYPE_TAG = "type";
-	private static final String DESC_TAG = "description";
-	private static final String ZIP_TAG = "zip";
-	private static final String AD_DESTINATION_URL = "ad_destination_url";
 
 	private String rootPath;
 	private Integer displaySize;
 
-	// Field to cache the PFP response document.
-	private Document pfpLocationResponse = null;
+	// Field to cache the PFP response.
+	private PFPResponse pfpLocationResponse = null;
 
-	private Document pfpResponse = null;
+	private PFPResponse pfpResponse = null;
+
+	// Responses requested ahead of time in speculative mode
+	private Future<PFPResponse> pfpLocationFuture = null;
+	private Future<PFPResponse> pfpFuture = null;
+	private Future<List<NearbyPlace>> searchFuture = null;
 
 	public NearbyPlacesHelper(String rootPath) throws CitysearchException {
 		this.rootPath = rootPath;
 	}
 
+	NearbyPlacesHelper(String rootPath, Integer displaySize) {
+		this.rootPath = rootPath;
+		this.displaySize = displaySize;
+	}
+
 	private String getPFPLocationQuery(NearbyPlacesRequest request)
 			throws CitysearchException {
 		StringBuilder apiQueryString = new StringBuilder(request
@@ -93,9 +96,8 @@ public class NearbyPlacesHelper {
 	public String getPFPQuery(NearbyPlacesRequest request)
 			throws CitysearchException {
 		StringBuilder apiQueryString = new StringBuilder();
-		Properties properties = PropertiesLoader.getAPIProperties();
-		String apiKey = properties
-				.getProperty(CommonConstants.API_KEY_PROPERTY);
+		WebWidgetConfig config = WebWidgetConfig.get();
+		String apiKey = config.getApiKey();
 		apiQueryString.append(HelperUtil.constructQueryParam(
 				APIFieldNameConstants.API_KEY, apiKey));
 
@@ -130,19 +132,125 @@ public class NearbyPlacesHelper {
 			this.displaySize = CommonConstants.DEFAULT_NEARBY_DISPLAY_SIZE;
 		}
 		log.info("NearbyPlacesHelper.getNearbyPlaces: After validate");
-		if (request.getPublisher().equalsIgnoreCase(
-				CommonConstants.PUBLISHER_INSIDERPAGES)) {
-			return findInsiderPagesNearbyPlaces(request);
-		} else if (request.getPublisher().equalsIgnoreCase(
-				CommonConstants.PUBLISHER_PROJECT_YELLOW)
-				|| request.getPublisher().equalsIgnoreCase(
+		boolean insiderPages = request.getPublisher().equalsIgnoreCase(
+				CommonConstants.PUBLISHER_INSIDERPAGES);
+		if (!insiderPages
+				&& !request.getPublisher().equalsIgnoreCase(
+						CommonConstants.PUBLISHER_PROJECT_YELLOW)
+				&& !request.getPublisher().equalsIgnoreCase(
 						CommonConstants.PUBLISHER_CITYSEARCH)) {
-			return findConquestNearbyPlaces(request);
-		} else {
 			throw new CitysearchException(this.getClass().getName(),
 					"getNearbyPlaces", "Unknow publisher "
 							+ request.getPublisher());
 		}
+		try {
+			startSpeculativeFetches(request, insiderPages);
+			if (insiderPages) {
+				return findInsiderPagesNearbyPlaces(request);
+			}
+			return findConquestNearbyPlaces(request);
+		} finally {
+			cancelSpeculativeFetches();
+		}
+	}
+
+	/**
+	 * In speculative mode the PFP location and PFP calls, and optionally the
+	 * Search call, are issued concurrently up front instead of one after the
+	 * other. The fill logic then uses whichever responses it needs and the
+	 * rest are discarded. Enabled per publisher with the
+	 * nearby.speculative.[publisher] and nearby.speculative.[publisher].search
+	 * application properties
+	 * 
+	 * @param request
+	 * @param insiderPages
+	 * @throws CitysearchException
+	 */
+	private void startSpeculativeFetches(final NearbyPlacesRequest request,
+			boolean insiderPages) throws CitysearchException {
+		WebWidgetConfig config = WebWidgetConfig.get();
+		String publisherKey = SPECULATIVE_PROPERTY_PREFIX
+				+ request.getPublisher().toLowerCase();
+		if (!Boolean.valueOf(config.getApplicationProperty(publisherKey))) {
+			return;
+		}
+		if (!StringUtils.isBlank(request.getLatitude())
+				&& !StringUtils.isBlank(request.getLongitude())) {
+			pfpLocationFuture = UpstreamExecutor
+					.submit(new Callable<PFPResponse>() {
+						public PFPResponse call() throws CitysearchException {
+							return fetchPFPLocation(request);
+						}
+					});
+		}
+		if (!StringUtils.isBlank(request.getWhere())) {
+			pfpFuture = UpstreamExecutor.submit(new Callable<PFPResponse>() {
+				public PFPResponse call() throws CitysearchException {
+					return fetchPFP(request);
+				}
+			});
+		}
+		// Search is only used as fill for Insider Pages
+		if (insiderPages
+				&& Boolean.valueOf(config.getApplicationProperty(publisherKey
+						+ SPECULATIVE_SEARCH_SUFFIX))) {
+			final int maxResults = this.displaySize;
+			searchFuture = UpstreamExecutor
+					.submit(new Callable<List<NearbyPlace>>() {
+						public List<NearbyPlace> call()
+								throws CitysearchException {
+							return fetchSearchResults(request, maxResults);
+						}
+					});
+		}
+	}
+
+	private void cancelSpeculativeFetches() {
+		if (pfpLocationFuture != null) {
+			pfpLocationFuture.cancel(true);
+			pfpLocationFuture = null;
+		}
+		if (pfpFuture != null) {
+			pfpFuture.cancel(true);
+			pfpFuture = null;
+		}
+		if (searchFuture != null) {
+			searchFuture.cancel(true);
+			searchFuture = null;
+		}
+	}
+
+	/**
+	 * Waits for a speculatively requested response, at most what is left of
+	 * the RequestDeadline of the request
+	 * 
+	 * @param future
+	 * @param methodName
+	 * @return T
+	 * @throws CitysearchException
+	 *             also if the budget runs out first
+	 */
+	private <T> T await(Future<T> future, String methodName)
+			throws CitysearchException {
+		try {
+			return future.get(Math.max(RequestDeadline.getRemaining(), 0),
+					TimeUnit.MILLISECONDS);
+		} catch (TimeoutException te) {
+			future.cancel(true);
+			throw new CitysearchException(this.getClass().getName(),
+					methodName, WebWidgetConfig.get().getErrorMessage(
+							DEADLINE_ERROR));
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new CitysearchException(this.getClass().getName(),
+					methodName, ie);
+		} catch (ExecutionException ee) {
+			if (ee.getCause() instanceof CitysearchException) {
+				throw (CitysearchException) ee.getCause();
+			}
+			throw new CitysearchException(this.getClass().getName(),
+					methodName, ee.getCause());
+		}
 	}
 
 	private NearbyPlacesResponse findInsiderPagesNearbyPlaces(
@@ -203,14 +311,20 @@ public class NearbyPlacesHelper {
 				}
 			} else if (nearbyPlaces != null && !nearbyPlaces.isEmpty()
 					&& nearbyPlaces.size() < this.displaySize) {
+				// Too few places to fill the unit: show them with their
+				// profile and highest review, fetched in one concurrent batch
+				List<String> listingIds = new ArrayList<String>(nearbyPlaces
+						.size());
+				for (NearbyPlace nbp : nearbyPlaces) {
+					listingIds.add(nbp.getListingId());
+				}
 				ProfileRequest profileRequest = new ProfileRequest(request);
 				profileRequest.setClientIP(request.getClientIP());
 				ProfileHelper phelper = new ProfileHelper(this.rootPath);
+				Map<String, Profile> profiles = phelper.getProfiles(
+						profileRequest, listingIds, true);
 				for (NearbyPlace nbp : nearbyPlaces) {
-					profileRequest.setListingId(nbp.getListingId());
-					Profile profile = phelper
-							.getProfileAndHighestReview(profileRequest);
-					nbp.setProfile(profile);
+					nbp.setProfile(profiles.get(nbp.getListingId()));
 				}
 			}
 		}
@@ -278,6 +392,21 @@ public class NearbyPlacesHelper {
 
 	private List<NearbyPlace> getSearchResults(NearbyPlacesRequest request,
 			int maxNoOfResultsRequired) throws CitysearchException {
+		if (searchFuture == null) {
+			return fetchSearchResults(request, maxNoOfResultsRequired);
+		}
+		List<NearbyPlace> searchResults = await(searchFuture,
+				"getSearchResults");
+		searchFuture = null;
+		if (searchResults != null
+				&& searchResults.size() > maxNoOfResultsRequired) {
+			searchResults = searchResults.subList(0, maxNoOfResultsRequired);
+		}
+		return searchResults;
+	}
+
+	private List<NearbyPlace> fetchSearchResults(NearbyPlacesRequest request,
+			int maxNoOfResultsRequired) throws CitysearchException {
 		SearchRequest sRequest = new SearchRequest(request);
 		SearchHelper sHelper = new SearchHelper(this.rootPath,
 				maxNoOfResultsRequired);
@@ -293,177 +422,136 @@ public class NearbyPlacesHelper {
 
 	private List<NearbyPlace> getAdsFromPFPLocation(NearbyPlacesRequest request)
 			throws CitysearchException {
+		if (pfpLocationFuture != null) {
+			pfpLocationResponse = await(pfpLocationFuture,
+					"getAdsFromPFPLocation");
+			pfpLocationFuture = null;
+		} else {
+			pfpLocationResponse = fetchPFPLocation(request);
+		}
+		return getClosestPlaces(request, pfpLocationResponse);
+	}
+
+	private PFPResponse fetchPFPLocation(NearbyPlacesRequest request)
+			throws CitysearchException {
 		log.info("NearbyPlacesHelper.getAdsFromPFPLocation: Begin");
-		Properties properties = PropertiesLoader.getAPIProperties();
-		StringBuilder urlStringBuilder = new StringBuilder(properties
-				.getProperty(PFP_LOCATION_URL));
+		WebWidgetConfig config = WebWidgetConfig.get();
+		StringBuilder urlStringBuilder = new StringBuilder(config.getPfpLocationUrl());
 		urlStringBuilder.append(getPFPLocationQuery(request));
 		log.info("NearbyPlacesHelper.getAdsFromPFPLocation: Query: "
 				+ urlStringBuilder.toString());
-		try {
-			pfpLocationResponse = HelperUtil.getAPIResponse(urlStringBuilder
-					.toString(), null);
-			log
-					.info("NearbyPlacesHelper.getAdsFromPFPLocation: successful response");
-		} catch (InvalidHttpResponseException ihe) {
-			throw new CitysearchException(this.getClass().getName(),
-					"getAdsFromPFPLocation", ihe);
-		}
-		return getClosestPlaces(request, pfpLocationResponse);
+		PFPResponse response = PFPProxy.getPFPResponse(urlStringBuilder
+				.toString());
+		log
+				.info("NearbyPlacesHelper.getAdsFromPFPLocation: successful response");
+		return response;
 	}
 
 	private List<NearbyPlace> getAdsFromPFP(NearbyPlacesRequest request,
 			Set<String> listingsToIgnore) throws CitysearchException {
+		if (pfpFuture != null) {
+			pfpResponse = await(pfpFuture, "getAdsFromPFP");
+			pfpFuture = null;
+		} else {
+			pfpResponse = fetchPFP(request);
+		}
+		return getTopReviewedPlaces(request, pfpResponse, listingsToIgnore);
+	}
+
+	private PFPResponse fetchPFP(NearbyPlacesRequest request)
+			throws CitysearchException {
 		log.info("getAdsFromPFP: Begin");
-		Properties properties = PropertiesLoader.getAPIProperties();
-		StringBuilder urlStringBuilder = new StringBuilder(properties
-				.getProperty(PFP_URL));
+		WebWidgetConfig config = WebWidgetConfig.get();
+		StringBuilder urlStringBuilder = new StringBuilder(config.getPfpUrl());
 		urlStringBuilder.append(getPFPQuery(request));
 		log.info("getAdsFromPFP: Query: " + urlStringBuilder.toString());
-		try {
-			pfpResponse = HelperUtil.getAPIResponse(
-					urlStringBuilder.toString(), null);
-			log.info("getAdsFromPFP: successful response");
-		} catch (InvalidHttpResponseException ihe) {
-			throw new CitysearchException(this.getClass().getName(),
-					"getAdsFromPFP", ihe);
-		}
-		return getTopReviewedPlaces(request, pfpResponse, listingsToIgnore);
+		PFPResponse response = PFPProxy.getPFPResponse(urlStringBuilder
+				.toString());
+		log.info("getAdsFromPFP: successful response");
+		return response;
 	}
 
-	private List<NearbyPlace> getTopReviewedPlaces(NearbyPlacesRequest request,
-			Document doc, Set<String> listingsToIgnore)
+	List<NearbyPlace> getTopReviewedPlaces(NearbyPlacesRequest request,
+			PFPResponse response, Set<String> listingsToIgnore)
 			throws CitysearchException {
 		log.info("NearbyPlacesHelper.getTopReviewedPlaces: Begin");
 		List<NearbyPlace> nearbyPlaces = null;
-		if (doc != null && doc.hasRootElement()) {
-			SortedMap<Double, List<Element>> elmsSortedByRating = new TreeMap<Double, List<Element>>();
-			Element rootElement = doc.getRootElement();
-			List<Element> children = rootElement.getChildren(AD_TAG);
-			if (children != null && !children.isEmpty()) {
-				for (Element elm : children) {
-					String adType = StringUtils
-							.trim(elm.getChildText(TYPE_TAG));
-					String listingId = StringUtils.trim(elm
-							.getChildText(LISTING_ID_TAG));
-					if (adType != null && adType.equalsIgnoreCase(AD_TYPE_PFP)
-							&& !listingsToIgnore.contains(listingId)) {
-						String rating = elm.getChildText(REVIEW_RATING_TAG);
-						double ratings = HelperUtil.getRatingValue(rating);
-						if (elmsSortedByRating.containsKey(ratings)) {
-							elmsSortedByRating.get(ratings).add(elm);
-						} else {
-							List<Element> elms = new ArrayList<Element>();
-							elms.add(elm);
-							elmsSortedByRating.put(ratings, elms);
-						}
-					}
+		if (response != null && !response.getLocalPfp().isEmpty()) {
+			TopK<PFPAd> adsByRating = new TopK<PFPAd>(this.displaySize);
+			for (PFPAd ad : response.getLocalPfp()) {
+				String listingId = StringUtils.trim(ad.getListingId());
+				if (!listingsToIgnore.contains(listingId)) {
+					double ratings = HelperUtil.getRatingValue(ad.getRating());
+					adsByRating.offer(ratings, ad);
 				}
-				nearbyPlaces = getTopResults(request, elmsSortedByRating);
 			}
+			nearbyPlaces = getTopResults(request, adsByRating.toList());
 		}
 		log.info("NearbyPlacesHelper.getTopReviewedPlaces: End");
 		return nearbyPlaces;
 	}
 
-	private List<NearbyPlace> getClosestPlaces(NearbyPlacesRequest request,
-			Document doc) throws CitysearchException {
+	List<NearbyPlace> getClosestPlaces(NearbyPlacesRequest request,
+			PFPResponse response) throws CitysearchException {
 		log.info("NearbyPlacesHelper.getClosestPlaces: Begin");
 		List<NearbyPlace> nearbyPlaces = null;
-		if (doc != null && doc.hasRootElement()) {
-			SortedMap<Double, List<Element>> elmsSortedByDistance = new TreeMap<Double, List<Element>>();
-			Element rootElement = doc.getRootElement();
-			List<Element> children = rootElement.getChildren(AD_TAG);
-			if (children != null && !children.isEmpty()) {
-				for (Element elm : children) {
-					String adType = StringUtils
-							.trim(elm.getChildText(TYPE_TAG));
-					if (adType != null && adType.equalsIgnoreCase(AD_TYPE_PFP)) {
-						String distanceStr = elm
-								.getChildText(CommonConstants.DISTANCE);
-						double distance = 0.0;
-						if (!StringUtils.isBlank(distanceStr)
-								&& StringUtils.isNumeric(distanceStr)) {
-							distance = Double.valueOf(distanceStr);
-						}
-						if (distance < CommonConstants.EXTENDED_RADIUS) {
-							if (elmsSortedByDistance.containsKey(distance)) {
-								elmsSortedByDistance.get(distance).add(elm);
-							} else {
-								List<Element> elms = new ArrayList<Element>();
-								elms.add(elm);
-								elmsSortedByDistance.put(distance, elms);
-							}
-						}
-					}
+		if (response != null && !response.getLocalPfp().isEmpty()) {
+			TopK<PFPAd> adsByDistance = new TopK<PFPAd>(this.displaySize);
+			for (PFPAd ad : response.getLocalPfp()) {
+				String distanceStr = ad.getDistance();
+				double distance = 0.0;
+				if (!StringUtils.isBlank(distanceStr)
+						&& StringUtils.isNumeric(distanceStr)) {
+					distance = Double.valueOf(distanceStr);
+				}
+				if (distance < CommonConstants.EXTENDED_RADIUS) {
+					adsByDistance.offer(distance, ad);
 				}
-				nearbyPlaces = getTopResults(request, elmsSortedByDistance);
 			}
+			nearbyPlaces = getTopResults(request, adsByDistance.toList());
 		}
 		log.info("NearbyPlacesHelper.getClosestPlaces: End");
 		return nearbyPlaces;
 	}
 
 	private List<NearbyPlace> getTopResults(NearbyPlacesRequest request,
-			SortedMap<Double, List<Element>> sortedElms)
-			throws CitysearchException {
+			List<PFPAd> adsToConvert) throws CitysearchException {
 		List<NearbyPlace> nearbyPlaces = null;
-		if (!sortedElms.isEmpty()) {
-			List<Element> elmsToConvert = new ArrayList<Element>();
-			for (int j = 0; j < sortedElms.size(); j++) {
-
-				if (elmsToConvert.size() >= this.displaySize) {
-					break;
-				}
-				Double key = sortedElms.firstKey();
-				List<Element> elms = sortedElms.remove(key);
-				for (int idx = 0; idx < elms.size(); idx++) {
-					if (elmsToConvert.size() == this.displaySize) {
-						break;
-					}
-					elmsToConvert.add(elms.get(idx));
-				}
-			}
-
+		if (!adsToConvert.isEmpty()) {
 			nearbyPlaces = new ArrayList<NearbyPlace>();
-			for (Element elm : elmsToConvert) {
-				nearbyPlaces.add(toNearbyPlace(request, elm));
+			FieldLengths fieldLengths = WebWidgetConfig.get().getFieldLengths(
+					request.getAdUnitIdentifier());
+			for (PFPAd ad : adsToConvert) {
+				nearbyPlaces.add(toNearbyPlace(request, ad, fieldLengths));
 			}
 			addDefaultImages(nearbyPlaces, this.rootPath);
 		}
 		return nearbyPlaces;
 	}
 
-	private NearbyPlace toNearbyPlace(NearbyPlacesRequest request, Element ad)
-			throws CitysearchException {
+	private NearbyPlace toNearbyPlace(NearbyPlacesRequest request, PFPAd ad,
+			FieldLengths fieldLengths) throws CitysearchException {
 		NearbyPlace nearbyPlace = new NearbyPlace();
 
-		String adUnitIdentifier = request.getAdUnitIdentifier();
-
-		StringBuilder nameLengthProp = new StringBuilder(adUnitIdentifier);
-		nameLengthProp.append(".");
-		nameLengthProp.append(CommonConstants.NAME_LENGTH);
-
-		String name = ad.getChildText(CommonConstants.NAME);
-		name = HelperUtil.getAbbreviatedString(name, nameLengthProp.toString());
+		String name = ad.getName();
+		name = fieldLengths.abbreviate(name, FieldLengths.NAME);
 		nearbyPlace.setName(name);
 
-		String location = HelperUtil.getLocationString(ad
-				.getChildText(CommonConstants.CITY), ad
-				.getChildText(CommonConstants.STATE));
+		String location = HelperUtil.getLocationString(ad.getCity(), ad
+				.getState());
 		nearbyPlace.setLocation(location);
 
-		String rating = ad.getChildText(REVIEW_RATING_TAG);
+		String rating = ad.getRating();
 		List<Integer> ratingList = HelperUtil.getRatingsList(rating);
 		double ratings = HelperUtil.getRatingValue(rating);
 		nearbyPlace.setRating(ratingList);
 		nearbyPlace.setRatings(ratings);
 
-		String reviewCount = ad.getChildText(REVIEWS_TAG);
+		String reviewCount = ad.getReviewCount();
 		int userReviewCount = HelperUtil.toInteger(reviewCount);
 		nearbyPlace.setReviewCount(userReviewCount);
 
-		String distanceStr = ad.getChildText(CommonConstants.DISTANCE);
+		String distanceStr = ad.getDistance();
 		if (!StringUtils.isBlank(distanceStr)
 				&& NumberUtils.isNumber(distanceStr)) {
 			nearbyPlace.setDistance(Math.round(Double.valueOf(distanceStr)));
@@ -471,33 +559,26 @@ public class NearbyPlacesHelper {
 			nearbyPlace.setDistance(-1);
 		}
 
-		StringBuilder tagLengthProp = new StringBuilder(adUnitIdentifier);
-		tagLengthProp.append(".");
-		tagLengthProp.append(CommonConstants.TAGLINE_LENGTH);
-		String category = ad.getChildText(TAGLINE_TAG);
-		category = HelperUtil.getAbbreviatedString(category, tagLengthProp
-				.toString());
+		String category = ad.getCategory();
+		category = fieldLengths.abbreviate(category, FieldLengths.TAGLINE);
 		nearbyPlace.setCategory(category);
 
-		nearbyPlace.setListingId(ad.getChildText(LISTING_ID_TAG));
-		nearbyPlace.setAdDisplayURL(ad.getChildText(AD_DISPLAY_URL_TAG));
-		nearbyPlace.setAdImageURL(ad.getChildText(AD_IMAGE_URL_TAG));
-		nearbyPlace.setPhone(ad.getChildText(PHONE_TAG));
-		nearbyPlace.setOffers(ad.getChildText(CommonConstants.OFFERS));
-
-		StringBuilder descLengthProp = new StringBuilder(adUnitIdentifier);
-		descLengthProp.append(".");
-		descLengthProp.append(CommonConstants.DESCRIPTION_LENGTH);
-		String description = ad.getChildText(DESC_TAG);
-		description = HelperUtil.getAbbreviatedString(description,
-				descLengthProp.toString());
+		nearbyPlace.setListingId(ad.getListingId());
+		nearbyPlace.setAdDisplayURL(ad.getAdDisplayUrl());
+		nearbyPlace.setAdImageURL(ad.getImageUrl());
+		nearbyPlace.setPhone(ad.getPhone());
+		nearbyPlace.setOffers(ad.getOffers());
+
+		String description = ad.getDescription();
+		description = fieldLengths.abbreviate(description,
+				FieldLengths.DESCRIPTION);
 		nearbyPlace.setDescription(description);
 
-		nearbyPlace.setStreet(ad.getChildText(CommonConstants.STREET));
-		nearbyPlace.setCity(ad.getChildText(CommonConstants.CITY));
-		nearbyPlace.setState(ad.getChildText(CommonConstants.STATE));
-		nearbyPlace.setPostalCode(ad.getChildText(ZIP_TAG));
-		nearbyPlace.setAdDestinationUrl(ad.getChildText(AD_DESTINATION_URL));
+		nearbyPlace.setStreet(ad.getStreet());
+		nearbyPlace.setCity(ad.getCity());
+		nearbyPlace.setState(ad.getState());
+		nearbyPlace.setPostalCode(ad.getPostalCode());
+		nearbyPlace.setAdDestinationUrl(ad.getAdDestinationUrl());
 
 		nearbyPlace.setCallBackFunction(request.getCallBackFunction());
 		nearbyPlace.setCallBackUrl(request.getCallBackUrl());
@@ -515,93 +596,61 @@ public class NearbyPlacesHelper {
 				.getPhone());
 		nearbyPlace.setCallBackFunction(callBackFn);
 
-		StringBuilder displayUrlLengthProp = new StringBuilder(adUnitIdentifier);
-		displayUrlLengthProp.append(".");
-		displayUrlLengthProp.append(CommonConstants.DISPLAY_URL_LENGTH);
 		String adDisplayUrl = nearbyPlace.getAdDisplayURL();
-		adDisplayUrl = HelperUtil.getTruncatedString(adDisplayUrl,
-				displayUrlLengthProp.toString());
+		adDisplayUrl = fieldLengths.truncate(adDisplayUrl,
+				FieldLengths.DISPLAY_URL);
 		nearbyPlace.setAdDisplayURL(adDisplayUrl);
 
 		return nearbyPlace;
 	}
 
 	private List<NearbyPlace> getNearbyPlacesBackfill(
-			NearbyPlacesRequest request, Document doc)
+			NearbyPlacesRequest request, PFPResponse response)
 			throws CitysearchException {
 		log.info("NearbyPlacesHelper.getNearbyPlacesBackfill: Begin");
 		List<NearbyPlace> nearbyPlaces = null;
-		if (doc != null && doc.hasRootElement()) {
-			List<Element> backfillElms = new ArrayList<Element>();
-			Element rootElement = doc.getRootElement();
-			List<Element> children = rootElement.getChildren(AD_TAG);
-			if (children != null && !children.isEmpty()) {
-				for (Element elm : children) {
-					String adType = StringUtils
-							.trim(elm.getChildText(TYPE_TAG));
-					if (adType != null
-							&& adType.equalsIgnoreCase(AD_TYPE_BACKFILL)) {
-						backfillElms.add(elm);
-					}
-				}
-				if (!backfillElms.isEmpty()) {
-					List<Element> elmsToConvert = new ArrayList<Element>();
-					if (backfillElms.size() >= this.displaySize) {
-						for (int idx = 0; idx < this.displaySize; idx++) {
-							elmsToConvert.add(backfillElms.get(idx));
-						}
-					} else {
-						elmsToConvert = backfillElms;
-					}
-					nearbyPlaces = new ArrayList<NearbyPlace>();
-					for (Element elm : elmsToConvert) {
-						nearbyPlaces.add(toBackfill(request, elm));
-					}
-				}
+		if (response != null && !response.getBackfill().isEmpty()) {
+			List<PFPAd> backfillAds = response.getBackfill();
+			List<PFPAd> adsToConvert = backfillAds;
+			if (backfillAds.size() > this.displaySize) {
+				adsToConvert = backfillAds.subList(0, this.displaySize);
+			}
+			nearbyPlaces = new ArrayList<NearbyPlace>();
+			FieldLengths fieldLengths = WebWidgetConfig.get().getFieldLengths(
+					request.getAdUnitIdentifier());
+			for (PFPAd ad : adsToConvert) {
+				nearbyPlaces.add(toBackfill(request, ad, fieldLengths));
 			}
 		}
 		log.info("NearbyPlacesHelper.getNearbyPlacesBackfill: End");
 		return nearbyPlaces;
 	}
 
-	private NearbyPlace toBackfill(NearbyPlacesRequest request, Element ad)
-			throws CitysearchException {
+	private NearbyPlace toBackfill(NearbyPlacesRequest request, PFPAd ad,
+			FieldLengths fieldLengths) throws CitysearchException {
 		NearbyPlace nbp = new NearbyPlace();
-		String adUnitIdentifier = request.getAdUnitIdentifier();
-
-		String category = ad.getChildText(TAGLINE_TAG);
-		if (StringUtils.isNotBlank(category)) {
-			category = category.replaceAll("<b>", "");
-			category = category.replaceAll("</b>", "");
-
-			StringBuilder tagLengthProp = new StringBuilder(adUnitIdentifier);
-			tagLengthProp.append(".backfill.");
-			tagLengthProp.append(CommonConstants.TAGLINE_LENGTH);
-			category = HelperUtil.getAbbreviatedString(category, tagLengthProp
-					.toString());
 
+		// The <b> tags have been removed by PFPResponseHandler
+		String category = ad.getCategory();
+		if (category != null) {
+			category = fieldLengths.abbreviate(category,
+					FieldLengths.BACKFILL_TAGLINE);
 			nbp.setCategory(category);
 		}
-		nbp.setAdImageURL(ad.getChildText(AD_IMAGE_URL_TAG));
-
-		String description = ad.getChildText(DESC_TAG);
-		if (StringUtils.isNotBlank(description)) {
-			description = description.replaceAll("<b>", "");
-			description = description.replaceAll("</b>", "");
-
-			StringBuilder descLengthProp = new StringBuilder(adUnitIdentifier);
-			descLengthProp.append(".");
-			descLengthProp.append(CommonConstants.DESCRIPTION_LENGTH);
-			description = HelperUtil.getAbbreviatedString(description,
-					descLengthProp.toString());
+		nbp.setAdImageURL(ad.getImageUrl());
+
+		String description = ad.getDescription();
+		if (description != null) {
+			description = fieldLengths.abbreviate(description,
+					FieldLengths.DESCRIPTION);
 			nbp.setDescription(description);
 		}
 
-		nbp.setOffers(ad.getChildText(CommonConstants.OFFERS));
-		nbp.setAdDisplayURL(ad.getChildText(AD_DISPLAY_URL_TAG));
-		nbp.setAdDestinationUrl(ad.getChildText(AD_DESTINATION_URL));
-		nbp.setListingId(ad.getChildText(LISTING_ID_TAG));
-		nbp.setPhone(ad.getChildText(PHONE_TAG));
+		nbp.setOffers(ad.getOffers());
+		nbp.setAdDisplayURL(ad.getAdDisplayUrl());
+		nbp.setAdDestinationUrl(ad.getAdDestinationUrl());
+		nbp.setListingId(ad.getListingId());
+		nbp.setPhone(ad.getPhone());
 
 		String adDisplayTrackingUrl = HelperUtil.getTrackingUrl(nbp
 				.getAdDisplayURL(), nbp.getAdDestinationUrl(), null, request
@@ -611,47 +660,37 @@ public class NearbyPlacesHelper {
 
 		nbp.setAdDisplayTrackingURL(adDisplayTrackingUrl);
 
-		StringBuilder displayUrlLengthProp = new StringBuilder(adUnitIdentifier);
-		displayUrlLengthProp.append(".");
-		displayUrlLengthProp.append(CommonConstants.DISPLAY_URL_LENGTH);
 		String adDisplayUrl = nbp.getAdDisplayURL();
-		adDisplayUrl = HelperUtil.getTruncatedString(adDisplayUrl,
-				displayUrlLengthProp.toString());
+		adDisplayUrl = fieldLengths.truncate(adDisplayUrl,
+				FieldLengths.DISPLAY_URL);
 		nbp.setAdDisplayURL(adDisplayUrl);
 
 		return nbp;
 	}
 
-	// TODO: Refactor!!!
+	/**
+	 * Sets a default image on the places that have none. Images are not
+	 * repeated until all of them have been used.
+	 * 
+	 * @param nearbyPlaces
+	 * @param path
+	 * @return List
+	 * @throws CitysearchException
+	 */
 	public static List<NearbyPlace> addDefaultImages(
 			List<NearbyPlace> nearbyPlaces, String path)
 			throws CitysearchException {
-		NearbyPlace nearbyPlace;
-		List<String> imageList;
-		ArrayList<Integer> indexList = new ArrayList<Integer>(3);
-		int imageListSize = 0;
-		String imageUrl = "";
-
-		imageList = HelperUtil.getImages(path);
-		Random randomizer = new Random();
-		int size = nearbyPlaces.size();
-
-		for (int i = 0; i < size; i++) {
-			nearbyPlace = nearbyPlaces.get(i);
-			imageUrl = nearbyPlace.getAdImageURL();
-			if (StringUtils.isBlank(imageUrl)) {
-				int index = 0;
-				imageListSize = imageList.size();
-				if (imageListSize > 0) {
-					do {
-						index = randomizer.nextInt(imageListSize);
-					} while (indexList.contains(index));
-					indexList.add(index);
-					imageUrl = imageList.get(index);
+		ImagePicker imagePicker = null;
+		for (NearbyPlace nearbyPlace : nearbyPlaces) {
+			if (StringUtils.isBlank(nearbyPlace.getAdImageURL())) {
+				if (imagePicker == null) {
+					imagePicker = new ImagePicker(HelperUtil.getImages(path));
+				}
+				String imageUrl = imagePicker.next();
+				if (imageUrl != null) {
 					nearbyPlace.setAdImageURL(imageUrl);
 				}
 			}
-			nearbyPlaces.set(i, nearbyPlace);
 		}
 		return nearbyPlaces;
 	}
@@ -6,17 +6,13 @@ import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Properties;
-import java.util.Random;
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.math.NumberUtils;
 import org.apache.log4j.Logger;
-import org.jdom.Document;
-import org.jdom.Element;
-
+import com.citysearch.webwidget.api.bean.OfferAPIBean;
+import com.citysearch.webwidget.api.parser.OfferResponseHandler;
 import com.citysearch.webwidget.bean.Offer;
 import com.citysearch.webwidget.bean.OffersRequest;
 import com.citysearch.webwidget.bean.Profile;
@@ -27,33 +23,17 @@ import com.citysearch.webwidget.exception.InvalidHttpResponseException;
 import com.citysearch.webwidget.exception.InvalidRequestParametersException;
 import com.citysearch.webwidget.util.APIFieldNameConstants;
 import com.citysearch.webwidget.util.CommonConstants;
+import com.citysearch.webwidget.util.FieldLengths;
 import com.citysearch.webwidget.util.HelperUtil;
-import com.citysearch.webwidget.util.PropertiesLoader;
+import com.citysearch.webwidget.util.ImagePicker;
+import com.citysearch.webwidget.util.TopK;
+import com.citysearch.webwidget.util.WebWidgetConfig;
 
 public class OffersHelper {
-    private final static String PROPERTY_OFFERS_URL = "offers.url";
-    private final static String PROPERTY_CITYSEARCH_COUPON_URL = "citysearch.coupon.url";
     private Logger log = Logger.getLogger(getClass());
     private String rootPath;
 
-    private static final String OFFER = "offer";
     private static final String RPP_OFFERS = "2";
-    private static final String CITY = "city";
-    private static final String ATTRIBUTION_SOURCE = "attribution_source";
-    private static final String CS_RATING = "cs_rating";
-    private static final String REVIEW_COUNT = "review_count";
-    private static final String IMAGE_URL = "image_url";
-    private static final String LATITUDE = "latitude";
-    private static final String LISTING_ID = "listing_id";
-    private static final String LISTING_NAME = "listing_name";
-    private static final String LONGITUDE = "longitude";
-    private static final String OFFER_DESCRIPTION = "offer_description";
-    private static final String OFFER_ID = "offer_id";
-    private static final String OFFER_TITLE = "offer_title";
-    private static final String REFERENCE_ID = "reference_id";
-    private static final String STATE = "state";
-    private static final String STREET = "street";
-    private static final String ZIP = "zip";
     private static final String PUBLISHER_HEADER = "X-Publisher";
 
     private Integer displaySize;
@@ -174,15 +154,16 @@ public class OffersHelper {
         // TODO: cleanup!!
         request.setCustomerHasbudget("true");// ????
 
-        Properties properties = PropertiesLoader.getAPIProperties();
-        StringBuilder urlString = new StringBuilder(properties.getProperty(PROPERTY_OFFERS_URL));
+        WebWidgetConfig config = WebWidgetConfig.get();
+        StringBuilder urlString = new StringBuilder(config.getOffersUrl());
         urlString.append(getQueryString(request));
-        Document responseDocument = null;
+        List<OfferAPIBean> offerBeans = null;
         try {
             String publisherHdr = request.getPublisher().trim();
             HashMap<String, String> hdrMap = new HashMap<String, String>();
             hdrMap.put(PUBLISHER_HEADER, publisherHdr);
-            responseDocument = HelperUtil.getAPIResponse(urlString.toString(), hdrMap);
+            offerBeans = HelperUtil.getAPIResponse(urlString.toString(), hdrMap,
+                    new OfferResponseHandler());
         } catch (InvalidHttpResponseException ihe) {
             // throw new CitysearchException(this.getClass().getName(),
             // "getOffers", ihe);
@@ -191,15 +172,22 @@ public class OffersHelper {
             return null;
         }
 
-        List<Offer> offersList = parseXML(request, responseDocument);
+        List<Offer> offersList = parseXML(request, offerBeans);
         if (offersList != null && !offersList.isEmpty()) {
+            // One Profile call per listing serves both the offer details and,
+            // when there are too few offers, the highest review
+            boolean withHighestReview = offersList.size() < request.getDisplaySize();
+            List<String> listingIds = new ArrayList<String>();
             for (Offer offer : offersList) {
-                ProfileRequest profileRequest = new ProfileRequest(request);
-                profileRequest.setClientIP(request.getClientIP());
-                profileRequest.setListingId(offer.getListingId());
-
-                ProfileHelper profHelper = new ProfileHelper(this.rootPath);
-                Profile profile = profHelper.getProfile(profileRequest);
+                listingIds.add(offer.getListingId());
+            }
+            ProfileRequest profileRequest = new ProfileRequest(request);
+            profileRequest.setClientIP(request.getClientIP());
+            ProfileHelper profHelper = new ProfileHelper(this.rootPath);
+            Map<String, Profile> profiles = profHelper.getProfiles(profileRequest, listingIds,
+                    withHighestReview);
+            for (Offer offer : offersList) {
+                Profile profile = profiles.get(offer.getListingId());
                 if (profile != null) {
                     offer.setReviewCount(HelperUtil.toInteger(profile.getReviewCount()));
                     offer.setProfileUrl(profile.getProfileUrl());
@@ -218,7 +206,7 @@ public class OffersHelper {
                             request.getCallBackFunction(), offer.getListingId(), profile.getPhone());
                     offer.setCallBackFunction(callBackFn);
 
-                    StringBuilder couponUrl = new StringBuilder(properties.getProperty(PROPERTY_CITYSEARCH_COUPON_URL));
+                    StringBuilder couponUrl = new StringBuilder(config.getCouponUrl());
                     couponUrl.append(HelperUtil.constructQueryParam(CommonConstants.LISTING_ID, offer.getListingId()));
                     couponUrl.append(CommonConstants.SYMBOL_AMPERSAND);
                     couponUrl.append(HelperUtil.constructQueryParam("offerId", offer.getOfferId()));
@@ -229,18 +217,9 @@ public class OffersHelper {
                             request.getAdUnitSize());
                     offer.setCouponUrl(couponTrackingUrl);
                 }
-            }
-        }
-
-        if (offersList != null && !offersList.isEmpty()
-                && offersList.size() < request.getDisplaySize()) {
-            ProfileRequest profileRequest = new ProfileRequest(request);
-            profileRequest.setClientIP(request.getClientIP());
-            ProfileHelper phelper = new ProfileHelper(this.rootPath);
-            for (Offer offer : offersList) {
-                profileRequest.setListingId(offer.getListingId());
-                Profile profile = phelper.getProfileAndHighestReview(profileRequest);
-                offer.setProfile(profile);
+                if (withHighestReview) {
+                    offer.setProfile(profile);
+                }
             }
         }
 
@@ -249,23 +228,22 @@ public class OffersHelper {
     }
 
     /**
-     * Parses the offers xml. Returns List of offer objects
+     * Ranks the parsed offers. Returns List of offer objects
      *
-     * @param doc
+     * @param offerBeans
      * @return List of Offer objects
      * @throws CitysearchException
      */
-    private List<Offer> parseXML(OffersRequest request, Document doc) throws CitysearchException {
+    List<Offer> parseXML(OffersRequest request, List<OfferAPIBean> offerBeans)
+            throws CitysearchException {
         log.info("Start OffersHelper parseXML");
         List<Offer> offersList = null;
-        if (doc != null && doc.hasRootElement()) {
-            Element rootElement = doc.getRootElement();
-            List<Element> offersElementList = rootElement.getChildren(OFFER);
+        if (offerBeans != null) {
             if (StringUtils.isBlank(request.getLatitude())
                     || StringUtils.isBlank(request.getLongitude())) {
-                offersList = (List<Offer>) getOffersByRating(request, offersElementList);
+                offersList = (List<Offer>) getOffersByRating(request, offerBeans);
             } else {
-                offersList = (List<Offer>) getOffersByDistance(request, offersElementList);
+                offersList = (List<Offer>) getOffersByDistance(request, offerBeans);
             }
             addDefaultImages(offersList, this.rootPath);
         }
@@ -273,164 +251,122 @@ public class OffersHelper {
         return offersList;
     }
 
-    private List<Offer> getOffersByDistance(OffersRequest request, List<Element> offerElemList)
+    private List<Offer> getOffersByDistance(OffersRequest request, List<OfferAPIBean> offerBeans)
             throws CitysearchException {
         log.info("Start OffersHelper getOffersByDistance");
         List<Offer> offersLst = new ArrayList<Offer>();
-        if (!offerElemList.isEmpty()) {
+        if (!offerBeans.isEmpty()) {
             BigDecimal sourceLatitude = new BigDecimal(request.getLatitude());
             BigDecimal sourceLongitude = new BigDecimal(request.getLongitude());
-            SortedMap<Double, List<Element>> elmsSortedByDistance = new TreeMap<Double, List<Element>>();
-            for (Element elm : offerElemList) {
-                BigDecimal businessLatitude = new BigDecimal(
-                        elm.getChildText(CommonConstants.LATITUDE));
-                BigDecimal businessLongitude = new BigDecimal(
-                        elm.getChildText(CommonConstants.LONGITUDE));
+            TopK<OfferAPIBean> beansByDistance = new TopK<OfferAPIBean>(this.displaySize);
+            for (OfferAPIBean bean : offerBeans) {
+                BigDecimal businessLatitude = new BigDecimal(bean.getLatitude());
+                BigDecimal businessLongitude = new BigDecimal(bean.getLongitude());
                 double distance = HelperUtil.getDistance(sourceLatitude, sourceLongitude,
                         businessLatitude, businessLongitude);
-                if (elmsSortedByDistance.containsKey(distance)) {
-                    elmsSortedByDistance.get(distance).add(elm);
-                } else {
-                    List<Element> elms = new ArrayList<Element>();
-                    elms.add(elm);
-                    elmsSortedByDistance.put(distance, elms);
-                }
+                beansByDistance.offer(distance, bean);
             }
-            offersLst = getOffersList(request, elmsSortedByDistance);
+            offersLst = getOffersList(request, beansByDistance.toList());
         }
         log.info("End OffersHelper getOffersByDistance");
         return offersLst;
     }
 
-    private List<Offer> getOffersByRating(OffersRequest request, List<Element> offerElemList)
+    private List<Offer> getOffersByRating(OffersRequest request, List<OfferAPIBean> offerBeans)
             throws CitysearchException {
         log.info("Start OffersHelper getOffersByRating");
         List<Offer> offersLst = new ArrayList<Offer>();
-        if (!offerElemList.isEmpty()) {
-            SortedMap<Double, List<Element>> elmsSortedByRating = new TreeMap<Double, List<Element>>();
-            for (Element elm : offerElemList) {
-                String ratingVal = elm.getChildText(CS_RATING);
+        if (!offerBeans.isEmpty()) {
+            TopK<OfferAPIBean> beansByRating = new TopK<OfferAPIBean>(this.displaySize);
+            for (OfferAPIBean bean : offerBeans) {
+                String ratingVal = bean.getRating();
                 if (!StringUtils.isBlank(ratingVal) && NumberUtils.isNumber(ratingVal)) {
                     double rating = NumberUtils.toDouble(ratingVal);
-                    if (elmsSortedByRating.containsKey(rating)) {
-                        elmsSortedByRating.get(rating).add(elm);
-                    } else {
-                        List<Element> elms = new ArrayList<Element>();
-                        elms.add(elm);
-                        elmsSortedByRating.put(rating, elms);
-                    }
+                    beansByRating.offer(rating, bean);
                 }
             }
-            offersLst = getOffersList(request, elmsSortedByRating);
+            offersLst = getOffersList(request, beansByRating.toList());
         }
         log.info("End OffersHelper getOffersByRating");
         return offersLst;
     }
 
-    private List<Offer> getOffersList(OffersRequest request,
-            SortedMap<Double, List<Element>> sortedElms) throws CitysearchException {
+    private List<Offer> getOffersList(OffersRequest request, List<OfferAPIBean> beansToConvert)
+            throws CitysearchException {
         List<Offer> offersLst = new ArrayList<Offer>();
-        if (!sortedElms.isEmpty()) {
-            for (int j = 0; j < sortedElms.size(); j++) {
-                if (offersLst.size() >= this.displaySize) {
-                    break;
-                }
-                Double key = sortedElms.firstKey();
-                List<Element> elms = sortedElms.remove(key);
-                for (int idx = 0; idx < elms.size(); idx++) {
-                    if (offersLst.size() == this.displaySize) {
-                        break;
-                    }
-                    Offer offer = toOffer(request, elms.get(idx));
-                    offersLst.add(offer);
-                }
+        if (!beansToConvert.isEmpty()) {
+            FieldLengths fieldLengths = WebWidgetConfig.get().getFieldLengths(
+                    request.getAdUnitIdentifier());
+            for (OfferAPIBean bean : beansToConvert) {
+                offersLst.add(toOffer(request, bean, fieldLengths));
             }
         }
         return offersLst;
     }
 
-    private Offer toOffer(OffersRequest request, Element offerElement) throws CitysearchException {
+    private Offer toOffer(OffersRequest request, OfferAPIBean bean, FieldLengths fieldLengths)
+            throws CitysearchException {
         Offer offer = new Offer();
 
         if (!StringUtils.isBlank(request.getLatitude())
                 && !StringUtils.isBlank(request.getLongitude())) {
             BigDecimal sourceLatitude = new BigDecimal(request.getLatitude());
             BigDecimal sourceLongitude = new BigDecimal(request.getLongitude());
-            BigDecimal businessLatitude = new BigDecimal(
-                    offerElement.getChildText(CommonConstants.LATITUDE));
-            BigDecimal businessLongitude = new BigDecimal(
-                    offerElement.getChildText(CommonConstants.LONGITUDE));
+            BigDecimal businessLatitude = new BigDecimal(bean.getLatitude());
+            BigDecimal businessLongitude = new BigDecimal(bean.getLongitude());
             double distance = HelperUtil.getDistance(sourceLatitude, sourceLongitude,
                     businessLatitude, businessLongitude);
             offer.setDistance(String.valueOf(distance));
         } else {
             offer.setDistance(null);
         }
-        offer.setCity(offerElement.getChildText(CITY));
-        offer.setState(offerElement.getChildText(STATE));
+        offer.setCity(bean.getCity());
+        offer.setState(bean.getState());
         String location = HelperUtil.getLocationString(offer.getCity(), offer.getState());
         offer.setLocation(location);
-        offer.setAttributionSrc(offerElement.getChildText(ATTRIBUTION_SOURCE));
-        String ratingVal = offerElement.getChildText(CS_RATING);
+        offer.setAttributionSrc(bean.getAttributionSrc());
+        String ratingVal = bean.getRating();
         List<Integer> ratingList = HelperUtil.getRatingsList(ratingVal);
         offer.setListingRating(ratingList);
-        offer.setReviewCount(HelperUtil.toInteger(offerElement.getChildText(REVIEW_COUNT)));
-        offer.setImageUrl(offerElement.getChildText(IMAGE_URL));
-        offer.setLatitude(offerElement.getChildText(LATITUDE));
-        offer.setListingId(offerElement.getChildText(LISTING_ID));
-        offer.setLongitude(offerElement.getChildText(LONGITUDE));
-        offer.setOfferId(offerElement.getChildText(OFFER_ID));
-
-        String adUnitIdentifier = request.getAdUnitIdentifier();
-
-        String offerTitle = offerElement.getChildText(OFFER_TITLE);
-        StringBuilder titleLengthProp = new StringBuilder(adUnitIdentifier);
-        titleLengthProp.append(".");
-        titleLengthProp.append(CommonConstants.TITLE_LENGTH);
-        offerTitle = HelperUtil.getAbbreviatedString(offerTitle, titleLengthProp.toString());
+        offer.setReviewCount(HelperUtil.toInteger(bean.getReviewCount()));
+        offer.setImageUrl(bean.getImageUrl());
+        offer.setLatitude(bean.getLatitude());
+        offer.setListingId(bean.getListingId());
+        offer.setLongitude(bean.getLongitude());
+        offer.setOfferId(bean.getOfferId());
+
+        String offerTitle = bean.getOfferTitle();
+        offerTitle = fieldLengths.abbreviate(offerTitle, FieldLengths.TITLE);
         offer.setOfferTitle(offerTitle);
         offer.setOfferShortTitle(offerTitle);
 
-        String offerdesc = offerElement.getChildText(OFFER_DESCRIPTION);
-        StringBuilder descLengthProp = new StringBuilder(adUnitIdentifier);
-        descLengthProp.append(".");
-        descLengthProp.append(CommonConstants.DESCRIPTION_LENGTH);
-        offerdesc = HelperUtil.getAbbreviatedString(offerdesc, descLengthProp.toString());
+        String offerdesc = bean.getOfferDescription();
+        offerdesc = fieldLengths.abbreviate(offerdesc, FieldLengths.DESCRIPTION);
         offer.setOfferDescription(offerdesc);
 
-        String name = offerElement.getChildText(LISTING_NAME);
-        StringBuilder nameLengthProp = new StringBuilder(adUnitIdentifier);
-        nameLengthProp.append(".");
-        nameLengthProp.append(CommonConstants.NAME_LENGTH);
-        name = HelperUtil.getAbbreviatedString(name, nameLengthProp.toString());
+        String name = bean.getListingName();
+        name = fieldLengths.abbreviate(name, FieldLengths.NAME);
         offer.setListingName(name);
 
-        offer.setReferenceId(offerElement.getChildText(REFERENCE_ID));
-        offer.setStreet(offerElement.getChildText(STREET));
-        offer.setZip(offerElement.getChildText(ZIP));
+        offer.setReferenceId(bean.getReferenceId());
+        offer.setStreet(bean.getStreet());
+        offer.setZip(bean.getZip());
         return offer;
     }
 
     private List<Offer> addDefaultImages(List<Offer> offers, String path)
             throws CitysearchException {
-        if (offers != null && !offers.isEmpty()) {
-            List<String> imageList = HelperUtil.getImages(path);
-            if (imageList != null && !imageList.isEmpty()) {
-                ArrayList<Integer> indexList = new ArrayList<Integer>(3);
-                Random randomizer = new Random();
-                for (int i = 0; i < offers.size(); i++) {
-                    Offer offer = offers.get(i);
-                    String imageUrl = offer.getImageUrl();
-                    if (StringUtils.isBlank(imageUrl)) {
-                        int index = 0;
-                        do {
-                            index = randomizer.nextInt(imageList.size());
-                        } while (indexList.contains(index));
-                        indexList.add(index);
-                        imageUrl = imageList.get(index);
+        if (offers != null) {
+            ImagePicker imagePicker = null;
+            for (Offer offer : offers) {
+                if (StringUtils.isBlank(offer.getImageUrl())) {
+                    if (imagePicker == null) {
+                        imagePicker = new ImagePicker(HelperUtil.getImages(path));
+                    }
+                    String imageUrl = imagePicker.next();
+                    if (imageUrl != null) {
                         offer.setImageUrl(imageUrl);
                     }
-                    offers.set(i, offer);
                 }
             }
         }
@@ -1,33 +1,36 @@
 package com.citysearch.webwidget.helper;
 
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
-import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Properties;
-import java.util.Random;
-import java.util.Set;
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
 import org.apache.log4j.Logger;
-import org.jdom.Document;
-import org.jdom.Element;
 
+import com.citysearch.webwidget.api.bean.LocationProfile;
+import com.citysearch.webwidget.api.bean.ReviewResponse;
+import com.citysearch.webwidget.api.proxy.ProfileProxy;
 import com.citysearch.webwidget.bean.Address;
 import com.citysearch.webwidget.bean.Profile;
 import com.citysearch.webwidget.bean.ProfileRequest;
 import com.citysearch.webwidget.bean.Review;
 import com.citysearch.webwidget.exception.CitysearchException;
-import com.citysearch.webwidget.exception.InvalidHttpResponseException;
 import com.citysearch.webwidget.exception.InvalidRequestParametersException;
-import com.citysearch.webwidget.util.APIFieldNameConstants;
 import com.citysearch.webwidget.util.CommonConstants;
+import com.citysearch.webwidget.util.DefaultImages;
 import com.citysearch.webwidget.util.HelperUtil;
-import com.citysearch.webwidget.util.PropertiesLoader;
+import com.citysearch.webwidget.util.ImagePicker;
+import com.citysearch.webwidget.util.RequestDeadline;
+import com.citysearch.webwidget.util.UpstreamExecutor;
+import com.citysearch.webwidget.util.WebWidgetConfig;
 
 /**
  * This helper class performs all the functionalty related to Profile API like
@@ -39,40 +42,9 @@ import com.citysearch.webwidget.util.PropertiesLoader;
  */
 public class ProfileHelper {
 
-	private final static String PROPERTY_PROFILE_URL = "profile.url";
 	private static final String LSITING_ID_ERR_MSG = "listingid.errmsg";
-	protected static final String LOCATION = "location";
-	private static final String STREET = "street";
-	private static final String CITY = "city";
-	private static final String STATE = "state";
-	private static final String POSTAL_CODE = "postal_code";
-	private static final String ADDRESS = "address";
-	private static final String CONTACT_INFO = "contact_info";
-	private static final String PHONE = "display_phone";
-	private static final String URLS = "urls";
-	private static final String PROFILE_URL = "profile_url";
-	private static final String SEND_TO_FRIEND_URL = "send_to_friend_url";
-	private static final String IMAGES = "images";
-	private static final String IMAGE = "image";
-	private static final String IMAGE_URL = "image_url";
-	private static final String IMAGE_PROPERTIES_FILE = "review.image.properties";
-	private static final String COMMA_STRING = ",";
-	private static HashMap<String, List<String>> imageMap;
-	private static final String CATEGORIES = "categories";
-	private static final String CATEGORY = "category";
-	private static final String CATEGORY_NAME = "name";
-	private static final String ID = "id";
-
-	private static final String REVIEWS_URL = "reviews_url";
-	private static final String WEBSITE_URL = "website_url";
-	private static final String MENU_URL = "menu_url";
-	private static final String RESERVATION_URL = "reservation_url";
-	private static final String MAP_URL = "map_url";
-
-	private static final String DATE_FORMAT = "reviewdate.format";
-
-	private static final String TOTAL_USER_REVIEWS = "total_user_reviews";
-	private static final String REVIEWS = "reviews";
+	private static final String FANOUT_TIMEOUT_PROPERTY = "profile.fanout.timeout";
+	private static final long DEFAULT_FANOUT_TIMEOUT = 3000;
 
 	private Logger log = Logger.getLogger(getClass());
 	private String rootPath;
@@ -91,18 +63,16 @@ public class ProfileHelper {
 	private void validateRequest(ProfileRequest request)
 			throws CitysearchException {
 		List<String> errors = new ArrayList<String>();
-		Properties errorProperties = PropertiesLoader.getErrorProperties();
+		WebWidgetConfig config = WebWidgetConfig.get();
 
 		if (StringUtils.isBlank(request.getPublisher())) {
-			errors.add(errorProperties
-					.getProperty(CommonConstants.PUBLISHER_ERROR_CODE));
+			errors.add(config.getErrorMessage(CommonConstants.PUBLISHER_ERROR_CODE));
 		}
 		if (StringUtils.isBlank(request.getListingId())) {
-			errors.add(errorProperties.getProperty(LSITING_ID_ERR_MSG));
+			errors.add(config.getErrorMessage(LSITING_ID_ERR_MSG));
 		}
 		if (StringUtils.isBlank(request.getClientIP())) {
-			errors.add(errorProperties
-					.getProperty(CommonConstants.CLIENT_IP_ERROR_CODE));
+			errors.add(config.getErrorMessage(CommonConstants.CLIENT_IP_ERROR_CODE));
 		}
 		if (!errors.isEmpty()) {
 			throw new InvalidRequestParametersException(this.getClass()
@@ -112,48 +82,20 @@ public class ProfileHelper {
 	}
 
 	/**
-	 * Constructs the Profile API query string with all the supplied parameters
-	 * and returns query string
+	 * Returns the parsed Profile API response for the listing. Responses are
+	 * cached by ProfileProxy, so the returned object is shared and must only
+	 * be read
 	 * 
 	 * @param request
-	 * @return String
+	 * @return LocationProfile
 	 * @throws CitysearchException
 	 */
-	private String getQueryString(ProfileRequest request)
-			throws CitysearchException {
-		StringBuilder strBuilder = new StringBuilder();
-		Properties properties = PropertiesLoader.getAPIProperties();
-		String apiKey = properties
-				.getProperty(CommonConstants.API_KEY_PROPERTY);
-		strBuilder.append(HelperUtil.constructQueryParam(
-				APIFieldNameConstants.API_KEY, apiKey));
-		strBuilder.append(CommonConstants.SYMBOL_AMPERSAND);
-		strBuilder.append(HelperUtil.constructQueryParam(
-				APIFieldNameConstants.PUBLISHER, request.getPublisher()));
-		strBuilder.append(CommonConstants.SYMBOL_AMPERSAND);
-		strBuilder.append(HelperUtil.constructQueryParam(
-				APIFieldNameConstants.LISTING_ID, request.getListingId()));
-		strBuilder.append(CommonConstants.SYMBOL_AMPERSAND);
-		strBuilder.append(HelperUtil.constructQueryParam(
-				APIFieldNameConstants.CLIENT_IP, request.getClientIP()));
-		return strBuilder.toString();
-	}
-
-	private Document executeQuery(ProfileRequest request)
+	private LocationProfile executeQuery(ProfileRequest request)
 			throws CitysearchException {
 		validateRequest(request);
-		Properties properties = PropertiesLoader.getAPIProperties();
-		String urlString = properties.getProperty(PROPERTY_PROFILE_URL)
-				+ getQueryString(request);
-		log.info(urlString);
-		Document responseDocument = null;
-		try {
-			responseDocument = HelperUtil.getAPIResponse(urlString, null);
-		} catch (InvalidHttpResponseException ihe) {
-			throw new CitysearchException(this.getClass().getName(),
-					"executeQuery", ihe);
-		}
-		return responseDocument;
+		ProfileProxy proxy = new ProfileProxy();
+		return proxy.getLocationProfile(request.getPublisher(), request
+				.getListingId(), request.getClientIP());
 	}
 
 	/**
@@ -166,268 +108,214 @@ public class ProfileHelper {
 	 */
 	public Profile getProfile(ProfileRequest request)
 			throws CitysearchException {
-		Document responseDocument = executeQuery(request);
-		Profile profile = parseProfileForReviews(responseDocument);
+		LocationProfile locationProfile = executeQuery(request);
+		Profile profile = parseProfileForReviews(locationProfile);
 		return profile;
 	}
 
 	/**
-	 * Parses xml response and returns the Profile object
+	 * Converts the parsed API response to the Profile object
 	 * 
-	 * @param doc
+	 * @param locationProfile
 	 * @return Profile
 	 * @throws CitysearchException
 	 */
-	private Profile parseProfileForReviews(Document doc)
+	private Profile parseProfileForReviews(LocationProfile locationProfile)
 			throws CitysearchException {
 		Profile profile = null;
-		if (doc != null && doc.hasRootElement()) {
-			Element locationElem = doc.getRootElement().getChild(LOCATION);
-			if (locationElem != null) {
-				profile = new Profile();
-				profile.setAddress(getAddress(locationElem.getChild(ADDRESS)));
-				profile.setPhone(getPhone(locationElem.getChild(CONTACT_INFO)));
-				parseUrls(locationElem, profile);
-				Element review = locationElem.getChild(REVIEWS);
-				if (review != null) {
-					profile.setReviewCount(review
-							.getChildText(TOTAL_USER_REVIEWS));
-				}
-				profile.setImageUrl(getImage(locationElem.getChild(IMAGES),
-						locationElem.getChild(CATEGORIES)));
-			}
+		if (locationProfile != null) {
+			profile = new Profile();
+			profile.setAddress(getAddress(locationProfile));
+			profile.setPhone(locationProfile.getPhone());
+			profile.setProfileUrl(locationProfile.getProfileUrl());
+			profile.setSendToFriendUrl(locationProfile.getSendToFriendUrl());
+			profile.setReviewsUrl(locationProfile.getReviewsUrl());
+			profile.setWebsiteUrl(locationProfile.getWebsiteUrl());
+			profile.setMenuUrl(locationProfile.getMenuUrl());
+			profile.setReservationUrl(locationProfile.getReservationUrl());
+			profile.setMapUrl(locationProfile.getMapUrl());
+			profile.setReviewCount(locationProfile.getReviewCount());
+			profile.setImageUrl(getImage(locationProfile));
 		}
 		return profile;
 	}
 
-	private void parseUrls(Element locationElm, Profile profile) {
-		Element urlElm = locationElm.getChild(URLS);
-		if (urlElm != null) {
-			profile.setProfileUrl(urlElm.getChildText(PROFILE_URL));
-			profile.setSendToFriendUrl(urlElm.getChildText(SEND_TO_FRIEND_URL));
-			profile.setReviewsUrl(urlElm.getChildText(REVIEWS_URL));
-			profile.setWebsiteUrl(urlElm.getChildText(WEBSITE_URL));
-			profile.setMenuUrl(urlElm.getChildText(MENU_URL));
-			profile.setReservationUrl(urlElm.getChildText(RESERVATION_URL));
-			profile.setMapUrl(urlElm.getChildText(MAP_URL));
-		}
-	}
-
 	/**
-	 * Parses the address element received in response and returns Address
-	 * object
+	 * Returns the Address object built from the parsed address fields
 	 * 
-	 * @param addressElem
+	 * @param locationProfile
 	 * @return Address
-	 * @throws CitysearchException
 	 */
-	private Address getAddress(Element addressElem) throws CitysearchException {
+	private Address getAddress(LocationProfile locationProfile) {
 		Address address = null;
-		if (addressElem != null) {
+		if (locationProfile.getStreet() != null
+				|| locationProfile.getCity() != null
+				|| locationProfile.getState() != null
+				|| locationProfile.getPostalCode() != null) {
 			address = new Address();
-			address.setStreet(addressElem.getChildText(STREET));
-			address.setCity(addressElem.getChildText(CITY));
-			address.setState(addressElem.getChildText(STATE));
-			address.setPostalCode(addressElem.getChildText(POSTAL_CODE));
+			address.setStreet(locationProfile.getStreet());
+			address.setCity(locationProfile.getCity());
+			address.setState(locationProfile.getState());
+			address.setPostalCode(locationProfile.getPostalCode());
 		}
 		return address;
 	}
 
 	/**
-	 * Gets the phone number from contact info element
+	 * Images returned by the API are absolute urls. A profile without one gets
+	 * a stock image of its business category, picked at random on every call
+	 * since the LocationProfile is cached. Stock images are relative and are
+	 * prefixed with the root path
 	 * 
-	 * @param contactInfo
-	 * @return String
-	 */
-	private String getPhone(Element contactInfo) {
-		if (contactInfo != null) {
-			return contactInfo.getChildText(PHONE);
-		}
-		return null;
-	}
-
-	/**
-	 * Gets the image url from xml. If no image url is found, returns the stock
-	 * image related to the business category
-	 * 
-	 * @param images
+	 * @param locationProfile
 	 * @return String
 	 * @throws CitysearchException
 	 */
-	private String getImage(Element images, Element categories)
+	private String getImage(LocationProfile locationProfile)
 			throws CitysearchException {
-		String imageurl = null;
-		if (images != null) {
-			List<Element> imageList = images.getChildren(IMAGE);
-			int size = imageList.size();
-			for (int index = 0; index < size; index++) {
-				Element image = imageList.get(index);
-				if (image != null) {
-					imageurl = image.getChildText(IMAGE_URL);
-					if (StringUtils.isNotBlank(imageurl)) {
-						break;
-					}
-				}
+		String imageUrl = locationProfile.getImageUrl();
+		if (imageUrl == null) {
+			List<String> imageList = DefaultImages
+					.getCategoryImages(locationProfile.getStockImageCategory());
+			if (imageList != null && !imageList.isEmpty()) {
+				imageUrl = imageList.get(ImagePicker.randomIndex(imageList
+						.size()));
 			}
 		}
-
-		if (StringUtils.isBlank(imageurl)) {
-			imageurl = getStockImage(categories);
+		if (StringUtils.isNotBlank(imageUrl) && !imageUrl.startsWith("http")) {
+			return this.rootPath + imageUrl;
 		}
-
-		return imageurl;
+		return imageUrl;
 	}
 
-	/**
-	 * Returns the stock image url, if no image url is returned by API response
-	 * Parses the categories element and checks if the any of the category child
-	 * elements matches with the categories present in the "imageMap" If
-	 * present, picks up the imageurl randomly from the list of images for that
-	 * category from the "imageMap" object
-	 * 
-	 * @param categories
-	 * @return imageurl
-	 * @throws CitysearchException
-	 */
-	private String getStockImage(Element categories) throws CitysearchException {
-		if (imageMap == null) {
-			getImageMap();
-		}
-		String imageURL = null;
-		if (categories != null && imageMap != null) {
-			List<Element> categoryList = categories.getChildren(CATEGORY);
-			int size = categoryList.size();
-			Set<String> imageKeySet = imageMap.keySet();
-			Random randomizer = new Random();
-			for (int index = 0; index < size; index++) {
-				Element category = categoryList.get(index);
-				if (category != null) {
-					String name = category.getAttributeValue(CATEGORY_NAME);
-					if (StringUtils.isNotBlank(name)
-							&& imageKeySet.contains(name)) {
-						List<String> imageList = imageMap.get(name);
-						int listSize = imageList.size();
-						int imgIndex = randomizer.nextInt(listSize);
-						imageURL = this.rootPath + imageList.get(imgIndex);
-						break;
-					}
-				}
-			}
-		}
-		return imageURL;
+	public Profile getProfileAndHighestReview(ProfileRequest request)
+			throws CitysearchException {
+		LocationProfile locationProfile = executeQuery(request);
+		Profile profile = findProfileLatestReview(request, locationProfile);
+		return profile;
 	}
 
 	/**
-	 * Reads the images from a properties file, adds them to a map The
-	 * properties file contains properties of the format key=category,imageurl
-	 * Each category is added as a key in the Map and imageurls are added to the
-	 * list and set as value in the Map The Map contains <key,value> =
-	 * <category,list of image urls>
+	 * Fetches the profiles of all the given listings concurrently on the
+	 * shared upstream executor. Each distinct listing id is requested only
+	 * once. If withHighestReview is true the profiles are parsed with their
+	 * latest review as done by getProfileAndHighestReview, otherwise as done
+	 * by getProfile. Profiles that are not returned before the
+	 * profile.fanout.timeout deadline, or the end of the request's
+	 * RequestDeadline if sooner, are left out of the returned map
 	 * 
-	 * @param contextPath
-	 * @return ArrayList
+	 * @param request
+	 *            common request parameters; listing id is set per call
+	 * @param listingIds
+	 * @param withHighestReview
+	 * @return Map of listing id to Profile
 	 * @throws CitysearchException
 	 */
-	private void getImageMap() throws CitysearchException {
-		List<String> imageList;
-		Properties imageProperties = null;
-		if (imageProperties == null) {
-			imageProperties = PropertiesLoader
-					.getProperties(IMAGE_PROPERTIES_FILE);
+	public Map<String, Profile> getProfiles(ProfileRequest request,
+			List<String> listingIds, final boolean withHighestReview)
+			throws CitysearchException {
+		Map<String, Future<Profile>> futures = new LinkedHashMap<String, Future<Profile>>();
+		for (String listingId : listingIds) {
+			if (StringUtils.isBlank(listingId)
+					|| futures.containsKey(listingId)) {
+				continue;
+			}
+			final ProfileRequest profileRequest = new ProfileRequest(request);
+			profileRequest.setClientIP(request.getClientIP());
+			profileRequest.setListingId(listingId);
+			futures.put(listingId, UpstreamExecutor
+					.submit(new Callable<Profile>() {
+						public Profile call() throws CitysearchException {
+							LocationProfile locationProfile = executeQuery(profileRequest);
+							if (withHighestReview) {
+								return findProfileLatestReview(profileRequest,
+										locationProfile);
+							}
+							return parseProfileForReviews(locationProfile);
+						}
+					}));
 		}
 
-		Set<String> imageKeySet;
-		imageMap = new HashMap<String, List<String>>();
-		Enumeration<Object> enumerator = imageProperties.keys();
-		while (enumerator.hasMoreElements()) {
-			String key = (String) enumerator.nextElement();
-			String value = imageProperties.getProperty(key);
-			String values[] = value.split(COMMA_STRING);
-			if (StringUtils.isNotBlank(values[0])
-					&& StringUtils.isNotBlank(values[1])) {
-				imageKeySet = imageMap.keySet();
-				if (imageKeySet.contains(values[0])) {
-					imageList = imageMap.get(values[0]);
-				} else {
-					imageList = new ArrayList<String>();
+		// No longer than the request's budget allows
+		long timeout = Math.min(NumberUtils.toLong(WebWidgetConfig.get()
+				.getApplicationProperty(FANOUT_TIMEOUT_PROPERTY),
+				DEFAULT_FANOUT_TIMEOUT), RequestDeadline.getRemaining());
+		long deadline = System.currentTimeMillis() + timeout;
+		Map<String, Profile> profiles = new HashMap<String, Profile>();
+		try {
+			for (Map.Entry<String, Future<Profile>> entry : futures.entrySet()) {
+				Future<Profile> future = entry.getValue();
+				long remaining = deadline - System.currentTimeMillis();
+				try {
+					Profile profile = future.get(Math.max(remaining, 0),
+							TimeUnit.MILLISECONDS);
+					if (profile != null) {
+						profiles.put(entry.getKey(), profile);
+					}
+				} catch (TimeoutException te) {
+					future.cancel(true);
+					log.warn("Profile not returned within " + timeout
+							+ "ms for listing id " + entry.getKey());
 				}
-				imageList.add(values[1]);
-				imageMap.put(values[0], imageList);
+			}
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new CitysearchException(this.getClass().getName(),
+					"getProfiles", ie);
+		} catch (ExecutionException ee) {
+			if (ee.getCause() instanceof CitysearchException) {
+				throw (CitysearchException) ee.getCause();
+			}
+			throw new CitysearchException(this.getClass().getName(),
+					"getProfiles", ee.getCause());
+		} finally {
+			for (Future<Profile> future : futures.values()) {
+				future.cancel(true);
 			}
 		}
-
-	}
-
-	public Profile getProfileAndHighestReview(ProfileRequest request)
-			throws CitysearchException {
-		Document responseDocument = executeQuery(request);
-		Profile profile = findProfileLatestReview(request, responseDocument);
-		return profile;
+		return profiles;
 	}
 
-	private Profile findProfileLatestReview(ProfileRequest request, Document doc)
-			throws CitysearchException {
-		Profile profile = null;
-		if (doc != null && doc.hasRootElement()) {
-			Element locationElm = doc.getRootElement().getChild(LOCATION);
-			if (locationElm != null) {
-				profile = new Profile();
-				profile.setListingId(locationElm.getChildText(ID));
-				profile.setAddress(getAddress(locationElm.getChild(ADDRESS)));
-				profile.setPhone(getPhone(locationElm.getChild(CONTACT_INFO)));
-				parseUrls(locationElm, profile);
-
-				profile.setImageUrl(getImage(locationElm.getChild(IMAGES),
-						locationElm.getChild(CATEGORIES)));
-				Element reviewsElm = locationElm.getChild("reviews");
-				List<Element> reviews = reviewsElm.getChildren("review");
-				SortedMap<Date, Element> reviewMap = new TreeMap<Date, Element>();
-				if (reviews != null && !reviews.isEmpty()) {
-					SimpleDateFormat formatter = new SimpleDateFormat(
-							PropertiesLoader.getAPIProperties().getProperty(
-									DATE_FORMAT));
-					for (Element reviewElm : reviews) {
-						String dateStr = reviewElm.getChildText("review_date");
-						Date date = HelperUtil.parseDate(dateStr, formatter);
-						if (date != null) {
-							reviewMap.put(date, reviewElm);
-						}
-					}
-					Element reviewElm = reviewMap.get(reviewMap.lastKey());
-					Review review = ReviewHelper.getReviewInstance(null,
-							reviewElm, this.rootPath, request.getAdUnitIdentifier());
-					review.setCallBackFunction(request.getCallBackFunction());
-					review.setCallBackUrl(request.getCallBackUrl());
-
-					String adDisplayTrackingUrl = HelperUtil.getTrackingUrl(
-							review.getReviewUrl(), null, request
-									.getCallBackUrl(), request
-									.getDartClickTrackUrl(), profile
-									.getListingId(), profile.getPhone(),
-							request.getPublisher(), request.getAdUnitName(),
-							request.getAdUnitSize());
-					review.setReviewTrackingUrl(adDisplayTrackingUrl);
-
-					String callBackFn = HelperUtil.getCallBackFunctionString(
-							request.getCallBackFunction(), profile
-									.getListingId(), profile.getPhone());
-					review.setCallBackFunction(callBackFn);
-
-					profile.setReview(review);
-
-					if (profile.getSendToFriendUrl() != null) {
-						String sendToFriendTrackingUrl = HelperUtil
-								.getTrackingUrl(profile.getSendToFriendUrl(),
-										null, request.getCallBackUrl(), request
-												.getDartClickTrackUrl(),
-										profile.getListingId(), profile
-												.getPhone(), request
-												.getPublisher(), request
-												.getAdUnitName(), request
-												.getAdUnitSize());
-						profile
-								.setSendToFriendTrackingUrl(sendToFriendTrackingUrl);
-					}
+	private Profile findProfileLatestReview(ProfileRequest request,
+			LocationProfile locationProfile) throws CitysearchException {
+		Profile profile = parseProfileForReviews(locationProfile);
+		if (profile != null) {
+			profile.setListingId(locationProfile.getListingId());
+			ReviewResponse reviewResponse = locationProfile.getReview();
+			if (reviewResponse != null) {
+				Review review = ReviewHelper.getReviewInstance(null,
+						reviewResponse, this.rootPath, request.getAdUnitIdentifier());
+				review.setCallBackFunction(request.getCallBackFunction());
+				review.setCallBackUrl(request.getCallBackUrl());
+
+				String adDisplayTrackingUrl = HelperUtil.getTrackingUrl(
+						review.getReviewUrl(), null, request
+								.getCallBackUrl(), request
+								.getDartClickTrackUrl(), profile
+								.getListingId(), profile.getPhone(),
+						request.getPublisher(), request.getAdUnitName(),
+						request.getAdUnitSize());
+				review.setReviewTrackingUrl(adDisplayTrackingUrl);
+
+				String callBackFn = HelperUtil.getCallBackFunctionString(
+						request.getCallBackFunction(), profile
+								.getListingId(), profile.getPhone());
+				review.setCallBackFunction(callBackFn);
+
+				profile.setReview(review);
+
+				if (profile.getSendToFriendUrl() != null) {
+					String sendToFriendTrackingUrl = HelperUtil
+							.getTrackingUrl(profile.getSendToFriendUrl(),
+									null, request.getCallBackUrl(), request
+											.getDartClickTrackUrl(),
+									profile.getListingId(), profile
+											.getPhone(), request
+											.getPublisher(), request
+											.getAdUnitName(), request
+											.getAdUnitSize());
+					profile
+							.setSendToFriendTrackingUrl(sendToFriendTrackingUrl);
 				}
 			}
 		}
@@ -1,21 +1,15 @@
 package com.citysearch.webwidget.helper;
 
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
-import java.util.List;
-import java.util.Properties;
-import java.util.SortedMap;
-import java.util.TreeMap;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.math.NumberUtils;
 import org.apache.commons.lang.time.DurationFormatUtils;
 import org.apache.log4j.Logger;
-import org.jdom.Document;
-import org.jdom.Element;
 
+import com.citysearch.webwidget.api.bean.ReviewResponse;
+import com.citysearch.webwidget.api.parser.ReviewResponseHandler;
 import com.citysearch.webwidget.bean.Profile;
 import com.citysearch.webwidget.bean.ProfileRequest;
 import com.citysearch.webwidget.bean.Review;
@@ -26,8 +20,10 @@ import com.citysearch.webwidget.exception.InvalidHttpResponseException;
 import com.citysearch.webwidget.exception.InvalidRequestParametersException;
 import com.citysearch.webwidget.util.APIFieldNameConstants;
 import com.citysearch.webwidget.util.CommonConstants;
+import com.citysearch.webwidget.util.DateCodec;
+import com.citysearch.webwidget.util.FieldLengths;
 import com.citysearch.webwidget.util.HelperUtil;
-import com.citysearch.webwidget.util.PropertiesLoader;
+import com.citysearch.webwidget.util.WebWidgetConfig;
 
 /**
  * This Helper class performs all the functionality related to Reviews.
@@ -41,21 +37,7 @@ public class ReviewHelper {
 
 	public final static String PROPERTY_REVIEW_URL = "reviews.url";
 
-	private static final int MINIMUM_RATING = 6;
-
-	private static final String ELEMENT_REVIEW_URL = "review_url";
-	private static final String BUSINESS_NAME = "business_name";
-	private static final String LISTING_ID = "listing_id";
-	private static final String REVIEW_ID = "review_id";
-	private static final String REVIEW_TITLE = "review_title";
-	private static final String REVIEW_TEXT = "review_text";
-	private static final String PROS = "pros";
-	private static final String CONS = "cons";
-	private static final String REVIEW_RATING = "review_rating";
-	private static final String REVIEW_DATE = "review_date";
-	private static final String REVIEW_AUTHOR = "review_author";
-	private static final String DATE_FORMAT = "reviewdate.format";
-	private static final String REVIEW_ELEMENT = "review";
+	static final int MINIMUM_RATING = 6;
 
 	private Logger log = Logger.getLogger(getClass());
 	private String rootPath;
@@ -136,139 +118,107 @@ public class ReviewHelper {
 			log.info("ReviewHelper.getLatestReview:: After finding zip");
 		}
 
-		Properties properties = PropertiesLoader.getAPIProperties();
-		String urlString = properties.getProperty(PROPERTY_REVIEW_URL)
+		WebWidgetConfig config = WebWidgetConfig.get();
+		String urlString = config.getReviewsUrl()
 				+ getQueryString(request);
 		log.info("ReviewHelper.getLatestReview:: Request URL " + urlString);
-		Document responseDocument = null;
+		ReviewResponse reviewResponse = null;
 		try {
-			responseDocument = HelperUtil.getAPIResponse(urlString, null);
+			reviewResponse = HelperUtil.getAPIResponse(urlString, null,
+					new ReviewResponseHandler(MINIMUM_RATING));
 			log
 					.info("ReviewHelper.getLatestReview:: Successfull response received.");
 		} catch (InvalidHttpResponseException ihe) {
 			throw new CitysearchException(this.getClass().getName(),
 					"getLatestReview", ihe);
 		}
-		Review reviewObj = parseXML(request, responseDocument);
+		Review reviewObj = toReview(request, reviewResponse);
 		return reviewObj;
 	}
 
 	/**
-	 * Parses the Reviews xml. Returns Review object with values from api
+	 * Returns Review object with values from the latest review rated at
+	 * least MINIMUM_RATING
 	 * 
-	 * @param doc
-	 * @return Review
+	 * @param reviewResponse
+	 *            the latest review, or null if there is none
+	 * @return Review, or null if there is no review
 	 * @throws CitysearchException
 	 */
-	private Review parseXML(ReviewRequest request, Document doc)
+	Review toReview(ReviewRequest request, ReviewResponse reviewResponse)
 			throws CitysearchException {
 		Review review = null;
-		if (doc != null && doc.hasRootElement()) {
-			Element rootElement = doc.getRootElement();
-			List<Element> reviewsList = rootElement.getChildren(REVIEW_ELEMENT);
-			SimpleDateFormat formatter = new SimpleDateFormat(PropertiesLoader
-					.getAPIProperties().getProperty(DATE_FORMAT));
-			SortedMap<Date, Element> reviewMap = new TreeMap<Date, Element>();
-			for (int i = 0; i < reviewsList.size(); i++) {
-				Element reviewElem = reviewsList.get(i);
-				String rating = reviewElem.getChildText(REVIEW_RATING);
-				if (NumberUtils.toInt(rating) >= MINIMUM_RATING) {
-					String dateStr = reviewElem.getChildText(REVIEW_DATE);
-					Date date = HelperUtil.parseDate(dateStr, formatter);
-					if (date != null) {
-						reviewMap.put(date, reviewElem);
-					}
-				}
-			}
-			Element reviewElm = reviewMap.get(reviewMap.lastKey());
-			review = getReviewInstance(request, reviewElm, this.rootPath,
+		if (reviewResponse != null) {
+			review = getReviewInstance(request, reviewResponse, this.rootPath,
 					request.getAdUnitIdentifier());
 		}
 		return review;
 	}
 
 	/**
-	 * Parses the review element and set the required values in the Review bean
+	 * Sets the values of the parsed review in the Review bean
 	 * 
-	 * @param review
-	 * @param reviewsElem
+	 * @param request
+	 * @param reviewResponse
+	 * @param path
+	 * @param adUnitIdentifier
 	 * @return Review
 	 * @throws CitysearchException
 	 */
 	public static Review getReviewInstance(ReviewRequest request,
-			Element reviewElem, String path, String adUnitIdentifier)
+			ReviewResponse reviewResponse, String path, String adUnitIdentifier)
 			throws CitysearchException {
 		Review review = new Review();
+		FieldLengths fieldLengths = WebWidgetConfig.get().getFieldLengths(
+				adUnitIdentifier);
 
-		String businessName = reviewElem.getChildText(BUSINESS_NAME);
+		String businessName = reviewResponse.getBusinessName();
 		review.setBusinessName(businessName);
-		StringBuilder nameLengthProp = new StringBuilder(adUnitIdentifier);
-		nameLengthProp.append(".");
-		nameLengthProp.append(CommonConstants.NAME_LENGTH);
-		businessName = HelperUtil.getAbbreviatedString(businessName,
-				nameLengthProp.toString());
+		businessName = fieldLengths.abbreviate(businessName, FieldLengths.NAME);
 		review.setShortBusinessName(businessName);
 
-		String reviewTitle = reviewElem.getChildText(REVIEW_TITLE);
+		String reviewTitle = reviewResponse.getReviewTitle();
 		review.setReviewTitle(reviewTitle);
-		StringBuilder titleLengthProp = new StringBuilder(adUnitIdentifier);
-		titleLengthProp.append(".");
-		titleLengthProp.append(CommonConstants.REVIEW_TITLE_LENGTH);
-		reviewTitle = HelperUtil.getAbbreviatedString(reviewTitle,
-				titleLengthProp.toString());
+		reviewTitle = fieldLengths.abbreviate(reviewTitle,
+				FieldLengths.REVIEW_TITLE);
 		review.setShortTitle(reviewTitle);
 
-		String reviewText = reviewElem.getChildText(REVIEW_TEXT);
+		String reviewText = reviewResponse.getReviewText();
 		review.setReviewText(reviewText);
-		StringBuilder textLengthProp = new StringBuilder(adUnitIdentifier);
-		textLengthProp.append(".");
-		textLengthProp.append(CommonConstants.REVIEW_TEXT_LENGTH);
-		reviewText = HelperUtil.getAbbreviatedString(reviewText, textLengthProp
-				.toString());
+		reviewText = fieldLengths.abbreviate(reviewText,
+				FieldLengths.REVIEW_TEXT);
 		review.setShortReviewText(reviewText);
 
-		textLengthProp = new StringBuilder(adUnitIdentifier);
-		textLengthProp.append(".");
-		textLengthProp.append(CommonConstants.REVIEW_TEXT_SMALL_LENGTH);
-		reviewText = HelperUtil.getAbbreviatedString(reviewText, textLengthProp
-				.toString());
+		reviewText = fieldLengths.abbreviate(reviewText,
+				FieldLengths.REVIEW_TEXT_SMALL);
 		review.setSmallReviewText(reviewText);
 
-		String pros = reviewElem.getChildText(PROS);
+		String pros = reviewResponse.getPros();
 		review.setPros(pros);
-		StringBuilder prosLengthProp = new StringBuilder(adUnitIdentifier);
-		prosLengthProp.append(".");
-		prosLengthProp.append(CommonConstants.REVIEW_PROS_LENGTH);
-		pros = HelperUtil.getAbbreviatedString(pros, prosLengthProp.toString());
+		pros = fieldLengths.abbreviate(pros, FieldLengths.REVIEW_PROS);
 		review.setShortPros(pros);
 
-		String cons = reviewElem.getChildText(CONS);
+		String cons = reviewResponse.getCons();
 		review.setCons(cons);
-		StringBuilder consLengthProp = new StringBuilder(adUnitIdentifier);
-		consLengthProp.append(".");
-		consLengthProp.append(CommonConstants.REVIEW_CONS_LENGTH);
-		cons = HelperUtil.getAbbreviatedString(cons, consLengthProp.toString());
+		cons = fieldLengths.abbreviate(cons, FieldLengths.REVIEW_CONS);
 		review.setShortCons(cons);
 		
-		review.setListingId(reviewElem.getChildText(LISTING_ID));
-		review.setReviewAuthor(reviewElem.getChildText(REVIEW_AUTHOR));
-		String ratingVal = reviewElem.getChildText(REVIEW_RATING);
+		review.setListingId(reviewResponse.getListingId());
+		review.setReviewAuthor(reviewResponse.getAuthor());
+		String ratingVal = reviewResponse.getRating();
 		double rating = NumberUtils.toDouble(ratingVal) / 2;
 		review.setRating(HelperUtil.getRatingsList(ratingVal));
 		review.setReviewRating(String.valueOf(rating));
-		review.setReviewId(reviewElem.getChildText(REVIEW_ID));
-		review.setReviewUrl(reviewElem.getChildText(ELEMENT_REVIEW_URL));
+		review.setReviewId(reviewResponse.getReviewId());
+		review.setReviewUrl(reviewResponse.getReviewUrl());
 
-		String rDateStr = reviewElem.getChildText(REVIEW_DATE);
-		SimpleDateFormat formatter = new SimpleDateFormat(PropertiesLoader
-				.getAPIProperties().getProperty(DATE_FORMAT));
-		Date date = HelperUtil.parseDate(rDateStr, formatter);
+		String rDateStr = reviewResponse.getReviewDate();
+		Date date = DateCodec.parseReviewDate(rDateStr);
 		long now = Calendar.getInstance().getTimeInMillis();
 		review.setTimeSinceReviewString(DurationFormatUtils
 				.formatDurationWords(now - date.getTime(), true, true));
 
-		DateFormat df = new SimpleDateFormat("MM/dd/yyyy");
-		review.setReviewDate(df.format(date));
+		review.setReviewDate(DateCodec.formatDisplayDate(date));
 
 		// request will be null if called by profile
 		if (request != null) {
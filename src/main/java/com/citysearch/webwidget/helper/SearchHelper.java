@@ -3,16 +3,13 @@ package com.citysearch.webwidget.helper;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Properties;
-import java.util.SortedMap;
-import java.util.TreeMap;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.math.NumberUtils;
 import org.apache.log4j.Logger;
-import org.jdom.Document;
-import org.jdom.Element;
-
+import com.citysearch.webwidget.api.bean.SearchLocation;
+import com.citysearch.webwidget.api.bean.SearchResponse;
+import com.citysearch.webwidget.api.parser.SearchResponseHandler;
 import com.citysearch.webwidget.bean.NearbyPlace;
 import com.citysearch.webwidget.bean.SearchRequest;
 import com.citysearch.webwidget.exception.CitysearchException;
@@ -20,8 +17,11 @@ import com.citysearch.webwidget.exception.InvalidHttpResponseException;
 import com.citysearch.webwidget.exception.InvalidRequestParametersException;
 import com.citysearch.webwidget.util.APIFieldNameConstants;
 import com.citysearch.webwidget.util.CommonConstants;
+import com.citysearch.webwidget.util.FieldLengths;
+import com.citysearch.webwidget.util.GeocodeCache;
 import com.citysearch.webwidget.util.HelperUtil;
-import com.citysearch.webwidget.util.PropertiesLoader;
+import com.citysearch.webwidget.util.TopK;
+import com.citysearch.webwidget.util.WebWidgetConfig;
 
 /**
  * This class performs all the functionalities related to Search API like
@@ -45,16 +45,6 @@ public class SearchHelper {
 	private static final String DEFAULT_RADIUS = "25";
 	private static final String DEFAULT_RPP = "20";
 
-	private static final String ADDRESS_TAG = "address";
-	private static final String LISTING_ID_TAG = "id";
-	private static final String REVIEWS_TAG = "userreviewcount";
-	private static final String TAGLINE_TAG = "samplecategories";
-	private static final String PHONE_TAG = "phonenumber";
-	private static final String AD_DISPLAY_URL_TAG = "profile";
-	private static final String AD_IMAGE_URL_TAG = "image";
-	private static final String REVIEW_RATING_TAG = "rating";
-	private static final String LOCATION_TAG = "location";
-
 	private String rootPath;
 	private Integer displaySize;
 
@@ -89,23 +79,19 @@ public class SearchHelper {
 	private void validateClosestLocationPostalCodeRequest(SearchRequest request)
 			throws InvalidRequestParametersException, CitysearchException {
 		List<String> errors = new ArrayList<String>();
-		Properties errorProperties = PropertiesLoader.getErrorProperties();
+		WebWidgetConfig config = WebWidgetConfig.get();
 
 		if (StringUtils.isBlank(request.getPublisher())) {
-			errors.add(errorProperties
-					.getProperty(CommonConstants.PUBLISHER_ERROR_CODE));
+			errors.add(config.getErrorMessage(CommonConstants.PUBLISHER_ERROR_CODE));
 		}
 		if (StringUtils.isBlank(request.getLatitude())) {
-			errors.add(errorProperties
-					.getProperty(CommonConstants.LATITUDE_ERROR));
+			errors.add(config.getErrorMessage(CommonConstants.LATITUDE_ERROR));
 		}
 		if (StringUtils.isBlank(request.getLongitude())) {
-			errors.add(errorProperties
-					.getProperty(CommonConstants.LONGITUDE_ERROR));
+			errors.add(config.getErrorMessage(CommonConstants.LONGITUDE_ERROR));
 		}
 		if (StringUtils.isBlank(request.getRadius())) {
-			errors.add(errorProperties
-					.getProperty(CommonConstants.RADIUS_ERROR));
+			errors.add(config.getErrorMessage(CommonConstants.RADIUS_ERROR));
 		}
 		if (!errors.isEmpty()) {
 			throw new InvalidRequestParametersException(this.getClass()
@@ -127,23 +113,29 @@ public class SearchHelper {
 		log.info("SearchHelper.getClosestLocationPostalCode: Begin");
 		validateClosestLocationPostalCodeRequest(request);
 		log.info("SearchHelper.getClosestLocationPostalCode: After validate");
-		Properties properties = PropertiesLoader.getAPIProperties();
-		StringBuilder urlStringBuilder = new StringBuilder(properties
-				.getProperty(PROPERTY_SEARCH_URL));
+		String cachedPostalCode = GeocodeCache.getPostalCode(request
+				.getLatitude(), request.getLongitude());
+		if (cachedPostalCode != null) {
+			log.info("SearchHelper.getClosestLocationPostalCode: Cached postal code "
+					+ cachedPostalCode);
+			return cachedPostalCode;
+		}
+		WebWidgetConfig config = WebWidgetConfig.get();
+		StringBuilder urlStringBuilder = new StringBuilder(config.getSearchUrl());
 		urlStringBuilder.append(getQueryString(request));
 		log.info("SearchHelper.getClosestLocationPostalCode: Query "
 				+ urlStringBuilder.toString());
-		Document responseDocument = null;
+		SearchResponse response = null;
 		try {
-			responseDocument = HelperUtil.getAPIResponse(urlStringBuilder
-					.toString(), null);
+			response = HelperUtil.getAPIResponse(urlStringBuilder.toString(),
+					null, new SearchResponseHandler());
 			log
 					.info("SearchHelper.getClosestLocationPostalCode: Successfull response");
 		} catch (InvalidHttpResponseException ihe) {
 			throw new CitysearchException(this.getClass().getName(),
 					"getClosestLocationPostalCode", ihe);
 		}
-		String nearestListingPostalCode = findClosestLocationPostalCode(responseDocument);
+		String nearestListingPostalCode = findClosestLocationPostalCode(response);
 		log.info("SearchHelper.getClosestLocationPostalCode: Postal Code "
 				+ nearestListingPostalCode);
 		if (nearestListingPostalCode == null) {
@@ -152,6 +144,8 @@ public class SearchHelper {
 			throw new CitysearchException(this.getClass().getName(),
 					"getClosestLocationPostalCode", "No locations found.");
 		}
+		GeocodeCache.putPostalCode(request.getLatitude(), request
+				.getLongitude(), nearestListingPostalCode);
 		log.info("SearchHelper.getClosestLocationPostalCode: End");
 		return nearestListingPostalCode;
 	}
@@ -159,28 +153,19 @@ public class SearchHelper {
 	/**
 	 * Returns the nearest Postal Code from the Search API Response
 	 * 
-	 * @param doc
+	 * @param response
 	 * @return String
-	 * @throws CitysearchException
 	 */
-	private String findClosestLocationPostalCode(Document doc)
-			throws CitysearchException {
+	private String findClosestLocationPostalCode(SearchResponse response) {
 		String closestPostalCode = null;
-		if (doc != null && doc.hasRootElement()) {
-			Element rootElement = doc.getRootElement();
-			List<Element> locationList = rootElement.getChildren("location");
-			Double closest = 100000.000D;
-			for (int i = 0; i < locationList.size(); i++) {
-				Element locationElm = locationList.get(i);
-				Element addressElm = locationElm.getChild("address");
-				String distanceStr = locationElm.getChildText("distance");
-				Double distance = NumberUtils.toDouble(distanceStr);
-				String postalCode = addressElm.getChildText("postalcode");
-				if ((closestPostalCode == null || distance < closest)
-						&& postalCode != null) {
-					closestPostalCode = postalCode;
-					closest = distance;
-				}
+		Double closest = 100000.000D;
+		for (SearchLocation location : response.getLocations()) {
+			Double distance = NumberUtils.toDouble(location.getDistance());
+			String postalCode = location.getPostalCode();
+			if ((closestPostalCode == null || distance < closest)
+					&& postalCode != null) {
+				closestPostalCode = postalCode;
+				closest = distance;
 			}
 		}
 		return closestPostalCode;
@@ -195,19 +180,16 @@ public class SearchHelper {
 	private void validateRequest(SearchRequest request)
 			throws InvalidRequestParametersException, CitysearchException {
 		List<String> errors = new ArrayList<String>();
-		Properties errorProperties = PropertiesLoader.getErrorProperties();
+		WebWidgetConfig config = WebWidgetConfig.get();
 		if (StringUtils.isBlank(request.getWhat())
 				&& StringUtils.isBlank(request.getTags())) {
-			errors.add(errorProperties
-					.getProperty(CommonConstants.WHAT_ERROR_CODE));
+			errors.add(config.getErrorMessage(CommonConstants.WHAT_ERROR_CODE));
 		}
 		if (StringUtils.isBlank(request.getWhere())) {
-			errors.add(errorProperties
-					.getProperty(CommonConstants.WHERE_ERROR_CODE));
+			errors.add(config.getErrorMessage(CommonConstants.WHERE_ERROR_CODE));
 		}
 		if (StringUtils.isBlank(request.getPublisher())) {
-			errors.add(errorProperties
-					.getProperty(CommonConstants.PUBLISHER_ERROR_CODE));
+			errors.add(config.getErrorMessage(CommonConstants.PUBLISHER_ERROR_CODE));
 		}
 
 		if (!errors.isEmpty()) {
@@ -228,9 +210,8 @@ public class SearchHelper {
 			throws InvalidRequestParametersException, CitysearchException {
 		StringBuilder apiQueryString = new StringBuilder();
 
-		Properties properties = PropertiesLoader.getAPIProperties();
-		String apiKey = properties
-				.getProperty(CommonConstants.API_KEY_PROPERTY);
+		WebWidgetConfig config = WebWidgetConfig.get();
+		String apiKey = config.getApiKey();
 		apiQueryString.append(HelperUtil.constructQueryParam(
 				APIFieldNameConstants.API_KEY, apiKey));
 		apiQueryString.append(CommonConstants.SYMBOL_AMPERSAND);
@@ -273,20 +254,28 @@ public class SearchHelper {
 		log.info("SearchHelper.getLatitudeLongitude: Begin");
 		validateRequest(request);
 		log.info("SearchHelper.getLatitudeLongitude: After validate");
-		Properties properties = PropertiesLoader.getAPIProperties();
-		String urlString = properties.getProperty(PROPERTY_SEARCH_URL)
+		String[] cachedLatLon = GeocodeCache.getLatitudeLongitude(request
+				.getWhere());
+		if (cachedLatLon != null) {
+			log.info("SearchHelper.getLatitudeLongitude: Cached Lat & Lon");
+			return cachedLatLon;
+		}
+		WebWidgetConfig config = WebWidgetConfig.get();
+		String urlString = config.getSearchUrl()
 				+ getSearchRequestQueryString(request);
 		log.info("SearchHelper.getLatitudeLongitude: Query " + urlString);
-		Document responseDocument = null;
+		// Only the region is needed
+		SearchResponseHandler handler = new SearchResponseHandler(0);
 		try {
-			responseDocument = HelperUtil.getAPIResponse(urlString, null);
+			HelperUtil.getAPIResponse(urlString, null, handler);
 			log
 					.info("SearchHelper.getLatitudeLongitude: Successfull response.");
 		} catch (InvalidHttpResponseException ihe) {
 			throw new CitysearchException(this.getClass().getName(),
 					"getLatitudeLongitude", ihe);
 		}
-		String[] latLonValues = getLatitudeAndLongitude(responseDocument);
+		String[] latLonValues = getLatitudeAndLongitude(handler);
+		GeocodeCache.putLatitudeLongitude(request.getWhere(), latLonValues);
 		log
 				.info("SearchHelper.getLatitudeLongitude: Lat & Lon "
 						+ latLonValues);
@@ -297,16 +286,16 @@ public class SearchHelper {
 	public List<NearbyPlace> getNearbyPlaces(SearchRequest request)
 			throws CitysearchException {
 		log.info("SearchHelper.getNearbyPlaces: Begin");
-		Properties properties = PropertiesLoader.getAPIProperties();
-		StringBuilder urlStringBuilder = new StringBuilder(properties
-				.getProperty(PROPERTY_SEARCH_URL));
+		WebWidgetConfig config = WebWidgetConfig.get();
+		StringBuilder urlStringBuilder = new StringBuilder(config.getSearchUrl());
 		urlStringBuilder.append(getQueryString(request));
 		log.info("SearchHelper.getNearbyPlaces: Query "
 				+ urlStringBuilder.toString());
-		Document responseDocument = null;
+		SearchResponseHandler handler = new SearchResponseHandler();
+		SearchResponse response = null;
 		try {
-			responseDocument = HelperUtil.getAPIResponse(urlStringBuilder
-					.toString(), null);
+			response = HelperUtil.getAPIResponse(urlStringBuilder.toString(),
+					null, handler);
 			log.info("SearchHelper.getNearbyPlaces: Successfull response");
 		} catch (InvalidHttpResponseException ihe) {
 			throw new CitysearchException(this.getClass().getName(),
@@ -319,7 +308,7 @@ public class SearchHelper {
 		if (StringUtils.isBlank(request.getLatitude())
 				|| StringUtils.isBlank(request.getLongitude())) {
 			// Search API has to return these values. If not, its a API bug.
-			String[] latlon = getLatitudeAndLongitude(responseDocument);
+			String[] latlon = getLatitudeAndLongitude(handler);
 			sourceLatitude = new BigDecimal(latlon[0]);
 			sourceLongitude = new BigDecimal(latlon[1]);
 		} else {
@@ -328,83 +317,51 @@ public class SearchHelper {
 		}
 		log.info("SearchHelper.getNearbyPlaces: End");
 		return getNearbyPlaces(request, sourceLatitude, sourceLongitude,
-				responseDocument);
+				response.getLocations());
 	}
 
-	private String[] getLatitudeAndLongitude(Document document) {
+	private String[] getLatitudeAndLongitude(SearchResponseHandler handler) {
 		String[] latLonValues = new String[2];
-		if (document != null && document.hasRootElement()) {
-			Element rootElement = document.getRootElement();
-			Element region = rootElement.getChild("region");
-			if (region != null) {
-				String sLat = region.getChildText(CommonConstants.LATITUDE);
-				String sLon = region.getChildText(CommonConstants.LONGITUDE);
-				if (sLat != null && sLon != null) {
-					latLonValues[0] = sLat;
-					latLonValues[1] = sLon;
-				}
-			}
+		String sLat = handler.getRegionLatitude();
+		String sLon = handler.getRegionLongitude();
+		if (sLat != null && sLon != null) {
+			latLonValues[0] = sLat;
+			latLonValues[1] = sLon;
 		}
 		return latLonValues;
 	}
 
-	private List<NearbyPlace> getNearbyPlaces(SearchRequest request,
-			BigDecimal sourceLatitude, BigDecimal sourceLongitude, Document doc)
-			throws CitysearchException {
+	List<NearbyPlace> getNearbyPlaces(SearchRequest request,
+			BigDecimal sourceLatitude, BigDecimal sourceLongitude,
+			List<SearchLocation> locations) throws CitysearchException {
 		log.info("SearchHelper.getNearbyPlaces: Begin");
 		List<NearbyPlace> nearbyPlaces = null;
-		if (doc != null && doc.hasRootElement()) {
-			SortedMap<Double, List<Element>> elmsSortedByDistance = new TreeMap<Double, List<Element>>();
-			Element rootElement = doc.getRootElement();
-			List<Element> children = rootElement.getChildren(LOCATION_TAG);
-			if (children != null && !children.isEmpty()) {
-				int childrenSize = children.size();
-				for (Element elm : children) {
-					BigDecimal businessLatitude = new BigDecimal(elm
-							.getChildText(CommonConstants.LATITUDE));
-					BigDecimal businessLongitude = new BigDecimal(elm
-							.getChildText(CommonConstants.LONGITUDE));
-					double distance = HelperUtil.getDistance(sourceLatitude,
-							sourceLongitude, businessLatitude,
-							businessLongitude);
-					if (childrenSize <= displaySize
-							|| distance < CommonConstants.EXTENDED_RADIUS) {
-						// Since we are rounding the distance to the 10th,
-						// There might be
-						// multiple listings with the same distance.
-						if (elmsSortedByDistance.containsKey(distance)) {
-							elmsSortedByDistance.get(distance).add(elm);
-						} else {
-							List<Element> elms = new ArrayList<Element>();
-							elms.add(elm);
-							elmsSortedByDistance.put(distance, elms);
-						}
-					}
+		if (locations != null && !locations.isEmpty()) {
+			TopK<SearchLocation> locationsByDistance = new TopK<SearchLocation>(
+					displaySize);
+			int locationsSize = locations.size();
+			for (SearchLocation location : locations) {
+				BigDecimal businessLatitude = new BigDecimal(location
+						.getLatitude());
+				BigDecimal businessLongitude = new BigDecimal(location
+						.getLongitude());
+				double distance = HelperUtil.getDistance(sourceLatitude,
+						sourceLongitude, businessLatitude, businessLongitude);
+				if (locationsSize <= displaySize
+						|| distance < CommonConstants.EXTENDED_RADIUS) {
+					locationsByDistance.offer(distance, location);
 				}
-				if (!elmsSortedByDistance.isEmpty()) {
-					List<Element> elmsToConvert = new ArrayList<Element>();
-					for (int j = 0; j < elmsSortedByDistance.size(); j++) {
-						if (elmsToConvert.size() >= displaySize) {
-							break;
-						}
-						Double key = elmsSortedByDistance.firstKey();
-						List<Element> elms = elmsSortedByDistance.remove(key);
-						for (int idx = 0; idx < elms.size(); idx++) {
-							if (elmsToConvert.size() == displaySize) {
-								break;
-							}
-							elmsToConvert.add(elms.get(idx));
-						}
-					}
-
-					nearbyPlaces = new ArrayList<NearbyPlace>();
-					for (Element elm : elmsToConvert) {
-						nearbyPlaces.add(toNearbyPlace(request, sourceLatitude,
-								sourceLongitude, elm));
-					}
-					NearbyPlacesHelper.addDefaultImages(nearbyPlaces,
-							this.rootPath);
+			}
+			if (!locationsByDistance.isEmpty()) {
+				nearbyPlaces = new ArrayList<NearbyPlace>();
+				FieldLengths fieldLengths = WebWidgetConfig.get()
+						.getFieldLengths(request.getAdUnitIdentifier());
+				for (SearchLocation location : locationsByDistance.toList()) {
+					nearbyPlaces.add(toNearbyPlace(request, sourceLatitude,
+							sourceLongitude, location, fieldLengths));
 				}
+				NearbyPlacesHelper.addDefaultImages(nearbyPlaces,
+						this.rootPath);
 			}
 		}
 		log.info("NearbyPlacesHelper.getNearbyPlaces: End");
@@ -412,69 +369,50 @@ public class SearchHelper {
 	}
 
 	private NearbyPlace toNearbyPlace(SearchRequest request,
-			BigDecimal sourceLat, BigDecimal sourceLon, Element location)
-			throws CitysearchException {
+			BigDecimal sourceLat, BigDecimal sourceLon, SearchLocation location,
+			FieldLengths fieldLengths) throws CitysearchException {
 		NearbyPlace nearbyPlace = new NearbyPlace();
 
-		Element address = location.getChild(ADDRESS_TAG);
-
-		String addr = null;
-		if (address != null) {
-			addr = HelperUtil.getLocationString(address
-					.getChildText(CommonConstants.CITY), address
-					.getChildText(CommonConstants.STATE));
-			nearbyPlace.setStreet(address.getChildText(CommonConstants.STREET));
-			nearbyPlace.setCity(address.getChildText(CommonConstants.CITY));
-			nearbyPlace.setState(address.getChildText(CommonConstants.STATE));
-			nearbyPlace.setPostalCode(address
-					.getChildText(CommonConstants.POSTALCODE));
-			nearbyPlace.setLocation(addr);
-		}
-		
-		String adUnitIdentifier = request.getAdUnitIdentifier();
-
-		StringBuilder nameLengthProp = new StringBuilder(adUnitIdentifier);
-		nameLengthProp.append(".");
-		nameLengthProp.append(CommonConstants.NAME_LENGTH);
+		String addr = HelperUtil.getLocationString(location.getCity(),
+				location.getState());
+		nearbyPlace.setStreet(location.getStreet());
+		nearbyPlace.setCity(location.getCity());
+		nearbyPlace.setState(location.getState());
+		nearbyPlace.setPostalCode(location.getPostalCode());
+		nearbyPlace.setLocation(addr);
 
-		String name = location.getChildText(CommonConstants.NAME);
-		name = HelperUtil.getAbbreviatedString(name, nameLengthProp.toString());
+		String name = location.getName();
+		name = fieldLengths.abbreviate(name, FieldLengths.NAME);
 		nearbyPlace.setName(name);
 
-		String rating = location.getChildText(REVIEW_RATING_TAG);
+		String rating = location.getRating();
 		List<Integer> ratingList = HelperUtil.getRatingsList(rating);
 		double ratings = HelperUtil.getRatingValue(rating);
 		nearbyPlace.setRating(ratingList);
 		nearbyPlace.setRatings(ratings);
 
-		String reviewCount = location.getChildText(REVIEWS_TAG);
+		String reviewCount = location.getReviewCount();
 		int userReviewCount = HelperUtil.toInteger(reviewCount);
 		nearbyPlace.setReviewCount(userReviewCount);
 
 		// Do not use the distance element here. Because the distance element is
 		// returned only if latlon is passed.
-		String dLat = location.getChildText(CommonConstants.LATITUDE);
-		String dLon = location.getChildText(CommonConstants.LONGITUDE);
-		BigDecimal destLat = new BigDecimal(dLat);
-		BigDecimal destLon = new BigDecimal(dLon);
+		BigDecimal destLat = new BigDecimal(location.getLatitude());
+		BigDecimal destLon = new BigDecimal(location.getLongitude());
 		double distance = HelperUtil.getDistance(sourceLat, sourceLon, destLat,
 				destLon);
 		nearbyPlace.setDistance(distance);
 
-		nearbyPlace.setListingId(location.getAttributeValue(LISTING_ID_TAG));
+		nearbyPlace.setListingId(location.getListingId());
 		
-		StringBuilder tagLengthProp = new StringBuilder(adUnitIdentifier);
-		tagLengthProp.append(".");
-		tagLengthProp.append(CommonConstants.TAGLINE_LENGTH);
-		String category = location.getChildText(TAGLINE_TAG);
-		category = HelperUtil.getAbbreviatedString(category, tagLengthProp
-				.toString());
+		String category = location.getCategory();
+		category = fieldLengths.abbreviate(category, FieldLengths.TAGLINE);
 		nearbyPlace.setCategory(category);
 
-		nearbyPlace.setAdDisplayURL(location.getChildText(AD_DISPLAY_URL_TAG));
-		nearbyPlace.setAdImageURL(location.getChildText(AD_IMAGE_URL_TAG));
-		nearbyPlace.setPhone(location.getChildText(PHONE_TAG));
-		nearbyPlace.setOffers(location.getChildText(CommonConstants.OFFERS));
+		nearbyPlace.setAdDisplayURL(location.getAdDisplayUrl());
+		nearbyPlace.setAdImageURL(location.getImageUrl());
+		nearbyPlace.setPhone(location.getPhone());
+		nearbyPlace.setOffers(location.getOffers());
 
 		nearbyPlace.setCallBackFunction(request.getCallBackFunction());
 		nearbyPlace.setCallBackUrl(request.getCallBackUrl());
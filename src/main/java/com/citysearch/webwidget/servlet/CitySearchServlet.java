@@ -1,29 +1,28 @@
 package com.citysearch.webwidget.servlet;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.StringWriter;
-import java.net.HttpURLConnection;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Map;
 
+import javax.servlet.RequestDispatcher;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.apache.commons.io.IOUtils;
-import org.apache.commons.lang.StringEscapeUtils;
 import org.apache.log4j.Logger;
 
-import com.citysearch.webwidget.exception.CitysearchException;
 import com.citysearch.webwidget.util.CommonConstants;
-import com.citysearch.webwidget.util.HttpConnection;
 
 public class CitySearchServlet extends HttpServlet {
 	private final Logger LOGGER = Logger.getLogger(getClass());
+	private static final String DISPLAY_SIZE_PARAM = "displaySize";
+	private static final String JSONP_PREFIX = "citygrid.common.loadWidget(\"";
+	private static final String JSONP_SUFFIX = "\");";
 
 	public void doGet(HttpServletRequest request, HttpServletResponse response)
 			throws ServletException, IOException {
-		String queryString = request.getQueryString();
 		String adUnitName = request.getParameter("adUnitName");
 		String adUnitSize = request.getParameter("adUnitSize");
 		String publisher = request.getParameter("publisher");
@@ -33,13 +32,9 @@ public class CitySearchServlet extends HttpServlet {
 				: CommonConstants.MANTLE_DISPLAY_SIZE;
 
 		if (adUnitName != null) {
+			// Actions are dispatched in-process instead of calling back into
+			// the container over HTTP
 			StringBuilder strBuilder = new StringBuilder();
-			strBuilder.append(request.getScheme());
-			strBuilder.append("://");
-			strBuilder.append(request.getServerName());
-			strBuilder.append(":");
-			strBuilder.append(request.getServerPort());
-			strBuilder.append(request.getContextPath());
 			strBuilder.append("/actions");
 			if (adUnitName
 					.equalsIgnoreCase(CommonConstants.AD_UNIT_NAME_NEARBY)) {
@@ -64,39 +59,34 @@ public class CitySearchServlet extends HttpServlet {
 					strBuilder.append("/offers");
 				}
 			}
-			strBuilder.append("?");
-			strBuilder.append(queryString);
-			strBuilder.append("&displaySize=" + displaySize);
 
 			response.setContentType("text/plain");// Because we don't to render
 
-			HttpURLConnection connection = null;
-			InputStream iStream = null;
+			Map<String, String> parameters = new HashMap<String, String>();
+			parameters.put(DISPLAY_SIZE_PARAM, String.valueOf(displaySize));
+			ParameterRequestWrapper actionRequest = new ParameterRequestWrapper(
+					request, parameters);
+			// The widget body is escaped and streamed into the JSONP callback
+			// while the action renders it
+			PrintWriter out = response.getWriter();
+			JsonpResponseWrapper actionResponse = new JsonpResponseWrapper(
+					response, out);
+			RequestDispatcher dispatcher = request
+					.getRequestDispatcher(strBuilder.toString());
 			try {
-				connection = HttpConnection.getConnection(
-						strBuilder.toString(), null);
-				iStream = connection.getInputStream();
-				StringWriter writer = new StringWriter();
-				IOUtils.copy(iStream, writer);
-				String htmlString = writer.toString();
-				htmlString = StringEscapeUtils.escapeHtml(htmlString);
-				htmlString = htmlString.replaceAll("\\n", "");
-				htmlString = htmlString.replaceAll("\\r", "");
-				htmlString = "citygrid.common.loadWidget(\"" + htmlString
-						+ "\");";
-
-				response.getWriter().write(htmlString);
+				out.write(JSONP_PREFIX);
+				dispatcher.include(actionRequest, actionResponse);
+				actionResponse.finish();
+				out.write(JSONP_SUFFIX);
 			} catch (IOException ioe) {
 				LOGGER.error(ioe.getMessage());
 				throw ioe;
-			} catch (CitysearchException cse) {
-				LOGGER.error(cse.getMessage());
-			} finally {
-				if (connection != null) {
-					HttpConnection.closeConnection(connection);
-				}
-				if (iStream != null) {
-					iStream.close();
+			} catch (ServletException se) {
+				LOGGER.error(se.getMessage());
+				if (response.isCommitted()) {
+					out.write(JSONP_SUFFIX);
+				} else {
+					response.resetBuffer();
 				}
 			}
 		}
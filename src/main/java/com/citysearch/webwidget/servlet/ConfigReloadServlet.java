@@ -0,0 +1,57 @@
+package com.citysearch.webwidget.servlet;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.log4j.Logger;
+
+import com.citysearch.webwidget.exception.CitysearchException;
+import com.citysearch.webwidget.util.OneByOneTrackingUtil;
+import com.citysearch.webwidget.util.WebWidgetConfig;
+
+/**
+ * Reloads the property files and the 1x1 tracking table without a restart. Only answers requests
+ * made from the server itself, e.g. curl http://localhost:8080/web-widgets/admin/reloadconfig
+ */
+public class ConfigReloadServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+
+    private final Logger LOGGER = Logger.getLogger(getClass());
+
+    private static String RELOAD_RESPONSE_HEADER = "X-ConfigReload";
+
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        if (!isLocal(request.getRemoteAddr())) {
+            LOGGER.warn("Configuration reload refused for " + request.getRemoteAddr());
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+        try {
+            WebWidgetConfig.reload();
+            OneByOneTrackingUtil.reload();
+            LOGGER.info("Configuration reloaded");
+            response.setHeader(RELOAD_RESPONSE_HEADER, "configuration reloaded");
+            response.setStatus(HttpServletResponse.SC_OK);
+        } catch (CitysearchException cse) {
+            // The configuration in use is kept
+            LOGGER.error("Configuration reload failed", cse);
+            response.setHeader(RELOAD_RESPONSE_HEADER, "configuration reload failed");
+            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        doGet(request, response);
+    }
+
+    private boolean isLocal(String remoteAddr) {
+        return "127.0.0.1".equals(remoteAddr) || "0:0:0:0:0:0:0:1".equals(remoteAddr)
+                || "::1".equals(remoteAddr);
+    }
+}
@@ -9,6 +9,13 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.apache.log4j.Logger;
 
+import com.citysearch.webwidget.api.proxy.PFPProxy;
+import com.citysearch.webwidget.api.proxy.ProfileProxy;
+import com.citysearch.webwidget.exception.CitysearchException;
+import com.citysearch.webwidget.util.CircuitBreaker;
+import com.citysearch.webwidget.util.GeocodeCache;
+import com.citysearch.webwidget.util.HelperUtil;
+
 /**
  * Servlet implementation class HealthCheckServlet
  */
@@ -18,6 +25,12 @@ public class HealthCheckServlet extends HttpServlet {
     private final Logger LOGGER = Logger.getLogger(getClass());
 
     private static String HEALTH_CHECK_RESPONSE_HEADER = "X-HealthCheck";
+    private static String PROFILE_CACHE_RESPONSE_HEADER = "X-ProfileCache";
+    private static String GEOCODE_CACHE_RESPONSE_HEADER = "X-GeocodeCache";
+    private static String PFP_CACHE_RESPONSE_HEADER = "X-PFPCache";
+    private static String SHARED_CALLS_RESPONSE_HEADER = "X-SharedUpstreamCalls";
+    private static String HEDGED_CALLS_RESPONSE_HEADER = "X-HedgedUpstreamCalls";
+    private static String CIRCUITS_RESPONSE_HEADER = "X-UpstreamCircuits";
 
     private String singleServerHealthFile;
     private String fileParam = "file";
@@ -40,6 +53,17 @@ public class HealthCheckServlet extends HttpServlet {
             response.setHeader(HEALTH_CHECK_RESPONSE_HEADER, "healthcheck passed");
             response.setStatus(HttpServletResponse.SC_OK);
         }
+        try {
+            response.setHeader(PROFILE_CACHE_RESPONSE_HEADER, ProfileProxy.getProfileCache()
+                    .getStatistics());
+            response.setHeader(GEOCODE_CACHE_RESPONSE_HEADER, GeocodeCache.getStatistics());
+            response.setHeader(PFP_CACHE_RESPONSE_HEADER, PFPProxy.getPFPCache().getStatistics());
+            response.setHeader(SHARED_CALLS_RESPONSE_HEADER, HelperUtil.getSharedCallStatistics());
+            response.setHeader(HEDGED_CALLS_RESPONSE_HEADER, HelperUtil.getHedgedCallStatistics());
+            response.setHeader(CIRCUITS_RESPONSE_HEADER, CircuitBreaker.getAllStatistics());
+        } catch (CitysearchException cse) {
+            LOGGER.error(cse.getMessage());
+        }
 
     }
 
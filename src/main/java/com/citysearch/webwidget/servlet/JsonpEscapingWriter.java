@@ -0,0 +1,75 @@
+package com.citysearch.webwidget.servlet;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.apache.commons.lang.StringEscapeUtils;
+
+/**
+ * Writer that HTML escapes everything written to it and passes it straight on to the wrapped
+ * writer, dropping line breaks. The output is the same as StringEscapeUtils.escapeHtml followed by
+ * removing \n and \r, but it is produced in one pass without buffering the whole body, so a widget
+ * can be streamed into the JSONP callback as it is rendered.
+ * 
+ */
+public class JsonpEscapingWriter extends Writer {
+    private final Writer out;
+
+    public JsonpEscapingWriter(Writer out) {
+        this.out = out;
+    }
+
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        int end = off + len;
+        int i = off;
+        while (i < end) {
+            // Pass on the run of characters that need no escaping as is
+            int runStart = i;
+            while (i < end && !needsEscaping(cbuf[i]) && cbuf[i] != '\n' && cbuf[i] != '\r') {
+                i++;
+            }
+            if (i > runStart) {
+                out.write(cbuf, runStart, i - runStart);
+            }
+            // Escape the run of characters that do
+            runStart = i;
+            while (i < end && needsEscaping(cbuf[i])) {
+                i++;
+            }
+            if (i > runStart) {
+                StringEscapeUtils.escapeHtml(out, new String(cbuf, runStart, i - runStart));
+            }
+            // Drop line breaks
+            while (i < end && (cbuf[i] == '\n' || cbuf[i] == '\r')) {
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Characters that StringEscapeUtils.escapeHtml replaces with an entity
+     * 
+     * @param c
+     * @return boolean
+     */
+    private static boolean needsEscaping(char c) {
+        return c > 0x7F || c == '"' || c == '&' || c == '<' || c == '>';
+    }
+
+    public void write(String str, int off, int len) throws IOException {
+        char[] chars = new char[len];
+        str.getChars(off, off + len, chars, 0);
+        write(chars, 0, len);
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Does not close the wrapped writer, which belongs to the including servlet.
+     */
+    public void close() throws IOException {
+        flush();
+    }
+}
@@ -0,0 +1,131 @@
+package com.citysearch.webwidget.servlet;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Response wrapper for an included action. Whatever the action renders is escaped by a
+ * JsonpEscapingWriter and written directly to the writer of the including response, so the
+ * widget body never has to be held in memory.
+ * 
+ */
+public class JsonpResponseWrapper extends HttpServletResponseWrapper {
+    private final JsonpEscapingWriter escapingWriter;
+    private PrintWriter writer;
+    private DecodingOutputStream outputStream;
+
+    /**
+     * @param response
+     *            the including response
+     * @param out
+     *            writer the escaped body is written to
+     */
+    public JsonpResponseWrapper(HttpServletResponse response, Writer out) {
+        super(response);
+        this.escapingWriter = new JsonpEscapingWriter(out);
+    }
+
+    public PrintWriter getWriter() throws IOException {
+        if (outputStream != null) {
+            throw new IllegalStateException("getOutputStream() has already been called");
+        }
+        if (writer == null) {
+            writer = new PrintWriter(escapingWriter);
+        }
+        return writer;
+    }
+
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (writer != null) {
+            throw new IllegalStateException("getWriter() has already been called");
+        }
+        if (outputStream == null) {
+            outputStream = new DecodingOutputStream(Charset.forName(getCharacterEncoding()));
+        }
+        return outputStream;
+    }
+
+    public void setContentLength(int len) {
+    }
+
+    /**
+     * Writes out anything still pending in the wrapper. Must be called once the include returns.
+     * 
+     * @throws IOException
+     */
+    public void finish() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+        if (outputStream != null) {
+            outputStream.finish();
+        }
+    }
+
+    /**
+     * Decodes bytes written by the included resource with the response character encoding and
+     * passes the characters on to the escaping writer.
+     */
+    private class DecodingOutputStream extends ServletOutputStream {
+        private final CharsetDecoder decoder;
+        private final ByteBuffer input = ByteBuffer.allocate(1024);
+        private final CharBuffer output = CharBuffer.allocate(1024);
+
+        DecodingOutputStream(Charset charset) {
+            decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int count = Math.min(len, input.remaining());
+                input.put(b, off, count);
+                off += count;
+                len -= count;
+                decode(false);
+            }
+        }
+
+        void finish() throws IOException {
+            decode(true);
+            CoderResult result;
+            do {
+                result = decoder.flush(output);
+                drain();
+            } while (result.isOverflow());
+            escapingWriter.flush();
+        }
+
+        private void decode(boolean endOfInput) throws IOException {
+            input.flip();
+            CoderResult result;
+            do {
+                result = decoder.decode(input, output, endOfInput);
+                drain();
+            } while (result.isOverflow());
+            input.compact();
+        }
+
+        private void drain() throws IOException {
+            output.flip();
+            escapingWriter.write(output.array(), output.arrayOffset() + output.position(), output
+                    .remaining());
+            output.clear();
+        }
+    }
+}
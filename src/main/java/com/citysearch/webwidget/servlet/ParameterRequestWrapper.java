@@ -0,0 +1,42 @@
+package com.citysearch.webwidget.servlet;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+
+/**
+ * Request wrapper that adds parameters to, or replaces parameters of, the wrapped request.
+ * 
+ */
+public class ParameterRequestWrapper extends HttpServletRequestWrapper {
+    private final Map<String, String[]> parameters;
+
+    public ParameterRequestWrapper(HttpServletRequest request, Map<String, String> overrides) {
+        super(request);
+        parameters = new HashMap<String, String[]>(request.getParameterMap());
+        for (Map.Entry<String, String> entry : overrides.entrySet()) {
+            parameters.put(entry.getKey(), new String[] { entry.getValue() });
+        }
+    }
+
+    public String getParameter(String name) {
+        String[] values = parameters.get(name);
+        return (values == null || values.length == 0) ? null : values[0];
+    }
+
+    public String[] getParameterValues(String name) {
+        return parameters.get(name);
+    }
+
+    public Map<String, String[]> getParameterMap() {
+        return Collections.unmodifiableMap(parameters);
+    }
+
+    public Enumeration<String> getParameterNames() {
+        return Collections.enumeration(parameters.keySet());
+    }
+}
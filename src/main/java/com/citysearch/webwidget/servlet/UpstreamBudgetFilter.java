@@ -0,0 +1,55 @@
+package com.citysearch.webwidget.servlet;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.log4j.Logger;
+
+import com.citysearch.webwidget.exception.CitysearchException;
+import com.citysearch.webwidget.util.RequestDeadline;
+import com.citysearch.webwidget.util.WebWidgetConfig;
+
+/**
+ * Starts the RequestDeadline of a widget request: all its upstream calls share a budget of
+ * widget.budget milliseconds from application.properties. With 0 the calls are only bounded by
+ * their own timeouts. An action included by CitySearchServlet keeps the budget of the outer
+ * request.
+ */
+public class UpstreamBudgetFilter implements Filter {
+    private static final String BUDGET_PROPERTY = "widget.budget";
+
+    private final Logger LOGGER = Logger.getLogger(getClass());
+
+    public void init(FilterConfig filterConfig) throws ServletException {
+    }
+
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        boolean started = false;
+        try {
+            long budget = NumberUtils.toLong(WebWidgetConfig.get().getApplicationProperty(
+                    BUDGET_PROPERTY));
+            started = budget > 0 && RequestDeadline.start(budget);
+        } catch (CitysearchException cse) {
+            // The request is served without a budget
+            LOGGER.error(cse.getMessage());
+        }
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            if (started) {
+                RequestDeadline.end();
+            }
+        }
+    }
+
+    public void destroy() {
+    }
+}
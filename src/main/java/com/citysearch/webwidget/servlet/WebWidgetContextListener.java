@@ -0,0 +1,49 @@
+package com.citysearch.webwidget.servlet;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+import org.apache.log4j.Logger;
+
+import com.citysearch.webwidget.exception.CitysearchException;
+import com.citysearch.webwidget.util.DefaultImages;
+import com.citysearch.webwidget.util.HttpConnection;
+import com.citysearch.webwidget.util.OneByOneTrackingUtil;
+import com.citysearch.webwidget.util.UpstreamExecutor;
+import com.citysearch.webwidget.util.WebWidgetConfig;
+
+/**
+ * Loads the static data the widgets need on every request, like the configuration, the default
+ * images and the 1x1 tracking table, at startup and releases application wide resources like the
+ * pooled HTTP connections and the upstream worker threads when the web application is undeployed.
+ * 
+ */
+public class WebWidgetContextListener implements ServletContextListener {
+    private Logger log = Logger.getLogger(getClass());
+
+    public void contextInitialized(ServletContextEvent event) {
+        try {
+            WebWidgetConfig.reload();
+        } catch (CitysearchException cse) {
+            // Not fatal, the configuration is loaded again on first use
+            log.error("Could not load the configuration", cse);
+        }
+        try {
+            DefaultImages.load();
+        } catch (CitysearchException cse) {
+            // Not fatal, the images are loaded again on first use
+            log.error("Could not load the default images", cse);
+        }
+        try {
+            OneByOneTrackingUtil.reload();
+        } catch (CitysearchException cse) {
+            // Not fatal, the tracking table is built again on first use
+            log.error("Could not load the 1x1 tracking urls", cse);
+        }
+    }
+
+    public void contextDestroyed(ServletContextEvent event) {
+        UpstreamExecutor.shutdown();
+        HttpConnection.shutdown();
+    }
+}
@@ -0,0 +1,316 @@
+package com.citysearch.webwidget.util;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.log4j.Logger;
+
+import com.citysearch.webwidget.exception.CitysearchException;
+
+/**
+ * Stops calling an API that is failing or too slow, so requests fall back at once instead of each
+ * waiting out the timeout. There is one breaker per API, named after its url property (see
+ * UpstreamPolicy), shared by all requests.
+ * <p>
+ * While closed, the outcome of each call is counted in a rolling window of circuit.window
+ * milliseconds. Once the window holds circuit.min.calls calls, the breaker opens if
+ * circuit.error.rate percent of them failed or circuit.slow.rate percent took circuit.slow.call
+ * milliseconds or more. While open every call is refused. After circuit.open.time milliseconds
+ * the breaker is half open: one call at a time is let through as a probe, and the first probe
+ * that succeeds in time closes the breaker again while one that fails or is slow opens it for
+ * another circuit.open.time. Each call gets a permit from allowCall and hands it back with its
+ * outcome, so only the probe decides the half open state, and calls let through before the
+ * breaker last changed state are not counted. The settings are read from api.properties when the
+ * breaker of an API is first used.
+ *
+ */
+public final class CircuitBreaker {
+    private static Logger log = Logger.getLogger(CircuitBreaker.class);
+
+    private static final String WINDOW_PROPERTY = "circuit.window";
+    private static final String MIN_CALLS_PROPERTY = "circuit.min.calls";
+    private static final String ERROR_RATE_PROPERTY = "circuit.error.rate";
+    private static final String SLOW_CALL_PROPERTY = "circuit.slow.call";
+    private static final String SLOW_RATE_PROPERTY = "circuit.slow.rate";
+    private static final String OPEN_TIME_PROPERTY = "circuit.open.time";
+    private static final long DEFAULT_WINDOW = 10000;
+    private static final int DEFAULT_MIN_CALLS = 20;
+    private static final int DEFAULT_ERROR_RATE = 50;
+    private static final long DEFAULT_SLOW_CALL = 2000;
+    private static final int DEFAULT_SLOW_RATE = 80;
+    private static final long DEFAULT_OPEN_TIME = 5000;
+    // The window moves on by a tenth of its length at a time
+    private static final int BUCKETS = 10;
+    private static final int CALLS = 0;
+    private static final int FAILURES = 1;
+    private static final int SLOW = 2;
+
+    /**
+     * Returned by allowCall when the call is refused
+     */
+    public static final long REFUSED = -1;
+
+    private enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final Map<String, CircuitBreaker> breakers = new TreeMap<String, CircuitBreaker>();
+
+    private final String name;
+    private final long bucketLength;
+    private final int minCalls;
+    private final int errorRate;
+    private final long slowCall;
+    private final int slowRate;
+    private final long openTime;
+
+    // Counts per bucket; bucket i covers the times t with t / bucketLength % BUCKETS == i
+    private final long[] bucketStarts = new long[BUCKETS];
+    private final int[] calls = new int[BUCKETS];
+    private final int[] failures = new int[BUCKETS];
+    private final int[] slowCalls = new int[BUCKETS];
+
+    private State state = State.CLOSED;
+    private long openUntil;
+    private boolean probing;
+    // Changed on every change of state and for every probe, so a permit of an earlier one is stale
+    private long epoch;
+    private long refused;
+    private int timesOpened;
+
+    CircuitBreaker(String name, long window, int minCalls, int errorRate, long slowCall,
+            int slowRate, long openTime) {
+        this.name = name;
+        this.bucketLength = Math.max(window / BUCKETS, 1);
+        this.minCalls = Math.max(minCalls, 1);
+        this.errorRate = errorRate;
+        this.slowCall = slowCall;
+        this.slowRate = slowRate;
+        this.openTime = openTime;
+    }
+
+    /**
+     * Returns the breaker of the API, creating it on first use
+     *
+     * @param name the url property of the API
+     * @return CircuitBreaker
+     * @throws CitysearchException
+     */
+    public static CircuitBreaker forApi(String name) throws CitysearchException {
+        synchronized (breakers) {
+            CircuitBreaker breaker = breakers.get(name);
+            if (breaker == null) {
+                WebWidgetConfig config = WebWidgetConfig.get();
+                breaker = new CircuitBreaker(name, getLong(config, WINDOW_PROPERTY,
+                        DEFAULT_WINDOW), getInt(config, MIN_CALLS_PROPERTY, DEFAULT_MIN_CALLS),
+                        getInt(config, ERROR_RATE_PROPERTY, DEFAULT_ERROR_RATE), getLong(config,
+                                SLOW_CALL_PROPERTY, DEFAULT_SLOW_CALL), getInt(config,
+                                SLOW_RATE_PROPERTY, DEFAULT_SLOW_RATE), getLong(config,
+                                OPEN_TIME_PROPERTY, DEFAULT_OPEN_TIME));
+                breakers.put(name, breaker);
+            }
+            return breaker;
+        }
+    }
+
+    /**
+     * Returns the state and counts of every breaker used so far, e.g. for the health check
+     *
+     * @return String
+     */
+    public static String getAllStatistics() {
+        StringBuilder strBuilder = new StringBuilder();
+        synchronized (breakers) {
+            for (CircuitBreaker breaker : breakers.values()) {
+                if (strBuilder.length() > 0) {
+                    strBuilder.append("; ");
+                }
+                strBuilder.append(breaker.name).append(": ").append(breaker.getStatistics());
+            }
+        }
+        return strBuilder.toString();
+    }
+
+    /**
+     * Asks to make a call. Unless REFUSED is returned the caller makes it and reports its outcome
+     * with onSuccess, onFailure or onIgnored, passing the permit returned here.
+     *
+     * @return the permit of the call, or REFUSED if the breaker is open, or half open with a probe
+     *         already running
+     */
+    public synchronized long allowCall() {
+        if (state == State.CLOSED) {
+            return epoch;
+        }
+        if (state == State.OPEN && System.currentTimeMillis() >= openUntil) {
+            state = State.HALF_OPEN;
+            probing = false;
+        }
+        if (state == State.HALF_OPEN && !probing) {
+            probing = true;
+            return ++epoch;
+        }
+        refused++;
+        return REFUSED;
+    }
+
+    /**
+     * Reports a call the API answered
+     *
+     * @param permit returned by allowCall for the call
+     * @param latency in milliseconds
+     */
+    public synchronized void onSuccess(long permit, long latency) {
+        if (permit != epoch) {
+            return;
+        }
+        boolean slow = latency >= slowCall;
+        if (state == State.HALF_OPEN) {
+            if (slow) {
+                open();
+            } else {
+                close();
+            }
+            return;
+        }
+        long now = System.currentTimeMillis();
+        int bucket = getBucket(now);
+        calls[bucket]++;
+        if (slow) {
+            slowCalls[bucket]++;
+        }
+        tripIfNeeded(now);
+    }
+
+    /**
+     * Reports a call that failed: no answer in time, or a server error
+     *
+     * @param permit returned by allowCall for the call
+     */
+    public synchronized void onFailure(long permit) {
+        if (permit != epoch) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+        long now = System.currentTimeMillis();
+        int bucket = getBucket(now);
+        calls[bucket]++;
+        failures[bucket]++;
+        tripIfNeeded(now);
+    }
+
+    /**
+     * Reports a call whose outcome says nothing about the API, e.g. one cut short by the
+     * request's budget
+     *
+     * @param permit returned by allowCall for the call
+     */
+    public synchronized void onIgnored(long permit) {
+        if (permit == epoch && state == State.HALF_OPEN) {
+            // Let the next call probe
+            probing = false;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized String getState() {
+        return state.name();
+    }
+
+    /**
+     * Returns the state and the counts of the window as name=value pairs
+     *
+     * @return String
+     */
+    public synchronized String getStatistics() {
+        int[] totals = sumWindow(System.currentTimeMillis());
+        StringBuilder strBuilder = new StringBuilder();
+        strBuilder.append("state=").append(state);
+        strBuilder.append(" calls=").append(totals[CALLS]);
+        strBuilder.append(" failures=").append(totals[FAILURES]);
+        strBuilder.append(" slow=").append(totals[SLOW]);
+        strBuilder.append(" refused=").append(refused);
+        strBuilder.append(" opened=").append(timesOpened);
+        return strBuilder.toString();
+    }
+
+    private void tripIfNeeded(long now) {
+        int[] totals = sumWindow(now);
+        int totalCalls = totals[CALLS];
+        if (totalCalls < minCalls) {
+            return;
+        }
+        if (totals[FAILURES] * 100L >= (long) errorRate * totalCalls
+                || totals[SLOW] * 100L >= (long) slowRate * totalCalls) {
+            log.warn("Circuit of " + name + " opened: calls=" + totalCalls + " failures="
+                    + totals[FAILURES] + " slow=" + totals[SLOW]);
+            open();
+        }
+    }
+
+    /**
+     * Returns the counts of the window, indexed by CALLS, FAILURES and SLOW
+     */
+    private int[] sumWindow(long now) {
+        int[] totals = new int[3];
+        for (int i = 0; i < BUCKETS; i++) {
+            if (now - bucketStarts[i] < bucketLength * BUCKETS) {
+                totals[CALLS] += calls[i];
+                totals[FAILURES] += failures[i];
+                totals[SLOW] += slowCalls[i];
+            }
+        }
+        return totals;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        epoch++;
+        openUntil = System.currentTimeMillis() + openTime;
+        probing = false;
+        timesOpened++;
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        epoch++;
+        probing = false;
+        for (int i = 0; i < BUCKETS; i++) {
+            bucketStarts[i] = 0;
+            calls[i] = 0;
+            failures[i] = 0;
+            slowCalls[i] = 0;
+        }
+        log.info("Circuit of " + name + " closed");
+    }
+
+    /**
+     * Returns the bucket of the time, emptied first if it still holds counts of an earlier round
+     */
+    private int getBucket(long now) {
+        long start = now - now % bucketLength;
+        int bucket = (int) ((now / bucketLength) % BUCKETS);
+        if (bucketStarts[bucket] != start) {
+            bucketStarts[bucket] = start;
+            calls[bucket] = 0;
+            failures[bucket] = 0;
+            slowCalls[bucket] = 0;
+        }
+        return bucket;
+    }
+
+    private static long getLong(WebWidgetConfig config, String key, long defaultValue) {
+        return NumberUtils.toLong(config.getApiProperty(key), defaultValue);
+    }
+
+    private static int getInt(WebWidgetConfig config, String key, int defaultValue) {
+        return NumberUtils.toInt(config.getApiProperty(key), defaultValue);
+    }
+}
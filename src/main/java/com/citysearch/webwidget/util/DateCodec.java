@@ -0,0 +1,162 @@
+package com.citysearch.webwidget.util;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+
+import com.citysearch.webwidget.exception.CitysearchException;
+
+/**
+ * Parses the review dates returned by the APIs (reviewdate.format in api.properties) and formats
+ * them for display as MM/dd/yyyy. SimpleDateFormat is not thread safe and costly to create, so the
+ * formats are kept in an ObjectPool shared by all threads and a review format is created again only
+ * when reviewdate.format changes. Dates in the default yyyy-MM-dd'T'HH:mm:ss'Z' layout are read
+ * directly into a Calendar without SimpleDateFormat; like the pattern, the Z is a literal and the
+ * time is in the default time zone.
+ *
+ */
+public final class DateCodec {
+    public static final String ISO_FORMAT = "yyyy-MM-dd'T'HH:mm:ss'Z'";
+    public static final String DISPLAY_FORMAT = "MM/dd/yyyy";
+
+    // 2010-06-01T21:17:08Z
+    private static final int ISO_LENGTH = 20;
+
+    private static final int MAX_IDLE_FORMATS = 64;
+
+    private static final ObjectPool<Formats> formats = new ObjectPool<Formats>(MAX_IDLE_FORMATS) {
+        protected Formats create() {
+            return new Formats();
+        }
+    };
+
+    private DateCodec() {
+    }
+
+    /**
+     * Parses a review date in the reviewdate.format of api.properties
+     *
+     * @param dateStr
+     * @return Date
+     * @throws CitysearchException if the date does not match the format
+     */
+    public static Date parseReviewDate(String dateStr) throws CitysearchException {
+        String pattern = WebWidgetConfig.get().getReviewDateFormat();
+        Formats pooled = formats.borrow();
+        try {
+            if (ISO_FORMAT.equals(pattern)) {
+                Date date = parseIso(dateStr, pooled.calendar);
+                if (date != null) {
+                    return date;
+                }
+            }
+            return pooled.getReviewFormat(pattern).parse(dateStr);
+        } catch (ParseException excep) {
+            throw new CitysearchException("DateCodec", "parseReviewDate", excep);
+        } finally {
+            formats.release(pooled);
+        }
+    }
+
+    /**
+     * Formats a date as MM/dd/yyyy
+     *
+     * @param date
+     * @return String
+     */
+    public static String formatDisplayDate(Date date) {
+        Formats pooled = formats.borrow();
+        try {
+            Calendar calendar = pooled.calendar;
+            calendar.setTime(date);
+            int year = calendar.get(Calendar.YEAR);
+            if (year > 9999) {
+                // Does not fit the four digits below
+                return pooled.getDisplayFormat().format(date);
+            }
+            char[] chars = new char[DISPLAY_FORMAT.length()];
+            appendDigits(chars, 0, calendar.get(Calendar.MONTH) + 1, 2);
+            chars[2] = '/';
+            appendDigits(chars, 3, calendar.get(Calendar.DAY_OF_MONTH), 2);
+            chars[5] = '/';
+            appendDigits(chars, 6, year, 4);
+            return new String(chars);
+        } finally {
+            formats.release(pooled);
+        }
+    }
+
+    /**
+     * Reads a date in the yyyy-MM-dd'T'HH:mm:ss'Z' layout
+     *
+     * @param dateStr
+     * @param calendar
+     * @return the date, or null if the string is not exactly in that layout
+     */
+    private static Date parseIso(String dateStr, Calendar calendar) {
+        if (dateStr == null || dateStr.length() != ISO_LENGTH || dateStr.charAt(4) != '-'
+                || dateStr.charAt(7) != '-' || dateStr.charAt(10) != 'T'
+                || dateStr.charAt(13) != ':' || dateStr.charAt(16) != ':'
+                || dateStr.charAt(19) != 'Z') {
+            return null;
+        }
+        int year = readDigits(dateStr, 0, 4);
+        int month = readDigits(dateStr, 5, 2);
+        int day = readDigits(dateStr, 8, 2);
+        int hour = readDigits(dateStr, 11, 2);
+        int minute = readDigits(dateStr, 14, 2);
+        int second = readDigits(dateStr, 17, 2);
+        if (year < 0 || month < 0 || day < 0 || hour < 0 || minute < 0 || second < 0) {
+            return null;
+        }
+        calendar.clear();
+        // Lenient, like SimpleDateFormat: 2010-13-01 is 2011-01-01
+        calendar.set(year, month - 1, day, hour, minute, second);
+        return calendar.getTime();
+    }
+
+    private static int readDigits(String str, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = str.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static void appendDigits(char[] chars, int start, int value, int count) {
+        for (int i = start + count - 1; i >= start; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    /**
+     * A pooled set of formats and calendar
+     */
+    private static final class Formats {
+        private final Calendar calendar = Calendar.getInstance();
+        private String reviewPattern;
+        private SimpleDateFormat reviewFormat;
+        private SimpleDateFormat displayFormat;
+
+        private SimpleDateFormat getReviewFormat(String pattern) {
+            if (reviewFormat == null || !pattern.equals(reviewPattern)) {
+                reviewFormat = new SimpleDateFormat(pattern);
+                reviewPattern = pattern;
+            }
+            return reviewFormat;
+        }
+
+        private SimpleDateFormat getDisplayFormat() {
+            if (displayFormat == null) {
+                displayFormat = new SimpleDateFormat(DISPLAY_FORMAT);
+            }
+            return displayFormat;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.citysearch.webwidget.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+
+import com.citysearch.webwidget.exception.CitysearchException;
+
+/**
+ * Stock images used when a listing or offer comes back without one. images.properties and
+ * review.image.properties are read once; the lists handed out are immutable and shared, and the
+ * list with relative urls prefixed by the context path is built once per context path.
+ *
+ */
+public class DefaultImages {
+    private static Logger log = Logger.getLogger(DefaultImages.class);
+
+    private static final String CATEGORY_IMAGES_PROPERTIES_FILE = "review.image.properties";
+    private static final String COMMA_STRING = ",";
+    // Context paths come from the deployment, so only a handful are expected
+    private static final int MAX_CONTEXT_PATHS = 32;
+
+    private static volatile String[] images;
+    private static volatile Map<String, List<String>> categoryImages;
+    private static final ConcurrentMap<String, List<String>> imagesByContextPath =
+            new ConcurrentHashMap<String, List<String>>();
+
+    /**
+     * Reads both properties files. Called at startup so the first widget request does not pay for
+     * the classpath lookups; the getters load lazily if this has not run.
+     *
+     * @throws CitysearchException
+     */
+    public static void load() throws CitysearchException {
+        getImageArray();
+        getCategoryImageMap();
+    }
+
+    /**
+     * Returns the images from images.properties, relative urls prefixed with the context path. The
+     * returned list is shared and cannot be modified.
+     *
+     * @param contextPath
+     * @return List
+     * @throws CitysearchException
+     */
+    public static List<String> getImages(String contextPath) throws CitysearchException {
+        String key = (contextPath != null) ? contextPath : "";
+        List<String> imageList = imagesByContextPath.get(key);
+        if (imageList == null) {
+            imageList = prefixImages(getImageArray(), key);
+            if (imagesByContextPath.size() < MAX_CONTEXT_PATHS) {
+                imagesByContextPath.putIfAbsent(key, imageList);
+            }
+        }
+        return imageList;
+    }
+
+    /**
+     * Returns the stock images configured for the category in review.image.properties, or null if
+     * there are none. The returned list is shared and cannot be modified.
+     *
+     * @param category
+     * @return List
+     * @throws CitysearchException
+     */
+    public static List<String> getCategoryImages(String category) throws CitysearchException {
+        if (category == null) {
+            return null;
+        }
+        return getCategoryImageMap().get(category);
+    }
+
+    private static String[] getImageArray() throws CitysearchException {
+        String[] imageArray = images;
+        if (imageArray == null) {
+            Properties imageProperties = PropertiesLoader
+                    .getProperties(CommonConstants.IMAGES_PROPERTIES_FILE);
+            // Sorted by key so the index of an image is the same on every server
+            List<String> keys = getSortedKeys(imageProperties);
+            imageArray = new String[keys.size()];
+            for (int i = 0; i < imageArray.length; i++) {
+                imageArray[i] = imageProperties.getProperty(keys.get(i));
+            }
+            images = imageArray;
+            log.info("Loaded " + imageArray.length + " default images");
+        }
+        return imageArray;
+    }
+
+    private static List<String> prefixImages(String[] imageArray, String contextPath) {
+        String[] prefixed = new String[imageArray.length];
+        for (int i = 0; i < imageArray.length; i++) {
+            String value = imageArray[i];
+            if (value != null && !value.startsWith("http")) {
+                StringBuilder strBuilder = new StringBuilder(contextPath);
+                strBuilder.append(value);
+                value = strBuilder.toString();
+            }
+            prefixed[i] = value;
+        }
+        return Collections.unmodifiableList(Arrays.asList(prefixed));
+    }
+
+    /**
+     * The properties file contains properties of the format key=category,imageurl. Each category
+     * is a key in the Map and the image urls for it are the value.
+     *
+     * @return Map
+     * @throws CitysearchException
+     */
+    private static Map<String, List<String>> getCategoryImageMap() throws CitysearchException {
+        Map<String, List<String>> imageMap = categoryImages;
+        if (imageMap == null) {
+            Properties imageProperties = PropertiesLoader
+                    .getProperties(CATEGORY_IMAGES_PROPERTIES_FILE);
+            List<String> keys = getSortedKeys(imageProperties);
+            Map<String, List<String>> lists = new HashMap<String, List<String>>();
+            for (String key : keys) {
+                String values[] = imageProperties.getProperty(key).split(COMMA_STRING);
+                if (values.length > 1 && StringUtils.isNotBlank(values[0])
+                        && StringUtils.isNotBlank(values[1])) {
+                    List<String> imageList = lists.get(values[0]);
+                    if (imageList == null) {
+                        imageList = new ArrayList<String>();
+                        lists.put(values[0], imageList);
+                    }
+                    imageList.add(values[1]);
+                }
+            }
+            imageMap = new HashMap<String, List<String>>();
+            for (Map.Entry<String, List<String>> entry : lists.entrySet()) {
+                List<String> imageList = entry.getValue();
+                String[] imageArray = imageList.toArray(new String[imageList.size()]);
+                imageMap.put(entry.getKey(), Collections.unmodifiableList(Arrays
+                        .asList(imageArray)));
+            }
+            imageMap = Collections.unmodifiableMap(imageMap);
+            categoryImages = imageMap;
+        }
+        return imageMap;
+    }
+
+    private static List<String> getSortedKeys(Properties properties) {
+        List<String> keys = new ArrayList<String>(properties.size());
+        Enumeration<Object> enumerator = properties.keys();
+        while (enumerator.hasMoreElements()) {
+            keys.add((String) enumerator.nextElement());
+        }
+        Collections.sort(keys);
+        return keys;
+    }
+}
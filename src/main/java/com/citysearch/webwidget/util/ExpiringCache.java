@@ -0,0 +1,181 @@
+package com.citysearch.webwidget.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread safe in-memory cache bounded both by size and by age. Entries older than the time to live
+ * are treated as missing. Hit and miss counts are kept so the cache effectiveness can be
+ * monitored.
+ *
+ * Reads and writes do not lock: the entries are kept in a ConcurrentHashMap and each entry
+ * remembers when it was last read. Once a put takes the cache over its maximum size, that thread
+ * removes the expired entries and then the least recently read ones until a tenth of the room is
+ * free again, while other threads carry on; only a put that finds the cache more than a tenth over
+ * its maximum waits for that eviction. The size bound and the LRU order are therefore
+ * approximate: the cache can briefly hold up to about a tenth more entries than its maximum.
+ *
+ * Cached values are shared between threads and must not be modified by callers.
+ *
+ * @param <K>
+ * @param <V>
+ */
+public class ExpiringCache<K, V> {
+    private final String name;
+    private final int maxSize;
+    private final long timeToLive;
+    private final ConcurrentHashMap<K, CacheEntry<V>> entries;
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param name
+     *            used when reporting statistics
+     * @param maxSize
+     *            maximum number of entries
+     * @param timeToLive
+     *            in milliseconds
+     */
+    public ExpiringCache(String name, int maxSize, long timeToLive) {
+        this.name = name;
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive;
+        this.entries = new ConcurrentHashMap<K, CacheEntry<V>>();
+    }
+
+    /**
+     * Returns the cached value or null if there is none or it has expired
+     *
+     * @param key
+     * @return V
+     */
+    public V get(K key) {
+        CacheEntry<V> entry = entries.get(key);
+        long now = System.currentTimeMillis();
+        if (entry != null && entry.expiresAt < now) {
+            entries.remove(key, entry);
+            entry = null;
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        entry.lastRead = now;
+        hits.incrementAndGet();
+        return entry.value;
+    }
+
+    public void put(K key, V value) {
+        if (maxSize > 0 && timeToLive > 0) {
+            long now = System.currentTimeMillis();
+            entries.put(key, new CacheEntry<V>(value, now + timeToLive, now));
+            if (entries.size() > maxSize) {
+                evict(now);
+            }
+        }
+    }
+
+    public void remove(K key) {
+        entries.remove(key);
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the statistics as name=value pairs, e.g. for the health check
+     *
+     * @return String
+     */
+    public String getStatistics() {
+        StringBuilder strBuilder = new StringBuilder();
+        strBuilder.append("size=").append(entries.size());
+        strBuilder.append(" hits=").append(hits.get());
+        strBuilder.append(" misses=").append(misses.get());
+        return strBuilder.toString();
+    }
+
+    /**
+     * Removes the expired entries, then the least recently read ones down to nine tenths of the
+     * maximum size. Skipped if another thread is already evicting, unless the cache is more than
+     * a tenth over its maximum size.
+     */
+    private void evict(long now) {
+        if (!evictionLock.tryLock()) {
+            if (entries.size() <= maxSize + maxSize / 10) {
+                return;
+            }
+            evictionLock.lock();
+        }
+        try {
+            if (entries.size() <= maxSize) {
+                // Evicted by the thread this one waited for
+                return;
+            }
+            List<Map.Entry<K, CacheEntry<V>>> live = new ArrayList<Map.Entry<K, CacheEntry<V>>>();
+            for (Map.Entry<K, CacheEntry<V>> mapEntry : entries.entrySet()) {
+                if (mapEntry.getValue().expiresAt < now) {
+                    entries.remove(mapEntry.getKey(), mapEntry.getValue());
+                } else {
+                    live.add(mapEntry);
+                }
+            }
+            int excess = live.size() - (maxSize - maxSize / 10);
+            if (excess <= 0) {
+                return;
+            }
+            // Other threads keep reading, so the choice is made on a copy of the read times
+            long[] lastReads = new long[live.size()];
+            for (int i = 0; i < lastReads.length; i++) {
+                lastReads[i] = live.get(i).getValue().lastRead;
+            }
+            long[] sorted = lastReads.clone();
+            Arrays.sort(sorted);
+            long newestEvicted = sorted[excess - 1];
+            for (int i = 0; i < lastReads.length && excess > 0; i++) {
+                Map.Entry<K, CacheEntry<V>> mapEntry = live.get(i);
+                if (lastReads[i] <= newestEvicted
+                        && entries.remove(mapEntry.getKey(), mapEntry.getValue())) {
+                    excess--;
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private static class CacheEntry<V> {
+        private final V value;
+        private final long expiresAt;
+        private volatile long lastRead;
+
+        CacheEntry(V value, long expiresAt, long lastRead) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.lastRead = lastRead;
+        }
+    }
+}
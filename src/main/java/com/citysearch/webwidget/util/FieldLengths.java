@@ -0,0 +1,70 @@
+package com.citysearch.webwidget.util;
+
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * The field lengths from field.properties for one ad unit and size (e.g. NEARBY.300X250), resolved
+ * once into an int[] indexed by the field constants below. Instances are obtained from
+ * WebWidgetConfig.getFieldLengths and are replaced along with the configuration.
+ *
+ */
+public final class FieldLengths {
+    public static final int NAME = 0;
+    public static final int TAGLINE = 1;
+    public static final int BACKFILL_TAGLINE = 2;
+    public static final int DESCRIPTION = 3;
+    public static final int DISPLAY_URL = 4;
+    public static final int TITLE = 5;
+    public static final int REVIEW_TITLE = 6;
+    public static final int REVIEW_TEXT = 7;
+    public static final int REVIEW_TEXT_SMALL = 8;
+    public static final int REVIEW_PROS = 9;
+    public static final int REVIEW_CONS = 10;
+
+    // Property name suffixes, in the order of the constants above
+    private static final String[] PROPERTIES = { CommonConstants.NAME_LENGTH,
+            CommonConstants.TAGLINE_LENGTH, "backfill." + CommonConstants.TAGLINE_LENGTH,
+            CommonConstants.DESCRIPTION_LENGTH, CommonConstants.DISPLAY_URL_LENGTH,
+            CommonConstants.TITLE_LENGTH, CommonConstants.REVIEW_TITLE_LENGTH,
+            CommonConstants.REVIEW_TEXT_LENGTH, CommonConstants.REVIEW_TEXT_SMALL_LENGTH,
+            CommonConstants.REVIEW_PROS_LENGTH, CommonConstants.REVIEW_CONS_LENGTH };
+
+    // -1 where the field has no length configured
+    private final int[] lengths;
+
+    FieldLengths(String adUnitIdentifier, Map<String, Integer> fieldLengths) {
+        lengths = new int[PROPERTIES.length];
+        for (int i = 0; i < PROPERTIES.length; i++) {
+            Integer length = fieldLengths.get(adUnitIdentifier + "." + PROPERTIES[i]);
+            lengths[i] = (length != null) ? length.intValue() : -1;
+        }
+    }
+
+    /**
+     * Abbreviates the value to the length of the field, see StringUtils.abbreviate. Returns the
+     * value unchanged if the field has no length configured.
+     *
+     * @param value
+     * @param field
+     * @return String
+     */
+    public String abbreviate(String value, int field) {
+        int length = lengths[field];
+        return (length >= 0) ? StringUtils.abbreviate(value, length) : value;
+    }
+
+    /**
+     * Cuts the value to the length of the field. Returns the value unchanged if the field has no
+     * length configured.
+     *
+     * @param value
+     * @param field
+     * @return String
+     */
+    public String truncate(String value, int field) {
+        int length = lengths[field];
+        return (length >= 0) ? StringUtils.substring(value, 0, length) : value;
+    }
+}
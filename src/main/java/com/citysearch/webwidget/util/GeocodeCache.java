@@ -0,0 +1,203 @@
+package com.citysearch.webwidget.util;
+
+import java.util.Locale;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
+
+import com.citysearch.webwidget.exception.CitysearchException;
+
+/**
+ * Caches the Search API lookups that only geocode: the latitude and longitude of a where, and
+ * the postal code of the listing closest to a latitude and longitude. Both are shared by the
+ * helpers and the proxies.
+ * <p>
+ * A where is keyed once normalized: lower case, with runs of white space made one space and no
+ * space around commas, so "Pasadena, CA" and "pasadena ,ca" share an entry. A latitude and
+ * longitude is keyed by its cell of 0.001 degree (about 100 m), so nearby points share the postal
+ * code found for the first of them. Failed lookups are not cached.
+ *
+ */
+public final class GeocodeCache {
+    private static final String CACHE_SIZE_PROPERTY = "geocode.cache.size";
+    private static final String CACHE_TTL_PROPERTY = "geocode.cache.ttl";
+    private static final int DEFAULT_CACHE_SIZE = 5000;
+    private static final long DEFAULT_CACHE_TTL = 86400000;
+    // Cells per degree
+    private static final double CELL_SCALE = 1000;
+
+    private static volatile ExpiringCache<String, String[]> latLonCache;
+    private static volatile ExpiringCache<String, String> postalCodeCache;
+
+    private GeocodeCache() {
+    }
+
+    /**
+     * Returns the cached latitude and longitude of the where
+     *
+     * @param where
+     * @return {latitude, longitude}, or null if not cached
+     * @throws CitysearchException
+     */
+    public static String[] getLatitudeLongitude(String where) throws CitysearchException {
+        String key = toWhereKey(where);
+        if (key == null) {
+            return null;
+        }
+        String[] latLon = getLatLonCache().get(key);
+        return latLon == null ? null : new String[] { latLon[0], latLon[1] };
+    }
+
+    /**
+     * Caches the latitude and longitude of the where, if both are set
+     *
+     * @param where
+     * @param latLon {latitude, longitude}
+     * @throws CitysearchException
+     */
+    public static void putLatitudeLongitude(String where, String[] latLon)
+            throws CitysearchException {
+        String key = toWhereKey(where);
+        if (key != null && latLon != null && latLon.length >= 2 && latLon[0] != null
+                && latLon[1] != null) {
+            getLatLonCache().put(key, new String[] { latLon[0], latLon[1] });
+        }
+    }
+
+    /**
+     * Returns the cached postal code of the cell of the latitude and longitude
+     *
+     * @param latitude
+     * @param longitude
+     * @return String, or null if not cached
+     * @throws CitysearchException
+     */
+    public static String getPostalCode(String latitude, String longitude)
+            throws CitysearchException {
+        String key = toCellKey(latitude, longitude);
+        return key == null ? null : getPostalCodeCache().get(key);
+    }
+
+    /**
+     * Caches the postal code for the cell of the latitude and longitude
+     *
+     * @param latitude
+     * @param longitude
+     * @param postalCode
+     * @throws CitysearchException
+     */
+    public static void putPostalCode(String latitude, String longitude, String postalCode)
+            throws CitysearchException {
+        String key = toCellKey(latitude, longitude);
+        if (key != null && postalCode != null) {
+            getPostalCodeCache().put(key, postalCode);
+        }
+    }
+
+    /**
+     * Returns the statistics of both caches, e.g. for the health check
+     *
+     * @return String
+     * @throws CitysearchException
+     */
+    public static String getStatistics() throws CitysearchException {
+        StringBuilder strBuilder = new StringBuilder();
+        strBuilder.append("where: ").append(getLatLonCache().getStatistics());
+        strBuilder.append("; latlon: ").append(getPostalCodeCache().getStatistics());
+        return strBuilder.toString();
+    }
+
+    private static ExpiringCache<String, String[]> getLatLonCache() throws CitysearchException {
+        ExpiringCache<String, String[]> cache = latLonCache;
+        return (cache != null) ? cache : createLatLonCache();
+    }
+
+    private static synchronized ExpiringCache<String, String[]> createLatLonCache()
+            throws CitysearchException {
+        if (latLonCache == null) {
+            latLonCache = new ExpiringCache<String, String[]>("geocode.where", getMaxSize(),
+                    getTimeToLive());
+        }
+        return latLonCache;
+    }
+
+    private static ExpiringCache<String, String> getPostalCodeCache() throws CitysearchException {
+        ExpiringCache<String, String> cache = postalCodeCache;
+        return (cache != null) ? cache : createPostalCodeCache();
+    }
+
+    private static synchronized ExpiringCache<String, String> createPostalCodeCache()
+            throws CitysearchException {
+        if (postalCodeCache == null) {
+            postalCodeCache = new ExpiringCache<String, String>("geocode.latlon", getMaxSize(),
+                    getTimeToLive());
+        }
+        return postalCodeCache;
+    }
+
+    private static int getMaxSize() throws CitysearchException {
+        return NumberUtils.toInt(WebWidgetConfig.get().getApplicationProperty(
+                CACHE_SIZE_PROPERTY), DEFAULT_CACHE_SIZE);
+    }
+
+    private static long getTimeToLive() throws CitysearchException {
+        return NumberUtils.toLong(WebWidgetConfig.get().getApplicationProperty(
+                CACHE_TTL_PROPERTY), DEFAULT_CACHE_TTL);
+    }
+
+    /**
+     * Normalizes a where
+     *
+     * @param where
+     * @return String, or null if the where is blank
+     */
+    static String toWhereKey(String where) {
+        if (StringUtils.isBlank(where)) {
+            return null;
+        }
+        String trimmed = where.trim().toLowerCase(Locale.ENGLISH);
+        StringBuilder key = new StringBuilder(trimmed.length());
+        boolean space = false;
+        for (int i = 0; i < trimmed.length(); i++) {
+            char c = trimmed.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = true;
+            } else {
+                // No space before or after a comma
+                if (space && c != ',' && key.length() > 0
+                        && key.charAt(key.length() - 1) != ',') {
+                    key.append(' ');
+                }
+                space = false;
+                key.append(c);
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Returns the key of the cell of a latitude and longitude
+     *
+     * @param latitude
+     * @param longitude
+     * @return String, or null if either is not a number
+     */
+    static String toCellKey(String latitude, String longitude) {
+        if (StringUtils.isBlank(latitude) || StringUtils.isBlank(longitude)) {
+            return null;
+        }
+        double lat;
+        double lon;
+        try {
+            lat = Double.parseDouble(latitude.trim());
+            lon = Double.parseDouble(longitude.trim());
+        } catch (NumberFormatException nfe) {
+            return null;
+        }
+        if (Double.isNaN(lat) || Double.isNaN(lon) || Double.isInfinite(lat)
+                || Double.isInfinite(lon)) {
+            return null;
+        }
+        return Math.round(lat * CELL_SCALE) + "," + Math.round(lon * CELL_SCALE);
+    }
+}
@@ -2,10 +2,8 @@ package com.citysearch.webwidget.util;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.math.BigDecimal;
-import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLEncoder;
@@ -13,19 +11,26 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.Enumeration;
 import java.util.List;
 import java.util.Map;
-import java.util.Properties;
-
-import org.apache.commons.io.IOUtils;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.httpclient.HttpMethod;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.math.NumberUtils;
 import org.apache.log4j.Logger;
 import org.jdom.Document;
 import org.jdom.JDOMException;
-import org.jdom.input.SAXBuilder;
 
+import com.citysearch.webwidget.api.parser.ResponseHandler;
 import com.citysearch.webwidget.exception.CitysearchException;
 import com.citysearch.webwidget.exception.InvalidHttpResponseException;
 
@@ -48,6 +53,16 @@ public class HelperUtil {
 	private static final String COMMA = ",";
 	private static final String SPACE = " ";
 
+	// The upstream calls whose handlers allow sharing the result
+	private static final SingleFlight<String, Object> apiCalls = new SingleFlight<String, Object>();
+	private static final AtomicLong hedgedCalls = new AtomicLong();
+	private static final AtomicLong callsWonByHedge = new AtomicLong();
+	// States of the hedge of a call: not sent yet, sent, or no longer to be sent
+	private static final int HEDGE_PENDING = 0;
+	private static final int HEDGE_SENT = 1;
+	private static final int HEDGE_CLOSED = 2;
+	private static final String DEADLINE_ERROR = "deadline.error";
+
 	/**
 	 * Helper method to build a string in name=value format. Used in building
 	 * http query string.
@@ -75,7 +90,8 @@ public class HelperUtil {
 	}
 
 	/**
-	 * Converts the InputSteam to a document and returns it
+	 * Converts the InputSteam to a document with the thread's SAXBuilder from
+	 * XmlParsers and returns it
 	 * 
 	 * @param input
 	 * @return Document
@@ -87,8 +103,7 @@ public class HelperUtil {
 		Document document = null;
 		try {
 			if (input != null) {
-				SAXBuilder builder = new SAXBuilder();
-				document = builder.build(input);
+				document = XmlParsers.build(input);
 			}
 		} catch (JDOMException jde) {
 			throw new CitysearchException("HelperUtil", "buildFromStream", jde);
@@ -113,15 +128,261 @@ public class HelperUtil {
 	public static Document getAPIResponse(String url,
 			Map<String, String> headers) throws CitysearchException,
 			InvalidHttpResponseException {
-		HttpURLConnection connection = null;
+		HttpMethod connection = null;
 		Document xmlDocument = null;
 		try {
-			connection = HttpConnection.getConnection(url, headers);
-			if (connection.getResponseCode() != CommonConstants.RES_SUCCESS_CODE) {
-				InputStream is = connection.getInputStream();
-				StringWriter writer = new StringWriter();
-				IOUtils.copy(is, writer);
-				String str = writer.toString();
+			connection = getSuccessfulConnection(url, headers, null);
+			InputStream iStream = connection.getResponseBodyAsStream();
+			xmlDocument = buildFromStream(iStream);
+		} catch (IOException ioe) {
+			throw new CitysearchException("HelperUtil", "getAPIResponse", ioe);
+		} finally {
+			if (connection != null) {
+				HttpConnection.closeConnection(connection);
+			}
+		}
+		return xmlDocument;
+	}
+
+	/**
+	 * Connects to the url using HttpConnection. In case of error returns
+	 * InvalidHttpResponseException otherwise streams the response through the
+	 * handler and returns what it mapped.
+	 * 
+	 * If the handler has a sharing key, concurrent calls for the same url,
+	 * headers and key make one upstream call and all get its result, or its
+	 * exception, unless the call failed because the budget of the request that
+	 * made it ran out. The result must then not be modified.
+	 * 
+	 * If the API of the url has a hedge delay and the handler a new handler,
+	 * a second request is sent when the first has not answered after the
+	 * delay, and the first answer is used.
+	 * 
+	 * @param url
+	 * @param headers
+	 * @param handler
+	 * @return T
+	 * @throws CitysearchException
+	 * @throws InvalidHttpResponseException
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T getAPIResponse(final String url,
+			final Map<String, String> headers, final ResponseHandler<T> handler)
+			throws CitysearchException, InvalidHttpResponseException {
+		String sharingKey = handler.getSharingKey();
+		if (sharingKey == null) {
+			return callAPI(url, headers, handler);
+		}
+		try {
+			return (T) apiCalls.execute(toFlightKey(sharingKey, url, headers),
+					new Callable<Object>() {
+						public Object call() throws Exception {
+							return callAPI(url, headers, handler);
+						}
+					});
+		} catch (CitysearchException cse) {
+			throw cse;
+		} catch (InvalidHttpResponseException ihe) {
+			throw ihe;
+		} catch (RuntimeException re) {
+			throw re;
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new CitysearchException("HelperUtil", "getAPIResponse", ie);
+		} catch (TimeoutException te) {
+			// Waited for an identical call beyond the request's budget
+			throw new CitysearchException("HelperUtil", "getAPIResponse",
+					WebWidgetConfig.get().getErrorMessage(DEADLINE_ERROR)
+							+ " " + url);
+		} catch (Exception excep) {
+			throw new CitysearchException("HelperUtil", "getAPIResponse",
+					excep);
+		}
+	}
+
+	/**
+	 * Returns the statistics of the shared upstream calls, e.g. for the health
+	 * check
+	 * 
+	 * @return String
+	 */
+	public static String getSharedCallStatistics() {
+		return apiCalls.getStatistics();
+	}
+
+	/**
+	 * Returns the statistics of the hedged upstream calls, e.g. for the health
+	 * check
+	 * 
+	 * @return String
+	 */
+	public static String getHedgedCallStatistics() {
+		StringBuilder strBuilder = new StringBuilder();
+		strBuilder.append("hedged=").append(hedgedCalls.get());
+		strBuilder.append(" wonByHedge=").append(callsWonByHedge.get());
+		return strBuilder.toString();
+	}
+
+	/**
+	 * Calls the API, hedged if its policy and the handler allow it and the
+	 * budget of the request leaves time for a second request
+	 */
+	private static <T> T callAPI(String url, Map<String, String> headers,
+			ResponseHandler<T> handler) throws CitysearchException,
+			InvalidHttpResponseException {
+		long hedgeDelay = WebWidgetConfig.get().getUpstreamPolicy(url)
+				.getHedgeDelay();
+		if (hedgeDelay > 0 && hedgeDelay < RequestDeadline.getRemaining()) {
+			ResponseHandler<T> hedgeHandler = handler.newHandler();
+			if (hedgeHandler != null) {
+				return callAPIHedged(url, headers, handler, hedgeHandler,
+						hedgeDelay);
+			}
+		}
+		return fetchAPIResponse(url, headers, handler, null);
+	}
+
+	/**
+	 * Sends the request on the calling thread and, if it has not answered
+	 * after the hedge delay, a second one from the UpstreamExecutor, read by
+	 * the hedge handler. Returns the result of the first request to succeed
+	 * and aborts the other one; fails only if all the requests sent fail. The
+	 * caller never waits for a hedge that has not been sent, and waits for one
+	 * that has at most what is left of the RequestDeadline, so a saturated
+	 * pool only means that no hedge is sent.
+	 */
+	private static <T> T callAPIHedged(final String url,
+			final Map<String, String> headers, ResponseHandler<T> handler,
+			final ResponseHandler<T> hedgeHandler, final long hedgeDelay)
+			throws CitysearchException, InvalidHttpResponseException {
+		final HttpConnection.AbortHandle primaryAbort = new HttpConnection.AbortHandle();
+		final HttpConnection.AbortHandle hedgeAbort = new HttpConnection.AbortHandle();
+		final CountDownLatch primaryDone = new CountDownLatch(1);
+		final AtomicInteger hedgeState = new AtomicInteger(HEDGE_PENDING);
+		final Thread caller = Thread.currentThread();
+		Future<T> hedge = UpstreamExecutor.submit(new Callable<T>() {
+			public T call() throws Exception {
+				// Run by the caller itself when the pool is full: no hedge
+				if (Thread.currentThread() == caller
+						|| primaryDone.await(hedgeDelay, TimeUnit.MILLISECONDS)
+						|| !hedgeState.compareAndSet(HEDGE_PENDING, HEDGE_SENT)) {
+					return null;
+				}
+				hedgedCalls.incrementAndGet();
+				T result = fetchAPIResponse(url, headers, hedgeHandler,
+						hedgeAbort);
+				primaryAbort.abort();
+				return result;
+			}
+		});
+		Exception primaryFailure;
+		try {
+			T result = fetchAPIResponse(url, headers, handler, primaryAbort);
+			hedgeAbort.abort();
+			return result;
+		} catch (CitysearchException cse) {
+			primaryFailure = cse;
+		} catch (InvalidHttpResponseException ihe) {
+			primaryFailure = ihe;
+		} finally {
+			primaryDone.countDown();
+			if (hedgeState.compareAndSet(HEDGE_PENDING, HEDGE_CLOSED)) {
+				hedge.cancel(false);
+			}
+		}
+		if (hedgeState.get() != HEDGE_SENT) {
+			throw asFailure(primaryFailure);
+		}
+		// The primary request failed or was aborted by the hedge that won
+		try {
+			T result = hedge.get(Math.max(RequestDeadline.getRemaining(), 0),
+					TimeUnit.MILLISECONDS);
+			callsWonByHedge.incrementAndGet();
+			return result;
+		} catch (ExecutionException ee) {
+			// Both requests failed
+			throw asFailure(primaryFailure);
+		} catch (TimeoutException te) {
+			hedgeAbort.abort();
+			throw new CitysearchException("HelperUtil", "getAPIResponse",
+					WebWidgetConfig.get().getErrorMessage(DEADLINE_ERROR)
+							+ " " + url);
+		} catch (InterruptedException ie) {
+			hedgeAbort.abort();
+			Thread.currentThread().interrupt();
+			throw new CitysearchException("HelperUtil", "getAPIResponse", ie);
+		}
+	}
+
+	/**
+	 * Returns the failure of a request to throw again, or throws it if it is
+	 * an InvalidHttpResponseException
+	 */
+	private static CitysearchException asFailure(Exception failure)
+			throws InvalidHttpResponseException {
+		if (failure instanceof InvalidHttpResponseException) {
+			throw (InvalidHttpResponseException) failure;
+		}
+		return (CitysearchException) failure;
+	}
+
+	/**
+	 * Identifies a call by the sharing key, the url and the headers in order
+	 * of name
+	 */
+	private static String toFlightKey(String sharingKey, String url,
+			Map<String, String> headers) {
+		StringBuilder key = new StringBuilder(sharingKey);
+		key.append(SPACE).append(url);
+		if (headers != null && !headers.isEmpty()) {
+			for (Map.Entry<String, String> header : new TreeMap<String, String>(
+					headers).entrySet()) {
+				key.append(SPACE).append(header.getKey()).append('=').append(
+						header.getValue());
+			}
+		}
+		return key.toString();
+	}
+
+	private static <T> T fetchAPIResponse(String url,
+			Map<String, String> headers, ResponseHandler<T> handler,
+			HttpConnection.AbortHandle abortHandle) throws CitysearchException,
+			InvalidHttpResponseException {
+		HttpMethod connection = null;
+		try {
+			connection = getSuccessfulConnection(url, headers, abortHandle);
+			return handler.parse(connection.getResponseBodyAsStream());
+		} catch (IOException ioe) {
+			throw new CitysearchException("HelperUtil", "getAPIResponse", ioe);
+		} finally {
+			if (connection != null) {
+				HttpConnection.closeConnection(connection);
+			}
+		}
+	}
+
+	/**
+	 * Connects to the url and checks the status code of the response. The
+	 * caller closes the returned connection.
+	 * 
+	 * @param url
+	 * @param headers
+	 * @param abortHandle
+	 *            null if the call is not to be aborted
+	 * @return HttpMethod
+	 * @throws CitysearchException
+	 * @throws InvalidHttpResponseException
+	 * @throws IOException
+	 */
+	private static HttpMethod getSuccessfulConnection(String url,
+			Map<String, String> headers, HttpConnection.AbortHandle abortHandle)
+			throws CitysearchException, InvalidHttpResponseException,
+			IOException {
+		HttpMethod connection = HttpConnection.getConnection(url, headers,
+				abortHandle);
+		if (connection.getStatusCode() != CommonConstants.RES_SUCCESS_CODE) {
+			try {
+				String str = connection.getResponseBodyAsString();
 				log
 						.error("******************* API ERROR ************************");
 				log.error("URL: " + url);
@@ -129,18 +390,12 @@ public class HelperUtil {
 				log
 						.error("******************* END API ERROR ************************");
 				throw new InvalidHttpResponseException(connection
-						.getResponseCode(), "Invalid HTTP Status Code.");
-			}
-			InputStream iStream = connection.getInputStream();
-			xmlDocument = buildFromStream(iStream);
-		} catch (IOException ioe) {
-			throw new CitysearchException("HelperUtil", "getAPIResponse", ioe);
-		} finally {
-			if (connection != null) {
+						.getStatusCode(), "Invalid HTTP Status Code.");
+			} finally {
 				HttpConnection.closeConnection(connection);
 			}
 		}
-		return xmlDocument;
+		return connection;
 	}
 
 	/**
@@ -267,8 +522,7 @@ public class HelperUtil {
 	public static String getAbbreviatedString(String stringToAbbreviate,
 			String apiPropertyName, int defaultLength)
 			throws CitysearchException {
-		String value = PropertiesLoader.getAPIProperties().getProperty(
-				apiPropertyName);
+		String value = WebWidgetConfig.get().getApiProperty(apiPropertyName);
 		int length = 0;
 		if (StringUtils.isNotBlank(value)) {
 			length = NumberUtils.toInt(value);
@@ -283,49 +537,35 @@ public class HelperUtil {
 
 	public static String getAbbreviatedString(String stringToAbbreviate,
 			String propertyName) throws CitysearchException {
-		Properties prop = PropertiesLoader.getFieldProperties();
-		if (prop.containsKey(propertyName)) {
-			String value = prop.getProperty(propertyName);
-			if (StringUtils.isNotBlank(value)) {
-				int length = NumberUtils.toInt(value);
-				stringToAbbreviate = StringUtils.abbreviate(stringToAbbreviate,
-						length);
-			}
+		int length = WebWidgetConfig.get().getFieldLength(propertyName);
+		if (length >= 0) {
+			stringToAbbreviate = StringUtils.abbreviate(stringToAbbreviate,
+					length);
 		}
 		return stringToAbbreviate;
 	}
 
 	public static String getTruncatedString(String stringTotruncate,
 			String propertyName) throws CitysearchException {
-		Properties prop = PropertiesLoader.getFieldProperties();
-		if (prop.containsKey(propertyName)) {
-			String value = prop.getProperty(propertyName);
-			if (StringUtils.isNotBlank(value)) {
-				int length = NumberUtils.toInt(value);
-				stringTotruncate = StringUtils.substring(stringTotruncate, 0,
-						length);
-			}
+		int length = WebWidgetConfig.get().getFieldLength(propertyName);
+		if (length >= 0) {
+			stringTotruncate = StringUtils.substring(stringTotruncate, 0,
+					length);
 		}
 		return stringTotruncate;
 	}
 
+	/**
+	 * Returns the default images, relative urls prefixed with the context path.
+	 * The list is shared and must not be modified.
+	 * 
+	 * @param contextPath
+	 * @return List
+	 * @throws CitysearchException
+	 */
 	public static List<String> getImages(String contextPath)
 			throws CitysearchException {
-		List<String> imageList = new ArrayList<String>();
-		Properties imageProperties = PropertiesLoader
-				.getProperties(CommonConstants.IMAGES_PROPERTIES_FILE);
-		Enumeration<Object> enumerator = imageProperties.keys();
-		while (enumerator.hasMoreElements()) {
-			String key = (String) enumerator.nextElement();
-			String value = imageProperties.getProperty(key);
-			if (value != null && !value.startsWith("http")) {
-				StringBuilder strBuilder = new StringBuilder(contextPath);
-				strBuilder.append(value);
-				value = strBuilder.toString();
-			}
-			imageList.add(value);
-		}
-		return imageList;
+		return DefaultImages.getImages(contextPath);
 	}
 
 	public static String getCallBackFunctionString(String callBackFunction,
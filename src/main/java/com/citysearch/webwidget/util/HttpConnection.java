@@ -1,71 +1,294 @@
 package com.citysearch.webwidget.util;
 
 import java.io.IOException;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.net.SocketTimeoutException;
 import java.util.Map;
 
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.apache.commons.httpclient.util.IdleConnectionTimeoutThread;
+import org.apache.commons.lang.math.NumberUtils;
 import org.apache.log4j.Logger;
 
 import com.citysearch.webwidget.exception.CitysearchException;
 
 /**
  * This class contains the functionality related to Http connection like getting the connecton and
- * closing the connection
- * 
+ * closing the connection.
+ *
+ * All upstream calls share one pooled HttpClient, so keep-alive sockets are reused across requests
+ * instead of opening a new TCP connection per call. Pool sizes and timeouts are read from
+ * api.properties.
+ *
+ * The read timeout of a call is the timeout of its API, see UpstreamPolicy, cut to what is left of
+ * the RequestDeadline of the widget request. A call is not made once the budget is used up, nor
+ * while the CircuitBreaker of its API is open.
+ *
+ * A call made with an AbortHandle can be ended from another thread, e.g. the losing request of a
+ * hedged call.
+ *
  * @author Aspert Benjamin
- * 
+ *
  */
 public class HttpConnection {
     private static Logger log = Logger.getLogger(HttpConnection.class);
-    private static final String reqMethod = "GET";
-    private static final int resWaitTime = 10000;
     private static final String error = "connection.error";
+    private static final String deadlineError = "deadline.error";
+    private static final String circuitOpenError = "circuit.open.error";
+
+    private static final String CONNECT_TIMEOUT_PROPERTY = "http.connect.timeout";
+    private static final String READ_TIMEOUT_PROPERTY = "http.read.timeout";
+    private static final String MAX_CONNECTIONS_PER_HOST_PROPERTY = "http.max.connections.per.host";
+    private static final String MAX_CONNECTIONS_TOTAL_PROPERTY = "http.max.connections.total";
+    private static final String IDLE_TIMEOUT_PROPERTY = "http.idle.timeout";
+
+    private static final int DEFAULT_CONNECT_TIMEOUT = 2000;
+    private static final int DEFAULT_READ_TIMEOUT = 10000;
+    private static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 20;
+    private static final int DEFAULT_MAX_CONNECTIONS_TOTAL = 100;
+    private static final int DEFAULT_IDLE_TIMEOUT = 30000;
+
+    private static HttpClient client;
+    private static int defaultReadTimeout;
+    private static MultiThreadedHttpConnectionManager connectionManager;
+    private static IdleConnectionTimeoutThread idleConnectionEvictor;
+
+    /**
+     * Returns the shared client, creating the connection pool on first use
+     *
+     * @return HttpClient
+     * @throws CitysearchException
+     */
+    private static synchronized HttpClient getClient() throws CitysearchException {
+        if (client == null) {
+            WebWidgetConfig config = WebWidgetConfig.get();
+            int connectTimeout = NumberUtils.toInt(config.getApiProperty(CONNECT_TIMEOUT_PROPERTY),
+                    DEFAULT_CONNECT_TIMEOUT);
+            int readTimeout = NumberUtils.toInt(config.getApiProperty(READ_TIMEOUT_PROPERTY),
+                    DEFAULT_READ_TIMEOUT);
+            int maxPerHost = NumberUtils.toInt(config
+                    .getApiProperty(MAX_CONNECTIONS_PER_HOST_PROPERTY), DEFAULT_MAX_CONNECTIONS_PER_HOST);
+            int maxTotal = NumberUtils.toInt(config.getApiProperty(MAX_CONNECTIONS_TOTAL_PROPERTY),
+                    DEFAULT_MAX_CONNECTIONS_TOTAL);
+            int idleTimeout = NumberUtils.toInt(config.getApiProperty(IDLE_TIMEOUT_PROPERTY),
+                    DEFAULT_IDLE_TIMEOUT);
+
+            connectionManager = new MultiThreadedHttpConnectionManager();
+            HttpConnectionManagerParams params = connectionManager.getParams();
+            params.setConnectionTimeout(connectTimeout);
+            params.setSoTimeout(readTimeout);
+            params.setDefaultMaxConnectionsPerHost(maxPerHost);
+            params.setMaxTotalConnections(maxTotal);
+            params.setStaleCheckingEnabled(true);
+
+            client = new HttpClient(connectionManager);
+            defaultReadTimeout = readTimeout;
+            // Waiting for a free pooled connection counts against the connect timeout
+            client.getParams().setConnectionManagerTimeout(connectTimeout);
+
+            idleConnectionEvictor = new IdleConnectionTimeoutThread();
+            idleConnectionEvictor.setConnectionTimeout(idleTimeout);
+            idleConnectionEvictor.setTimeoutInterval(Math.max(1000, idleTimeout / 2));
+            idleConnectionEvictor.addConnectionManager(connectionManager);
+            idleConnectionEvictor.start();
+
+            log.info("HTTP connection pool created. connectTimeout=" + connectTimeout
+                    + " readTimeout=" + readTimeout + " maxPerHost=" + maxPerHost + " maxTotal="
+                    + maxTotal + " idleTimeout=" + idleTimeout);
+        }
+        return client;
+    }
 
     /**
-     * Gets the connection object for the given url Exception thrown if there is a connection
-     * failure
-     * 
+     * Executes a GET against the given url on a pooled connection and returns the method, from
+     * which the status code and the response body can be read. The caller must pass the returned
+     * method to closeConnection once done so the connection goes back to the pool. Exception
+     * thrown if there is a connection failure
+     *
      * @param urlString
      * @param headers
      *            Map for HTTP Headers
-     * @return
+     * @return HttpMethod
      * @throws CitysearchException
      */
-    public static HttpURLConnection getConnection(String urlString, Map<String, String> headers)
+    public static HttpMethod getConnection(String urlString, Map<String, String> headers)
             throws CitysearchException {
-        HttpURLConnection connection = null;
-        String errorMsg = PropertiesLoader.getErrorProperties().getProperty(error);
+        return getConnection(urlString, headers, null);
+    }
+
+    /**
+     * Executes a GET as getConnection(urlString, headers) does. The call can be aborted through
+     * the handle, and then fails with a CitysearchException.
+     *
+     * @param urlString
+     * @param headers
+     *            Map for HTTP Headers
+     * @param abortHandle
+     *            null if the call is not to be aborted
+     * @return HttpMethod
+     * @throws CitysearchException
+     */
+    public static HttpMethod getConnection(String urlString, Map<String, String> headers,
+            AbortHandle abortHandle) throws CitysearchException {
+        HttpMethod method = null;
         try {
-            URL url = new URL(urlString);
-            connection = (HttpURLConnection) url.openConnection();
+            HttpClient httpClient = getClient();
+            WebWidgetConfig config = WebWidgetConfig.get();
+            UpstreamPolicy policy = config.getUpstreamPolicy(urlString);
+            long apiTimeout = policy.getTimeout() > 0 ? policy.getTimeout() : defaultReadTimeout;
+            int readTimeout = getReadTimeout(config, policy, apiTimeout);
+            method = new GetMethod(urlString);
+            method.getParams().setSoTimeout(readTimeout);
             // Set HTTP headers if passed.
             if (headers != null && !headers.isEmpty()) {
                 for (String key : headers.keySet()) {
-                    connection.setRequestProperty(key, headers.get(key));
+                    method.setRequestHeader(key, headers.get(key));
                 }
             }
-            connection.setRequestMethod(reqMethod);
-            connection.setDoOutput(true);
-            connection.setReadTimeout(resWaitTime);
-            connection.connect();
-            if (connection == null) {
-                throw new CitysearchException("HttpConnection", "getConnection", errorMsg);
-            }
+            boolean cutByBudget = readTimeout > 0 && (apiTimeout <= 0 || readTimeout < apiTimeout);
+            execute(httpClient, method, config, policy, cutByBudget, abortHandle);
+        } catch (IllegalArgumentException iae) {
+            String errorMsg = WebWidgetConfig.get().getErrorMessage(error);
+            throw new CitysearchException("HttpConnection", "getConnection", errorMsg, iae);
         } catch (IOException e) {
+            closeConnection(method);
             throw new CitysearchException("HttpConnection", "getConnection", e);
         }
-        return connection;
+        return method;
+    }
+
+    /**
+     * Executes the method unless the CircuitBreaker of its API is open, and reports the outcome:
+     * a server error or no answer is a failure. A timeout that the request's budget made shorter
+     * than the API's is not held against the API, nor is an aborted call.
+     *
+     * @throws CitysearchException if the circuit is open
+     * @throws IOException also if the call is aborted
+     */
+    private static void execute(HttpClient httpClient, HttpMethod method, WebWidgetConfig config,
+            UpstreamPolicy policy, boolean cutByBudget, AbortHandle abortHandle)
+            throws CitysearchException, IOException {
+        if (abortHandle != null && !abortHandle.start(method)) {
+            throw new IOException("Call aborted " + policy.getName());
+        }
+        CircuitBreaker breaker = CircuitBreaker.forApi(policy.getName());
+        long permit = breaker.allowCall();
+        if (permit == CircuitBreaker.REFUSED) {
+            throw new CitysearchException("HttpConnection", "getConnection",
+                    config.getErrorMessage(circuitOpenError) + " " + policy.getName());
+        }
+        long start = System.currentTimeMillis();
+        boolean answered = false;
+        boolean cutShort = false;
+        try {
+            httpClient.executeMethod(method);
+            answered = method.getStatusCode() < HttpStatus.SC_INTERNAL_SERVER_ERROR;
+        } catch (SocketTimeoutException ste) {
+            cutShort = cutByBudget;
+            throw ste;
+        } catch (IllegalStateException ise) {
+            // Thrown by executeMethod when the method was aborted before it was sent
+            if (abortHandle == null || !abortHandle.isAborted()) {
+                throw ise;
+            }
+            throw new IOException("Call aborted " + policy.getName());
+        } finally {
+            if (answered) {
+                breaker.onSuccess(permit, System.currentTimeMillis() - start);
+            } else if (cutShort || (abortHandle != null && abortHandle.isAborted())) {
+                breaker.onIgnored(permit);
+            } else {
+                breaker.onFailure(permit);
+            }
+        }
+    }
+
+    /**
+     * Returns the read timeout of a call: the timeout of its API cut to the time left in the
+     * RequestDeadline
+     *
+     * @param config
+     * @param policy
+     * @param timeout the timeout of the API, 0 for none
+     * @return int in milliseconds
+     * @throws CitysearchException if the budget is used up
+     */
+    private static int getReadTimeout(WebWidgetConfig config, UpstreamPolicy policy, long timeout)
+            throws CitysearchException {
+        long remaining = RequestDeadline.getRemaining();
+        if (remaining <= 0) {
+            throw new CitysearchException("HttpConnection", "getConnection",
+                    config.getErrorMessage(deadlineError) + " " + policy.getName());
+        }
+        // A timeout of 0 waits forever
+        if (remaining < Integer.MAX_VALUE && (timeout <= 0 || remaining < timeout)) {
+            timeout = remaining;
+        }
+        return (int) timeout;
+    }
+
+    /**
+     * Releases the connection back to the pool. Any unread part of the response body is consumed
+     * first so the socket can be reused.
+     *
+     * @param method
+     */
+    public static void closeConnection(HttpMethod method) {
+        if (method != null) {
+            method.releaseConnection();
+        }
+    }
+
+    /**
+     * Closes all pooled connections and stops the idle connection evictor. Called when the web
+     * application is undeployed.
+     */
+    public static synchronized void shutdown() {
+        if (idleConnectionEvictor != null) {
+            idleConnectionEvictor.shutdown();
+            idleConnectionEvictor = null;
+        }
+        if (connectionManager != null) {
+            connectionManager.shutdown();
+            connectionManager = null;
+        }
+        client = null;
     }
 
     /**
-     * Closes the connection object
-     * 
-     * @param connection
+     * Lets another thread abort a call, whether it has been sent yet or not. An aborted call
+     * closes its connection, so a blocked read fails at once.
      */
-    public static void closeConnection(HttpURLConnection connection) {
-        if (connection != null) {
-            connection.disconnect();
+    public static final class AbortHandle {
+        private HttpMethod method;
+        private boolean aborted;
+
+        /**
+         * Aborts the call
+         */
+        public synchronized void abort() {
+            aborted = true;
+            if (method != null) {
+                method.abort();
+            }
+        }
+
+        public synchronized boolean isAborted() {
+            return aborted;
+        }
+
+        /**
+         * Registers the method about to be executed
+         *
+         * @return false if the call has already been aborted
+         */
+        private synchronized boolean start(HttpMethod method) {
+            this.method = method;
+            return !aborted;
         }
     }
 }
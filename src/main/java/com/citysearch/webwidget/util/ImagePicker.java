@@ -0,0 +1,66 @@
+package com.citysearch.webwidget.util;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Picks default images at random for listings and offers without one. Every image in the pool is
+ * used once before any image repeats: the picker runs a partial Fisher-Yates shuffle over an index
+ * array, one step per call, and starts a fresh permutation when the pool is used up. Each call
+ * therefore takes constant time however many listings need an image.
+ *
+ * A picker is meant to be used by one thread for one result list.
+ *
+ */
+public class ImagePicker {
+    private final List<String> images;
+    private int[] indexes;
+    private int remaining;
+
+    /**
+     * @param images
+     *            pool to pick from, e.g. from DefaultImages. It is not modified.
+     */
+    public ImagePicker(List<String> images) {
+        this.images = images;
+    }
+
+    /**
+     * Returns the next image, or null if the pool is empty
+     *
+     * @return String
+     */
+    public String next() {
+        int size = (images != null) ? images.size() : 0;
+        if (size == 0) {
+            return null;
+        }
+        if (indexes == null) {
+            indexes = new int[size];
+            for (int i = 0; i < size; i++) {
+                indexes[i] = i;
+            }
+        }
+        if (remaining == 0) {
+            // The array still holds a permutation of all indexes, so it can be drawn from again
+            remaining = size;
+        }
+        int pick = randomIndex(remaining);
+        int index = indexes[pick];
+        remaining--;
+        indexes[pick] = indexes[remaining];
+        indexes[remaining] = index;
+        return images.get(index);
+    }
+
+    /**
+     * Returns a random index between 0 (inclusive) and size (exclusive) using a per thread
+     * generator
+     *
+     * @param size
+     * @return int
+     */
+    public static int randomIndex(int size) {
+        return ThreadLocalRandom.current().nextInt(size);
+    }
+}
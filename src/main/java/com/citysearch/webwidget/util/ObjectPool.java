@@ -0,0 +1,50 @@
+package com.citysearch.webwidget.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A bounded pool of objects that are costly to create and not thread safe, e.g. parsers. A
+ * borrowed object is used by one thread only until it is released. Unlike a ThreadLocal, the
+ * objects are shared by all threads, so they are reused even when every task runs on a new
+ * thread, as with the virtual pools of ThreadPools. When no object is idle a new one is created;
+ * an object released while maxIdle objects are idle is dropped.
+ *
+ * @param <T>
+ */
+public abstract class ObjectPool<T> {
+    private final BlockingQueue<T> idle;
+
+    /**
+     * @param maxIdle how many objects the pool keeps for reuse
+     */
+    protected ObjectPool(int maxIdle) {
+        this.idle = new ArrayBlockingQueue<T>(maxIdle);
+    }
+
+    /**
+     * Creates an object when none is idle
+     *
+     * @return T
+     */
+    protected abstract T create();
+
+    /**
+     * Returns an idle object, or a new one. The caller releases it once done.
+     *
+     * @return T
+     */
+    public T borrow() {
+        T object = idle.poll();
+        return (object != null) ? object : create();
+    }
+
+    /**
+     * Gives back a borrowed object for reuse
+     *
+     * @param object
+     */
+    public void release(T object) {
+        idle.offer(object);
+    }
+}
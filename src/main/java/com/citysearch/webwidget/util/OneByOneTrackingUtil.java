@@ -1,13 +1,43 @@
 package com.citysearch.webwidget.util;
 
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
 
 import com.citysearch.webwidget.exception.CitysearchException;
 
+/**
+ * Looks up the 1x1 tracking pixel for an ad unit from
+ * onebyonetracking.properties. The file is compiled once into an immutable
+ * table indexed by ad unit name, size and the number of PFP, backfill, search
+ * and house ad results, so a lookup that hits the index neither builds a key
+ * nor allocates. Any other lookup falls back to the property key, so every
+ * property resolves as it does in the file. The table can be rebuilt with
+ * reload(); readers keep using the old table until the new one is complete.
+ */
 public class OneByOneTrackingUtil {
-	private static Properties trackingProperties;
+	private static Logger log = Logger.getLogger(OneByOneTrackingUtil.class);
+
+	// A count as the lookup writes it: no leading zero, fits in an int
+	private static final String COUNT = "(0|[1-9]\\d{0,8})";
+	// NAME.SIZE.#P-#B-#S-#H
+	private static final Pattern COUNTS_KEY = Pattern
+			.compile("([^.]+)\\.([^.]+)\\." + COUNT + "P-" + COUNT + "B-"
+					+ COUNT + "S-" + COUNT + "H");
+	// NAME.SIZE
+	private static final Pattern UNIT_KEY = Pattern.compile("([^.]+)\\.([^.]+)");
+	// Counts above this are left out of the index and found by the property key
+	private static final int MAX_INDEXED_COUNT = 15;
+
+	private static volatile TrackingTable table;
 
 	private static String getPropertyKey(String adunitName, String adunitSize,
 			Integer pfpResultsSize, Integer pfpBackfillSize,
@@ -43,22 +73,210 @@ public class OneByOneTrackingUtil {
 		return strBuilder.toString();
 	}
 
-	private static String getTrackingUrl(String key) throws CitysearchException {
-		if (trackingProperties == null) {
-			trackingProperties = PropertiesLoader.getTrackingProperties();
-		}
-		if (trackingProperties != null && trackingProperties.containsKey(key)) {
-			return trackingProperties.getProperty(key);
+	/**
+	 * Returns the compiled table, building it on first use
+	 *
+	 * @return TrackingTable
+	 * @throws CitysearchException
+	 */
+	private static TrackingTable getTable() throws CitysearchException {
+		TrackingTable trackingTable = table;
+		if (trackingTable == null) {
+			trackingTable = reload();
 		}
-		return null;
+		return trackingTable;
+	}
+
+	/**
+	 * Reads onebyonetracking.properties and replaces the table in use
+	 *
+	 * @return the new table
+	 * @throws CitysearchException
+	 */
+	public static synchronized TrackingTable reload()
+			throws CitysearchException {
+		TrackingTable trackingTable = new TrackingTable(PropertiesLoader
+				.getTrackingProperties());
+		table = trackingTable;
+		log.info("Loaded " + trackingTable.keys.size()
+				+ " 1x1 tracking urls");
+		return trackingTable;
 	}
 
 	public static String get1x1TrackingUrl(String adunitName,
 			String adunitSize, Integer pfpResultsSize, Integer pfpBackfillSize,
 			Integer searchResultsSize, Integer houseAdsSize)
 			throws CitysearchException {
+		TrackingTable trackingTable = getTable();
+		if (!StringUtils.isBlank(adunitName)
+				&& !StringUtils.isBlank(adunitSize)) {
+			AdUnitSize unitSize = trackingTable.getAdUnitSize(adunitName,
+					adunitSize);
+			String url = null;
+			if (unitSize != null) {
+				if (pfpResultsSize != null && pfpBackfillSize != null
+						&& searchResultsSize != null && houseAdsSize != null) {
+					url = unitSize.getUrl(pfpResultsSize.intValue(),
+							pfpBackfillSize.intValue(), searchResultsSize
+									.intValue(), houseAdsSize.intValue());
+				} else if (pfpResultsSize == null && pfpBackfillSize == null
+						&& searchResultsSize == null && houseAdsSize == null) {
+					url = unitSize.url;
+				}
+			}
+			if (url != null) {
+				return url;
+			}
+		}
+		// Not indexed, e.g. partial counts, counts above MAX_INDEXED_COUNT or
+		// a missing name or size: look the property key up
 		String key = getPropertyKey(adunitName, adunitSize, pfpResultsSize,
 				pfpBackfillSize, searchResultsSize, houseAdsSize);
-		return getTrackingUrl(key);
+		return trackingTable.keys.get(key);
+	}
+
+	/**
+	 * Immutable form of onebyonetracking.properties
+	 */
+	public static final class TrackingTable {
+		// Every property by its key, for the lookups the index does not cover
+		private final Map<String, String> keys;
+		// Ad unit name (case insensitive) -> size -> urls
+		private final Map<String, Map<String, AdUnitSize>> adUnits;
+
+		private TrackingTable(Properties properties) {
+			Map<String, String> allKeys = new HashMap<String, String>();
+			Map<String, Map<String, AdUnitSizeBuilder>> builders = new HashMap<String, Map<String, AdUnitSizeBuilder>>();
+			Enumeration<Object> enumerator = properties.keys();
+			while (enumerator.hasMoreElements()) {
+				String key = (String) enumerator.nextElement();
+				String url = properties.getProperty(key);
+				allKeys.put(key, url);
+
+				Matcher counts = COUNTS_KEY.matcher(key);
+				Matcher unit = UNIT_KEY.matcher(key);
+				if (counts.matches()) {
+					AdUnitSizeBuilder builder = getBuilder(builders, counts
+							.group(1), counts.group(2));
+					if (builder != null) {
+						builder.addUrl(Integer.parseInt(counts.group(3)),
+								Integer.parseInt(counts.group(4)), Integer
+										.parseInt(counts.group(5)), Integer
+										.parseInt(counts.group(6)), url);
+					}
+				} else if (unit.matches()) {
+					AdUnitSizeBuilder builder = getBuilder(builders, unit
+							.group(1), unit.group(2));
+					if (builder != null) {
+						builder.url = url;
+					}
+				}
+			}
+
+			Map<String, Map<String, AdUnitSize>> units = new TreeMap<String, Map<String, AdUnitSize>>(
+					String.CASE_INSENSITIVE_ORDER);
+			for (Map.Entry<String, Map<String, AdUnitSizeBuilder>> unitEntry : builders
+					.entrySet()) {
+				Map<String, AdUnitSize> sizes = new HashMap<String, AdUnitSize>();
+				for (Map.Entry<String, AdUnitSizeBuilder> sizeEntry : unitEntry
+						.getValue().entrySet()) {
+					sizes.put(sizeEntry.getKey(), sizeEntry.getValue().build());
+				}
+				units.put(unitEntry.getKey(), Collections.unmodifiableMap(sizes));
+			}
+			this.keys = Collections.unmodifiableMap(allKeys);
+			this.adUnits = Collections.unmodifiableMap(units);
+		}
+
+		private static AdUnitSizeBuilder getBuilder(
+				Map<String, Map<String, AdUnitSizeBuilder>> builders,
+				String adunitName, String adunitSize) {
+			// Request names are upper cased before the lookup, so keys with
+			// lower case names never matched
+			if (!adunitName.equals(adunitName.toUpperCase())) {
+				return null;
+			}
+			Map<String, AdUnitSizeBuilder> sizes = builders.get(adunitName);
+			if (sizes == null) {
+				sizes = new HashMap<String, AdUnitSizeBuilder>();
+				builders.put(adunitName, sizes);
+			}
+			AdUnitSizeBuilder builder = sizes.get(adunitSize);
+			if (builder == null) {
+				builder = new AdUnitSizeBuilder();
+				sizes.put(adunitSize, builder);
+			}
+			return builder;
+		}
+
+		private AdUnitSize getAdUnitSize(String adunitName, String adunitSize) {
+			Map<String, AdUnitSize> sizes = adUnits.get(adunitName);
+			return (sizes != null) ? sizes.get(adunitSize) : null;
+		}
+	}
+
+	/**
+	 * Tracking urls of one ad unit size. urls is indexed by the four result
+	 * counts, each between 0 and max.
+	 */
+	private static final class AdUnitSize {
+		private final String url;
+		private final int max;
+		private final String[] urls;
+
+		private AdUnitSize(String url, int max, String[] urls) {
+			this.url = url;
+			this.max = max;
+			this.urls = urls;
+		}
+
+		private String getUrl(int pfp, int backfill, int search, int houseAds) {
+			if (pfp < 0 || backfill < 0 || search < 0 || houseAds < 0
+					|| pfp > max || backfill > max || search > max
+					|| houseAds > max) {
+				return null;
+			}
+			return urls[index(max, pfp, backfill, search, houseAds)];
+		}
+
+		private static int index(int max, int pfp, int backfill, int search,
+				int houseAds) {
+			int dimension = max + 1;
+			return ((pfp * dimension + backfill) * dimension + search)
+					* dimension + houseAds;
+		}
+	}
+
+	private static final class AdUnitSizeBuilder {
+		private String url;
+		private final Map<int[], String> countUrls = new HashMap<int[], String>();
+		private int max = -1;
+
+		private void addUrl(int pfp, int backfill, int search, int houseAds,
+				String countUrl) {
+			if (pfp > MAX_INDEXED_COUNT || backfill > MAX_INDEXED_COUNT
+					|| search > MAX_INDEXED_COUNT
+					|| houseAds > MAX_INDEXED_COUNT) {
+				return;
+			}
+			countUrls.put(new int[] { pfp, backfill, search, houseAds },
+					countUrl);
+			max = Math.max(max, Math.max(Math.max(pfp, backfill), Math.max(
+					search, houseAds)));
+		}
+
+		private AdUnitSize build() {
+			String[] urls = new String[0];
+			if (max >= 0) {
+				int dimension = max + 1;
+				urls = new String[dimension * dimension * dimension * dimension];
+				for (Map.Entry<int[], String> entry : countUrls.entrySet()) {
+					int[] counts = entry.getKey();
+					urls[AdUnitSize.index(max, counts[0], counts[1], counts[2],
+							counts[3])] = entry.getValue();
+				}
+			}
+			return new AdUnitSize(url, max, urls);
+		}
 	}
 }
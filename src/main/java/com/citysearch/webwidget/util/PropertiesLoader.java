@@ -9,22 +9,15 @@ import org.apache.log4j.Logger;
 import com.citysearch.webwidget.exception.CitysearchException;
 
 /**
- * This class loads properties from property files.
+ * This class loads properties from property files. The api, error,
+ * application and field properties are read through WebWidgetConfig.
  * 
  * @author Aspert Benjamin
  * 
  */
 public class PropertiesLoader {
 	private static Logger log = Logger.getLogger(PropertiesLoader.class);
-	private static final String API_PROPERTIES_FILE = "/api.properties";
-	private static final String ERROR_PROPERTIES_FILE = "/error.properties";
-	private static final String APPLICATION_PROPERTIES_FILE = "/application.properties";
 	private static final String TRACKING_PROPERTIES_FILE = "/onebyonetracking.properties";
-	private static final String FIELD_PROPERTIES_FILE = "/field.properties";
-	private static Properties errorProperties;
-	private static Properties apiProperties;
-	private static Properties applicationProperties;
-	private static Properties fieldProperties;
 	
 	/**
 	 * Takes the file name as input and reads the properties from the file.
@@ -37,8 +30,12 @@ public class PropertiesLoader {
 			throws CitysearchException {
 		InputStream inputStream;
 		Properties properties;
+		// Class loader resource names have no leading slash. The servlet
+		// container tolerates one, a plain JVM (e.g. the benchmarks) does not.
+		String resourceName = fileName.startsWith("/") ? fileName.substring(1)
+				: fileName;
 		inputStream = PropertiesLoader.class.getClassLoader()
-				.getResourceAsStream(fileName);
+				.getResourceAsStream(resourceName);
 		properties = new Properties();
 
 		// load the inputStream using the Properties
@@ -59,50 +56,7 @@ public class PropertiesLoader {
 		return properties;
 	}
 
-	/**
-	 * Read the error.properties file. If that file is missing, throws
-	 * CitysearchException
-	 * 
-	 * @return Properties
-	 * @throws CitysearchException
-	 */
-	public static Properties getErrorProperties() throws CitysearchException {
-		if (errorProperties == null) {
-			errorProperties = getProperties(ERROR_PROPERTIES_FILE);
-		}
-		return errorProperties;
-	}
-
-	/**
-	 * Read the api.properties file. If that file is missing, throws
-	 * CitysearchException
-	 * 
-	 * @return Properties
-	 * @throws CitysearchException
-	 */
-	public static Properties getAPIProperties() throws CitysearchException {
-		if (apiProperties == null) {
-			apiProperties = getProperties(API_PROPERTIES_FILE);
-		}
-		return apiProperties;
-	}
-
-	public static Properties getApplicationProperties()
-			throws CitysearchException {
-		if (applicationProperties == null) {
-			applicationProperties = getProperties(APPLICATION_PROPERTIES_FILE);
-		}
-		return applicationProperties;
-	}
-
 	public static Properties getTrackingProperties() throws CitysearchException {
 		return getProperties(TRACKING_PROPERTIES_FILE);
 	}
-	
-	public static Properties getFieldProperties() throws CitysearchException {
-		if (fieldProperties == null) {
-			fieldProperties = getProperties(FIELD_PROPERTIES_FILE);
-		}
-		return fieldProperties;
-	}
 }
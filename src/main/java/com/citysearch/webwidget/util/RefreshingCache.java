@@ -0,0 +1,219 @@
+package com.citysearch.webwidget.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.apache.log4j.Logger;
+
+import com.citysearch.webwidget.exception.CitysearchException;
+
+/**
+ * Thread safe in-memory cache that loads missing values itself and serves stale values while they
+ * are refreshed in the background. It is bounded by size, evicting the least recently used entry.
+ * <p>
+ * A loaded value is fresh for the time to live, or for the negative time to live if isNegative()
+ * says it is an empty result. A fresh value is returned as is. Once it is no longer fresh it is
+ * still returned for up to maxStale more, and the first get in that window starts one background
+ * refresh of the key on the UpstreamExecutor; the other gets keep the stale value until the
+ * refresh replaces it. After that a get loads the value on the calling thread. A value is thus
+ * never served more than timeToLive + maxStale after it was loaded.
+ * <p>
+ * Failed loads are not cached: a failed foreground load throws, a failed refresh leaves the stale
+ * value in place until it expires.
+ * <p>
+ * Loaded values must not be null. Cached values are shared between threads and must not be
+ * modified by callers.
+ *
+ * @param <K>
+ * @param <V>
+ */
+public abstract class RefreshingCache<K, V> {
+    private static Logger log = Logger.getLogger(RefreshingCache.class);
+
+    private final String name;
+    private final long timeToLive;
+    private final long negativeTimeToLive;
+    private final long maxStale;
+    private final LinkedHashMap<K, CacheEntry<V>> entries;
+    private long hits;
+    private long staleHits;
+    private long misses;
+    private long refreshes;
+    private long failedRefreshes;
+
+    /**
+     * @param name
+     *            used when reporting statistics
+     * @param maxSize
+     *            maximum number of entries, 0 to disable the cache
+     * @param timeToLive
+     *            in milliseconds, 0 to disable the cache
+     * @param negativeTimeToLive
+     *            in milliseconds, for the values isNegative() is true of
+     * @param maxStale
+     *            in milliseconds, how long a value may be served past its time to live
+     */
+    public RefreshingCache(String name, final int maxSize, long timeToLive,
+            long negativeTimeToLive, long maxStale) {
+        this.name = name;
+        this.timeToLive = maxSize > 0 ? timeToLive : 0;
+        this.negativeTimeToLive = negativeTimeToLive;
+        this.maxStale = Math.max(maxStale, 0);
+        this.entries = new LinkedHashMap<K, CacheEntry<V>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Loads the value of a key
+     *
+     * @param key
+     * @return V
+     * @throws CitysearchException
+     */
+    protected abstract V load(K key) throws CitysearchException;
+
+    /**
+     * Returns whether the value is an empty result, cached for the negative time to live
+     *
+     * @param value
+     * @return boolean
+     */
+    protected abstract boolean isNegative(V value);
+
+    /**
+     * Returns the cached value of the key, loading it if there is none or it is too stale
+     *
+     * @param key
+     * @return V
+     * @throws CitysearchException if the value has to be loaded and loading fails
+     */
+    public V get(K key) throws CitysearchException {
+        if (timeToLive <= 0) {
+            return load(key);
+        }
+        V stale;
+        synchronized (this) {
+            CacheEntry<V> entry = entries.get(key);
+            long now = System.currentTimeMillis();
+            if (entry != null && now >= entry.staleUntil) {
+                entries.remove(key);
+                entry = null;
+            }
+            if (entry == null) {
+                misses++;
+                stale = null;
+            } else if (now < entry.freshUntil) {
+                hits++;
+                return entry.value;
+            } else {
+                staleHits++;
+                if (entry.refreshing) {
+                    return entry.value;
+                }
+                entry.refreshing = true;
+                stale = entry.value;
+            }
+        }
+        if (stale != null) {
+            startRefresh(key);
+            return stale;
+        }
+        V value = load(key);
+        put(key, value);
+        return value;
+    }
+
+    private void startRefresh(final K key) {
+        try {
+            UpstreamExecutor.submitDetached(new Callable<Object>() {
+                public Object call() {
+                    refresh(key);
+                    return null;
+                }
+            });
+        } catch (CitysearchException cse) {
+            refreshFailed(key, cse);
+        }
+    }
+
+    private void refresh(K key) {
+        try {
+            V value = load(key);
+            put(key, value);
+            synchronized (this) {
+                refreshes++;
+            }
+        } catch (CitysearchException cse) {
+            refreshFailed(key, cse);
+        } catch (RuntimeException re) {
+            refreshFailed(key, re);
+        }
+    }
+
+    private synchronized void refreshFailed(K key, Exception excep) {
+        failedRefreshes++;
+        CacheEntry<V> entry = entries.get(key);
+        if (entry != null) {
+            // The next get past the time to live tries again
+            entry.refreshing = false;
+        }
+        log.warn(name + " cache: refresh failed: " + excep.getMessage());
+    }
+
+    private synchronized void put(K key, V value) {
+        long now = System.currentTimeMillis();
+        long freshFor = isNegative(value) ? negativeTimeToLive : timeToLive;
+        if (freshFor > 0) {
+            entries.put(key, new CacheEntry<V>(value, now + freshFor, now + freshFor + maxStale));
+        } else {
+            entries.remove(key);
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the statistics as name=value pairs, e.g. for the health check
+     *
+     * @return String
+     */
+    public synchronized String getStatistics() {
+        StringBuilder strBuilder = new StringBuilder();
+        strBuilder.append("size=").append(entries.size());
+        strBuilder.append(" hits=").append(hits);
+        strBuilder.append(" stale=").append(staleHits);
+        strBuilder.append(" misses=").append(misses);
+        strBuilder.append(" refreshes=").append(refreshes);
+        strBuilder.append(" failedRefreshes=").append(failedRefreshes);
+        return strBuilder.toString();
+    }
+
+    private static class CacheEntry<V> {
+        private final V value;
+        private final long freshUntil;
+        private final long staleUntil;
+        private boolean refreshing;
+
+        CacheEntry(V value, long freshUntil, long staleUntil) {
+            this.value = value;
+            this.freshUntil = freshUntil;
+            this.staleUntil = staleUntil;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.citysearch.webwidget.util;
+
+import java.util.concurrent.Callable;
+
+/**
+ * The time left for the upstream calls of the widget request a thread is serving. The budget is
+ * started when the request comes in, see UpstreamBudgetFilter, and every upstream call made for
+ * the request waits at most what is left of it. Tasks submitted to the UpstreamExecutor inherit
+ * the deadline of the submitting thread, so calls made in parallel or later in the request share
+ * the same budget.
+ *
+ */
+public final class RequestDeadline {
+    /**
+     * Returned by getRemaining() when the thread has no budget
+     */
+    public static final long NONE = Long.MAX_VALUE;
+
+    // The deadline in milliseconds since the epoch, or null for none
+    private static final ThreadLocal<Long> deadline = new ThreadLocal<Long>();
+
+    private RequestDeadline() {
+    }
+
+    /**
+     * Starts a budget for the thread, unless it already has one
+     *
+     * @param budget in milliseconds
+     * @return true if started; the caller then ends it
+     */
+    public static boolean start(long budget) {
+        if (deadline.get() != null) {
+            return false;
+        }
+        deadline.set(Long.valueOf(System.currentTimeMillis() + budget));
+        return true;
+    }
+
+    /**
+     * Ends the budget of the thread
+     */
+    public static void end() {
+        deadline.remove();
+    }
+
+    /**
+     * Returns the time left in milliseconds, 0 or less once the budget is used up
+     *
+     * @return long, NONE if the thread has no budget
+     */
+    public static long getRemaining() {
+        Long until = deadline.get();
+        return until == null ? NONE : until.longValue() - System.currentTimeMillis();
+    }
+
+    /**
+     * Wraps the task to run with the deadline of the calling thread
+     *
+     * @param task
+     * @return Callable
+     */
+    public static <T> Callable<T> inherit(Callable<T> task) {
+        return withDeadline(deadline.get(), task);
+    }
+
+    /**
+     * Wraps the task to run with the deadline of the calling thread
+     *
+     * @param task
+     * @return Runnable
+     */
+    public static Runnable inherit(final Runnable task) {
+        final Long until = deadline.get();
+        return new Runnable() {
+            public void run() {
+                Long previous = swap(until);
+                try {
+                    task.run();
+                } finally {
+                    swap(previous);
+                }
+            }
+        };
+    }
+
+    /**
+     * Wraps the task to run without a deadline, e.g. a background refresh that no request waits
+     * for
+     *
+     * @param task
+     * @return Callable
+     */
+    public static <T> Callable<T> detach(Callable<T> task) {
+        return withDeadline(null, task);
+    }
+
+    private static <T> Callable<T> withDeadline(final Long until, final Callable<T> task) {
+        return new Callable<T>() {
+            public T call() throws Exception {
+                // The task may run on the calling thread when the pool is full
+                Long previous = swap(until);
+                try {
+                    return task.call();
+                } finally {
+                    swap(previous);
+                }
+            }
+        };
+    }
+
+    private static Long swap(Long until) {
+        Long previous = deadline.get();
+        if (until == null) {
+            deadline.remove();
+        } else {
+            deadline.set(until);
+        }
+        return previous;
+    }
+}
@@ -0,0 +1,114 @@
+package com.citysearch.webwidget.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lets concurrent identical calls share one execution. The first caller of a key runs the call on
+ * its own thread; the callers that ask for the same key while it runs wait for it and get the
+ * same result, or the same exception. The key is forgotten as soon as the call ends, so nothing
+ * is cached: a call made after that runs again. A waiting caller waits at most what is left of its
+ * own RequestDeadline. When the call fails once the RequestDeadline of the caller that ran it is
+ * used up, e.g. because its budget cut the call short, the failure is not shared: the waiting
+ * callers that still have time left ask again, and one of them runs the call.
+ * <p>
+ * The result is shared between threads and must not be modified by callers. A call must not
+ * execute the same key again on its own thread.
+ *
+ * @param <K>
+ * @param <V>
+ */
+public class SingleFlight<K, V> {
+    private final ConcurrentMap<K, Flight<V>> flights = new ConcurrentHashMap<K, Flight<V>>();
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong shared = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+
+    /**
+     * Runs the call, or waits for the one already running for the key
+     *
+     * @param key
+     * @param call
+     * @return V, as returned by the call that ran
+     * @throws Exception as thrown by the call that ran
+     * @throws InterruptedException if interrupted while waiting for another caller's call
+     * @throws TimeoutException if the RequestDeadline of the caller ends while waiting for
+     *             another caller's call
+     */
+    public V execute(K key, Callable<V> call) throws Exception {
+        Flight<V> flight = new Flight<V>();
+        Flight<V> running = flights.putIfAbsent(key, flight);
+        while (running != null) {
+            shared.incrementAndGet();
+            running.await();
+            if (!running.outOfTime || RequestDeadline.getRemaining() <= 0) {
+                return running.get();
+            }
+            // The failure only says the caller that ran the call ran out of time
+            retried.incrementAndGet();
+            running = flights.putIfAbsent(key, flight);
+        }
+        executions.incrementAndGet();
+        try {
+            V result = call.call();
+            flight.result = result;
+            return result;
+        } catch (Exception excep) {
+            flight.failure = excep;
+            flight.outOfTime = RequestDeadline.getRemaining() <= 0;
+            throw excep;
+        } catch (Error error) {
+            flight.failure = error;
+            throw error;
+        } finally {
+            flights.remove(key, flight);
+            flight.done.countDown();
+        }
+    }
+
+    /**
+     * Returns the statistics as name=value pairs, e.g. for the health check
+     *
+     * @return String
+     */
+    public String getStatistics() {
+        StringBuilder strBuilder = new StringBuilder();
+        strBuilder.append("executions=").append(executions.get());
+        strBuilder.append(" shared=").append(shared.get());
+        strBuilder.append(" retried=").append(retried.get());
+        strBuilder.append(" inFlight=").append(flights.size());
+        return strBuilder.toString();
+    }
+
+    /**
+     * One running call. The latch publishes the outcome to the waiting callers.
+     */
+    private static final class Flight<V> {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private V result;
+        private Throwable failure;
+        // True if the call failed after the RequestDeadline of its caller was used up
+        private boolean outOfTime;
+
+        private void await() throws InterruptedException, TimeoutException {
+            if (!done.await(Math.max(RequestDeadline.getRemaining(), 0), TimeUnit.MILLISECONDS)) {
+                throw new TimeoutException("Request time budget used up waiting for a shared call");
+            }
+        }
+
+        private V get() throws Exception {
+            if (failure instanceof Exception) {
+                throw (Exception) failure;
+            }
+            if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.citysearch.webwidget.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Creates the thread pools of the application, of the type set in application.properties.
+ * <p>
+ * A platform pool has a fixed number of threads and a bounded queue; when both are full the task
+ * runs on the calling thread, so a burst of traffic degrades to sequential calls instead of
+ * failing. A virtual pool starts one virtual thread per task, with no limit, so blocking upstream
+ * calls no longer wait for a free thread. Virtual threads need Java 21; on an older JVM a platform
+ * pool is created instead. A virtual thread serves a single task, so anything costly kept per
+ * thread is rebuilt for every task: such objects are kept in an ObjectPool instead of a
+ * ThreadLocal, e.g. the parsers of XmlParsers and the formats of DateCodec. The JVM is asked by
+ * reflection, so the code still builds for older targets.
+ *
+ */
+public final class ThreadPools {
+    private static Logger log = Logger.getLogger(ThreadPools.class);
+
+    public static final String PLATFORM = "platform";
+    public static final String VIRTUAL = "virtual";
+
+    private ThreadPools() {
+    }
+
+    /**
+     * Creates a pool
+     *
+     * @param name prefix of the thread names, e.g. upstream-worker
+     * @param type PLATFORM or VIRTUAL; anything else, e.g. null, is PLATFORM
+     * @param poolSize number of platform threads
+     * @param queueSize number of tasks waiting for a platform thread
+     * @return ExecutorService
+     */
+    public static ExecutorService create(String name, String type, int poolSize, int queueSize) {
+        if (VIRTUAL.equalsIgnoreCase(type != null ? type.trim() : null)) {
+            ExecutorService executor = newVirtualThreadPerTaskExecutor();
+            if (executor != null) {
+                log.info(name + " pool created with virtual threads");
+                return executor;
+            }
+            log.warn("Virtual threads are not supported by this JVM; " + name
+                    + " pool uses platform threads");
+        }
+        ExecutorService executor = new ThreadPoolExecutor(poolSize, poolSize, 60L,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(queueSize),
+                new NamedThreadFactory(name), new ThreadPoolExecutor.CallerRunsPolicy());
+        log.info(name + " pool created. poolSize=" + poolSize + " queueSize=" + queueSize);
+        return executor;
+    }
+
+    /**
+     * Returns Executors.newVirtualThreadPerTaskExecutor(), or null if the JVM does not have it
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (NoSuchMethodException nsme) {
+            return null;
+        } catch (Exception excep) {
+            log.error("Virtual thread executor could not be created", excep);
+            return null;
+        }
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        private NamedThreadFactory(String name) {
+            this.name = name;
+        }
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
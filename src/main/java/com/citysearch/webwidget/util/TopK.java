@@ -0,0 +1,81 @@
+package com.citysearch.webwidget.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the k items with the lowest scores out of all the items offered, in ascending order of
+ * score. Items with the same score keep the order in which they were offered, so the result is
+ * the first k items of a stable sort. Scores compare as Double.compare does.
+ * <p>
+ * The display sizes are small, so the kept items are held in a sorted array and each offer is an
+ * insertion into it; nothing is boxed and an item that does not make the top k is dropped at
+ * once. Not thread safe.
+ *
+ */
+public final class TopK<T> {
+    private final double[] scores;
+    private final Object[] items;
+    private int size;
+
+    /**
+     * @param k the number of items to keep, 0 or less to keep none
+     */
+    public TopK(int k) {
+        int capacity = Math.max(k, 0);
+        this.scores = new double[capacity];
+        this.items = new Object[capacity];
+    }
+
+    /**
+     * Offers an item
+     *
+     * @param score
+     * @param item
+     * @return true if the item is among the k lowest so far
+     */
+    public boolean offer(double score, T item) {
+        if (size == scores.length) {
+            // Ties go after the kept items, so an equal score does not make it either
+            if (size == 0 || Double.compare(score, scores[size - 1]) >= 0) {
+                return false;
+            }
+            size--;
+        }
+        int index = size;
+        while (index > 0 && Double.compare(scores[index - 1], score) > 0) {
+            scores[index] = scores[index - 1];
+            items[index] = items[index - 1];
+            index--;
+        }
+        scores[index] = score;
+        items[index] = item;
+        size++;
+        return true;
+    }
+
+    /**
+     * @return the number of items kept
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the kept items, lowest score first
+     *
+     * @return a new list
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> toList() {
+        List<T> list = new ArrayList<T>(size);
+        for (int i = 0; i < size; i++) {
+            list.add((T) items[i]);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,78 @@
+package com.citysearch.webwidget.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.commons.lang.math.NumberUtils;
+
+import com.citysearch.webwidget.exception.CitysearchException;
+
+/**
+ * Shared thread pool used to issue upstream API calls concurrently. By default it is bounded:
+ * when both the pool and its queue are full the task runs on the calling thread, so a burst of
+ * traffic degrades to the old sequential behaviour instead of failing. With upstream.pool.type set
+ * to virtual each call runs on its own virtual thread where the JVM supports them (see
+ * ThreadPools).
+ *
+ */
+public class UpstreamExecutor {
+    private static final String POOL_TYPE_PROPERTY = "upstream.pool.type";
+    private static final String POOL_SIZE_PROPERTY = "upstream.pool.size";
+    private static final String QUEUE_SIZE_PROPERTY = "upstream.queue.size";
+    private static final int DEFAULT_POOL_SIZE = 50;
+    private static final int DEFAULT_QUEUE_SIZE = 500;
+
+    private static ExecutorService executor;
+
+    /**
+     * Returns the shared executor, creating it on first use
+     *
+     * @return ExecutorService
+     * @throws CitysearchException
+     */
+    private static synchronized ExecutorService getExecutor() throws CitysearchException {
+        if (executor == null) {
+            WebWidgetConfig config = WebWidgetConfig.get();
+            int poolSize = NumberUtils.toInt(config.getApplicationProperty(POOL_SIZE_PROPERTY),
+                    DEFAULT_POOL_SIZE);
+            int queueSize = NumberUtils.toInt(config.getApplicationProperty(QUEUE_SIZE_PROPERTY),
+                    DEFAULT_QUEUE_SIZE);
+            executor = ThreadPools.create("upstream-worker", config
+                    .getApplicationProperty(POOL_TYPE_PROPERTY), poolSize, queueSize);
+        }
+        return executor;
+    }
+
+    /**
+     * Submits the task to the shared pool. It runs with the RequestDeadline of the calling thread.
+     *
+     * @param task
+     * @return Future
+     * @throws CitysearchException
+     */
+    public static <T> Future<T> submit(Callable<T> task) throws CitysearchException {
+        return getExecutor().submit(RequestDeadline.inherit(task));
+    }
+
+    /**
+     * Submits a task that no request waits for to the shared pool. It runs without a deadline.
+     *
+     * @param task
+     * @return Future
+     * @throws CitysearchException
+     */
+    public static <T> Future<T> submitDetached(Callable<T> task) throws CitysearchException {
+        return getExecutor().submit(RequestDeadline.detach(task));
+    }
+
+    /**
+     * Stops the worker threads. Called when the web application is undeployed.
+     */
+    public static synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+}
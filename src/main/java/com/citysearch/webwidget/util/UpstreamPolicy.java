@@ -0,0 +1,61 @@
+package com.citysearch.webwidget.util;
+
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
+
+/**
+ * How the calls to one API are made, read from api.properties by the url property of the API: the
+ * read timeout (e.g. profile.url.timeout) and the hedge delay (e.g. profile.url.hedge.delay).
+ * Instances are obtained from WebWidgetConfig.getUpstreamPolicy and are replaced along with the
+ * configuration.
+ *
+ */
+public final class UpstreamPolicy {
+    private static final String TIMEOUT_SUFFIX = ".timeout";
+    private static final String HEDGE_DELAY_SUFFIX = ".hedge.delay";
+
+    private final String name;
+    private final String url;
+    private final int timeout;
+    private final long hedgeDelay;
+
+    UpstreamPolicy(String urlProperty, Map<String, String> apiProperties) {
+        this.name = urlProperty;
+        this.url = StringUtils.trimToNull(apiProperties.get(urlProperty));
+        this.timeout = Math.max(NumberUtils.toInt(apiProperties.get(urlProperty
+                + TIMEOUT_SUFFIX)), 0);
+        this.hedgeDelay = Math.max(NumberUtils.toLong(apiProperties.get(urlProperty
+                + HEDGE_DELAY_SUFFIX)), 0);
+    }
+
+    /**
+     * @return the url property of the API, e.g. profile.url
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the url of the API, or null if it is not configured
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return the read timeout in milliseconds, 0 for http.read.timeout
+     */
+    public int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * @return how long in milliseconds to wait for an answer before sending a second request, 0
+     *         to never send one
+     */
+    public long getHedgeDelay() {
+        return hedgeDelay;
+    }
+}
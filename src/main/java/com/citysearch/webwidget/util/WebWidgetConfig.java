@@ -0,0 +1,334 @@
+package com.citysearch.webwidget.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.log4j.Logger;
+
+import com.citysearch.webwidget.exception.CitysearchException;
+
+/**
+ * Immutable snapshot of api.properties, error.properties, application.properties and
+ * field.properties. The files are read once into plain maps and the values every request needs
+ * (API key, API urls and their UpstreamPolicy, review date format, field lengths) into typed
+ * fields, so request threads never lock a Properties table. The field lengths of each ad unit and
+ * size are resolved on first use into a FieldLengths profile that lives as long as the snapshot.
+ * <p>
+ * get() returns the snapshot in use. reload() reads the files into a new snapshot and swaps it in
+ * with a single volatile write; a request that already holds the old snapshot finishes with it.
+ * If config.reload.interval is set in application.properties the files are checked for changes
+ * at that interval and reloaded when they have changed.
+ *
+ */
+public final class WebWidgetConfig {
+    private static Logger log = Logger.getLogger(WebWidgetConfig.class);
+
+    private static final String API_PROPERTIES_FILE = "/api.properties";
+    private static final String ERROR_PROPERTIES_FILE = "/error.properties";
+    private static final String APPLICATION_PROPERTIES_FILE = "/application.properties";
+    private static final String FIELD_PROPERTIES_FILE = "/field.properties";
+    private static final String[] FILES = { API_PROPERTIES_FILE, ERROR_PROPERTIES_FILE,
+            APPLICATION_PROPERTIES_FILE, FIELD_PROPERTIES_FILE };
+
+    private static final String RELOAD_INTERVAL_PROPERTY = "config.reload.interval";
+    private static final String REVIEW_DATE_FORMAT_PROPERTY = "reviewdate.format";
+    private static final String PFP_LOCATION_URL_PROPERTY = "pfplocation.url";
+    private static final String PFP_URL_PROPERTY = "pfp.url";
+    private static final String SEARCH_URL_PROPERTY = "search.url";
+    private static final String REVIEWS_URL_PROPERTY = "reviews.url";
+    private static final String PROFILE_URL_PROPERTY = "profile.url";
+    private static final String OFFERS_URL_PROPERTY = "offers.url";
+    private static final String COUPON_URL_PROPERTY = "citysearch.coupon.url";
+    // The APIs that have an UpstreamPolicy
+    private static final String[] UPSTREAM_URL_PROPERTIES = { PFP_LOCATION_URL_PROPERTY,
+            PFP_URL_PROPERTY, SEARCH_URL_PROPERTY, REVIEWS_URL_PROPERTY, PROFILE_URL_PROPERTY,
+            OFFERS_URL_PROPERTY };
+    private static final String DEFAULT_UPSTREAM_POLICY = "default";
+    // Bounds the field length profiles kept for ad unit names sent by clients
+    private static final int MAX_FIELD_LENGTH_PROFILES = 64;
+
+    private static volatile WebWidgetConfig current;
+    private static volatile long nextReloadCheck;
+
+    private final Map<String, String> apiProperties;
+    private final Map<String, String> errorProperties;
+    private final Map<String, String> applicationProperties;
+    private final Map<String, Integer> fieldLengths;
+    private final Map<String, FieldLengths> fieldLengthProfiles =
+            new ConcurrentHashMap<String, FieldLengths>();
+    private final long[] lastModified;
+    private final long reloadInterval;
+
+    private final String apiKey;
+    private final String reviewDateFormat;
+    private final String pfpLocationUrl;
+    private final String pfpUrl;
+    private final String searchUrl;
+    private final String reviewsUrl;
+    private final String profileUrl;
+    private final String offersUrl;
+    private final String couponUrl;
+    private final UpstreamPolicy[] upstreamPolicies;
+    private final UpstreamPolicy defaultUpstreamPolicy;
+
+    private WebWidgetConfig() throws CitysearchException {
+        // Modification times first, so an edit made while loading is seen by the next check
+        lastModified = getLastModified();
+        apiProperties = toMap(PropertiesLoader.getProperties(API_PROPERTIES_FILE));
+        errorProperties = toMap(PropertiesLoader.getProperties(ERROR_PROPERTIES_FILE));
+        applicationProperties = toMap(PropertiesLoader
+                .getProperties(APPLICATION_PROPERTIES_FILE));
+        fieldLengths = toLengths(PropertiesLoader.getProperties(FIELD_PROPERTIES_FILE));
+        reloadInterval = NumberUtils.toLong(applicationProperties.get(RELOAD_INTERVAL_PROPERTY));
+
+        apiKey = apiProperties.get(CommonConstants.API_KEY_PROPERTY);
+        reviewDateFormat = apiProperties.get(REVIEW_DATE_FORMAT_PROPERTY);
+        pfpLocationUrl = apiProperties.get(PFP_LOCATION_URL_PROPERTY);
+        pfpUrl = apiProperties.get(PFP_URL_PROPERTY);
+        searchUrl = apiProperties.get(SEARCH_URL_PROPERTY);
+        reviewsUrl = apiProperties.get(REVIEWS_URL_PROPERTY);
+        profileUrl = apiProperties.get(PROFILE_URL_PROPERTY);
+        offersUrl = apiProperties.get(OFFERS_URL_PROPERTY);
+        couponUrl = apiProperties.get(COUPON_URL_PROPERTY);
+        upstreamPolicies = new UpstreamPolicy[UPSTREAM_URL_PROPERTIES.length];
+        for (int i = 0; i < UPSTREAM_URL_PROPERTIES.length; i++) {
+            upstreamPolicies[i] = new UpstreamPolicy(UPSTREAM_URL_PROPERTIES[i], apiProperties);
+        }
+        defaultUpstreamPolicy = new UpstreamPolicy(DEFAULT_UPSTREAM_POLICY, Collections
+                .<String, String> emptyMap());
+    }
+
+    /**
+     * Returns the configuration in use, loading it on first use and reloading it if the files
+     * have changed since the last check
+     *
+     * @return WebWidgetConfig
+     * @throws CitysearchException
+     */
+    public static WebWidgetConfig get() throws CitysearchException {
+        WebWidgetConfig config = current;
+        if (config == null) {
+            return load();
+        }
+        if (config.reloadInterval > 0 && System.currentTimeMillis() >= nextReloadCheck) {
+            return reloadIfModified();
+        }
+        return config;
+    }
+
+    /**
+     * Reads the files into a new snapshot and makes it the one in use
+     *
+     * @return the new snapshot
+     * @throws CitysearchException
+     */
+    public static synchronized WebWidgetConfig reload() throws CitysearchException {
+        WebWidgetConfig config = new WebWidgetConfig();
+        nextReloadCheck = System.currentTimeMillis() + config.reloadInterval;
+        current = config;
+        log.info("Loaded configuration");
+        return config;
+    }
+
+    private static synchronized WebWidgetConfig load() throws CitysearchException {
+        if (current != null) {
+            // Another thread has just loaded it
+            return current;
+        }
+        return reload();
+    }
+
+    private static synchronized WebWidgetConfig reloadIfModified() throws CitysearchException {
+        WebWidgetConfig config = current;
+        if (System.currentTimeMillis() < nextReloadCheck) {
+            // Another thread has just checked
+            return config;
+        }
+        nextReloadCheck = System.currentTimeMillis() + config.reloadInterval;
+        long[] modified = getLastModified();
+        for (int i = 0; i < modified.length; i++) {
+            if (modified[i] != config.lastModified[i]) {
+                return reload();
+            }
+        }
+        return config;
+    }
+
+    /**
+     * Returns the modification times of the property files, 0 for any that is not known
+     *
+     * @return long[] in the order of FILES
+     */
+    private static long[] getLastModified() {
+        long[] modified = new long[FILES.length];
+        for (int i = 0; i < FILES.length; i++) {
+            URL resource = WebWidgetConfig.class.getClassLoader().getResource(
+                    FILES[i].substring(1));
+            if (resource == null) {
+                continue;
+            }
+            try {
+                if ("file".equals(resource.getProtocol())) {
+                    modified[i] = new File(resource.toURI()).lastModified();
+                } else {
+                    modified[i] = resource.openConnection().getLastModified();
+                }
+            } catch (IOException ioe) {
+                modified[i] = 0;
+            } catch (URISyntaxException use) {
+                modified[i] = 0;
+            }
+        }
+        return modified;
+    }
+
+    private static Map<String, String> toMap(Properties properties) {
+        Map<String, String> map = new HashMap<String, String>();
+        Enumeration<Object> keys = properties.keys();
+        while (keys.hasMoreElements()) {
+            String key = (String) keys.nextElement();
+            map.put(key, properties.getProperty(key));
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    private static Map<String, Integer> toLengths(Properties properties) {
+        Map<String, Integer> lengths = new HashMap<String, Integer>();
+        Enumeration<Object> keys = properties.keys();
+        while (keys.hasMoreElements()) {
+            String key = (String) keys.nextElement();
+            String value = properties.getProperty(key);
+            if (StringUtils.isNotBlank(value)) {
+                lengths.put(key, Integer.valueOf(NumberUtils.toInt(value)));
+            }
+        }
+        return Collections.unmodifiableMap(lengths);
+    }
+
+    /**
+     * Returns a value from api.properties
+     *
+     * @param key
+     * @return the value or null
+     */
+    public String getApiProperty(String key) {
+        return apiProperties.get(key);
+    }
+
+    /**
+     * Returns a message from error.properties
+     *
+     * @param key
+     * @return the message or null
+     */
+    public String getErrorMessage(String key) {
+        return errorProperties.get(key);
+    }
+
+    /**
+     * Returns a value from application.properties
+     *
+     * @param key
+     * @return the value or null
+     */
+    public String getApplicationProperty(String key) {
+        return applicationProperties.get(key);
+    }
+
+    /**
+     * Returns a field length from field.properties
+     *
+     * @param key
+     * @return the length or -1 if the field has no length configured
+     */
+    public int getFieldLength(String key) {
+        Integer length = fieldLengths.get(key);
+        return (length != null) ? length.intValue() : -1;
+    }
+
+    /**
+     * Returns the field lengths of an ad unit and size
+     *
+     * @param adUnitIdentifier e.g. NEARBY.300X250
+     * @return FieldLengths
+     */
+    public FieldLengths getFieldLengths(String adUnitIdentifier) {
+        FieldLengths profile = fieldLengthProfiles.get(adUnitIdentifier);
+        if (profile == null) {
+            profile = new FieldLengths(adUnitIdentifier, fieldLengths);
+            if (fieldLengthProfiles.size() < MAX_FIELD_LENGTH_PROFILES) {
+                fieldLengthProfiles.put(adUnitIdentifier, profile);
+            }
+        }
+        return profile;
+    }
+
+    /**
+     * Returns the policy of the API the url belongs to: the one whose configured url is the
+     * longest prefix of it
+     *
+     * @param url
+     * @return UpstreamPolicy, the default policy (no timeout of its own, no hedging) if the url
+     *         is not one of the APIs
+     */
+    public UpstreamPolicy getUpstreamPolicy(String url) {
+        UpstreamPolicy match = defaultUpstreamPolicy;
+        int matchLength = -1;
+        if (url != null) {
+            for (UpstreamPolicy policy : upstreamPolicies) {
+                String apiUrl = policy.getUrl();
+                if (apiUrl != null && apiUrl.length() > matchLength && url.startsWith(apiUrl)) {
+                    match = policy;
+                    matchLength = apiUrl.length();
+                }
+            }
+        }
+        return match;
+    }
+
+    public String getApiKey() {
+        return apiKey;
+    }
+
+    public String getReviewDateFormat() {
+        return reviewDateFormat;
+    }
+
+    public String getPfpLocationUrl() {
+        return pfpLocationUrl;
+    }
+
+    public String getPfpUrl() {
+        return pfpUrl;
+    }
+
+    public String getSearchUrl() {
+        return searchUrl;
+    }
+
+    public String getReviewsUrl() {
+        return reviewsUrl;
+    }
+
+    public String getProfileUrl() {
+        return profileUrl;
+    }
+
+    public String getOffersUrl() {
+        return offersUrl;
+    }
+
+    public String getCouponUrl() {
+        return couponUrl;
+    }
+}
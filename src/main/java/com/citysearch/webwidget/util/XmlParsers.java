@@ -0,0 +1,174 @@
+package com.citysearch.webwidget.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.jdom.Document;
+import org.jdom.JDOMException;
+import org.jdom.input.SAXBuilder;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.SAXNotSupportedException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import com.citysearch.webwidget.exception.CitysearchException;
+
+/**
+ * The XML parsers used to read the API responses and the house ads files. Looking up the JAXP
+ * factory and creating a parser costs more than parsing a small response, so the parsers are
+ * created once and reused from an ObjectPool shared by all threads; a parser is used by one
+ * thread at a time as it is not thread safe.
+ * <p>
+ * The parsers are non validating, never load an external DTD and never resolve an external
+ * entity: the entity resolver returns an empty document for any DTD or entity the response
+ * refers to, whether or not the underlying parser knows the features that turn loading off.
+ *
+ */
+public final class XmlParsers {
+    private static final String LOAD_EXTERNAL_DTD = "http://apache.org/xml/features/nonvalidating/load-external-dtd";
+    private static final String EXTERNAL_GENERAL_ENTITIES = "http://xml.org/sax/features/external-general-entities";
+    private static final String EXTERNAL_PARAMETER_ENTITIES = "http://xml.org/sax/features/external-parameter-entities";
+
+    private static final EntityResolver NO_EXTERNAL_ENTITIES = new EntityResolver() {
+        public InputSource resolveEntity(String publicId, String systemId) {
+            return new InputSource(new StringReader(""));
+        }
+    };
+
+    // Set between parses so the reader does not keep the last handler and its result
+    private static final DefaultHandler NO_HANDLER = new DefaultHandler();
+
+    // Enough for the parses running at once on a busy server; more are created when needed
+    private static final int MAX_IDLE_PARSERS = 64;
+
+    private static final ObjectPool<Parsers> parsers = new ObjectPool<Parsers>(MAX_IDLE_PARSERS) {
+        protected Parsers create() {
+            return new Parsers();
+        }
+    };
+
+    private XmlParsers() {
+    }
+
+    /**
+     * Parses the input with a pooled SAX parser, passing the events to the handler. The input is
+     * not closed.
+     *
+     * @param input
+     * @param handler
+     * @throws SAXException as thrown by the parser or the handler
+     * @throws IOException
+     * @throws CitysearchException if the parser cannot be created
+     */
+    public static void parse(InputStream input, DefaultHandler handler) throws SAXException,
+            IOException, CitysearchException {
+        Parsers pooled = parsers.borrow();
+        try {
+            XMLReader reader = pooled.getReader();
+            try {
+                parse(reader, input, handler);
+            } finally {
+                reader.setContentHandler(NO_HANDLER);
+                reader.setErrorHandler(NO_HANDLER);
+                reader.setDTDHandler(NO_HANDLER);
+            }
+        } finally {
+            parsers.release(pooled);
+        }
+    }
+
+    /**
+     * Builds a document from the input with a pooled SAXBuilder. The input is not closed.
+     *
+     * @param input
+     * @return Document
+     * @throws JDOMException if the input is not well formed
+     * @throws IOException
+     */
+    public static Document build(InputStream input) throws JDOMException, IOException {
+        Parsers pooled = parsers.borrow();
+        try {
+            return pooled.getBuilder().build(input);
+        } finally {
+            parsers.release(pooled);
+        }
+    }
+
+    private static void parse(XMLReader reader, InputStream input, DefaultHandler handler)
+            throws SAXException, IOException {
+        reader.setContentHandler(handler);
+        reader.setErrorHandler(handler);
+        reader.setDTDHandler(handler);
+        reader.parse(new InputSource(input));
+    }
+
+    private static XMLReader newReader() throws CitysearchException {
+        try {
+            SAXParserFactory factory = SAXParserFactory.newInstance();
+            factory.setNamespaceAware(false);
+            factory.setValidating(false);
+            XMLReader reader = factory.newSAXParser().getXMLReader();
+            setFeatureIfKnown(reader, LOAD_EXTERNAL_DTD);
+            setFeatureIfKnown(reader, EXTERNAL_GENERAL_ENTITIES);
+            setFeatureIfKnown(reader, EXTERNAL_PARAMETER_ENTITIES);
+            reader.setEntityResolver(NO_EXTERNAL_ENTITIES);
+            return reader;
+        } catch (ParserConfigurationException pce) {
+            throw new CitysearchException("XmlParsers", "newReader", pce);
+        } catch (SAXException se) {
+            throw new CitysearchException("XmlParsers", "newReader", se);
+        }
+    }
+
+    /**
+     * Turns a feature off. The entity resolver covers the parsers that do not know it.
+     */
+    private static void setFeatureIfKnown(XMLReader reader, String feature) {
+        try {
+            reader.setFeature(feature, false);
+        } catch (SAXNotRecognizedException snre) {
+            // Not a Xerces based parser
+        } catch (SAXNotSupportedException snse) {
+            // Not a Xerces based parser
+        }
+    }
+
+    private static SAXBuilder newBuilder() {
+        SAXBuilder builder = new SAXBuilder(false);
+        builder.setReuseParser(true);
+        builder.setFeature(LOAD_EXTERNAL_DTD, false);
+        builder.setFeature(EXTERNAL_GENERAL_ENTITIES, false);
+        builder.setFeature(EXTERNAL_PARAMETER_ENTITIES, false);
+        builder.setEntityResolver(NO_EXTERNAL_ENTITIES);
+        return builder;
+    }
+
+    /**
+     * A pooled set of parsers, each created on first use
+     */
+    private static final class Parsers {
+        private XMLReader reader;
+        private SAXBuilder builder;
+
+        private XMLReader getReader() throws CitysearchException {
+            if (reader == null) {
+                reader = newReader();
+            }
+            return reader;
+        }
+
+        private SAXBuilder getBuilder() {
+            if (builder == null) {
+                builder = newBuilder();
+            }
+            return builder;
+        }
+    }
+}